@@ -0,0 +1,19 @@
+#!/usr/bin/env bash
+# Compare two JMH JSON result files: ./compare.sh baseline.json candidate.json
+
+set -euo pipefail
+
+if [ $# -ne 2 ]; then
+    echo "Usage: $0 baseline.json candidate.json" >&2
+    exit 1
+fi
+
+# One line per benchmark + params: "name|score|error|unit"
+summarize() {
+    jq -r '.[] | "\(.benchmark)\(if .params then " " + (.params | to_entries | map("\(.key)=\(.value)") | join(",")) else "" end)|\(.primaryMetric.score)|\(.primaryMetric.scoreError)|\(.primaryMetric.scoreUnit)"' "$1" | sort
+}
+
+join -t '|' <(summarize "$1") <(summarize "$2") | awk -F '|' '
+    BEGIN { printf "%-100s %14s %14s %8s\n", "Benchmark", "Baseline", "Candidate", "Ratio" }
+    { printf "%-100s %9.3f %-4s %9.3f %-4s %8.2f\n", $1, $2, $4, $5, $7, ($2 == 0 ? 0 : $5 / $2) }
+'
@@ -0,0 +1,54 @@
+package com.terheyden.templates.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.terheyden.templates.GroovyTemplater;
+import com.terheyden.templates.TemplateEngines;
+
+/**
+ * Rendering an already-compiled, loop-heavy template with the dynamic and static {@link TemplateEngines}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({"dynamic", "static"})
+    private String engine;
+
+    /**
+     * How many items the template loops over.
+     */
+    @Param({"100", "10000"})
+    private int items;
+
+    private String template;
+    private Map<String, Object> props;
+
+    @Setup
+    public void setup() {
+        template = Fixtures.loopTemplate(engine.equals("static"));
+        props = Fixtures.loopProps(items);
+    }
+
+    @Benchmark
+    public String generate() {
+        return GroovyTemplater.generate(template, props);
+    }
+}
@@ -0,0 +1,60 @@
+package com.terheyden.templates.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.terheyden.templates.FileUtils2;
+
+/**
+ * {@link FileUtils2#grep} over a synthetic directory tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileUtils2Benchmark {
+
+    private static final String GSTRING_REGEX = "\\$\\{.+?\\}";
+
+    @Param({"100"})
+    private int files;
+
+    @Param({"1000"})
+    private int linesPerFile;
+
+    private Path grepDir;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        grepDir = Fixtures.grepTree(Files.createTempDirectory("codepuncher-bench"), files, linesPerFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() {
+        FileUtils2.deleteEntireDir(grepDir);
+    }
+
+    @Benchmark
+    public List<String> grep() {
+        return FileUtils2.grep(grepDir, GSTRING_REGEX, 1);
+    }
+}
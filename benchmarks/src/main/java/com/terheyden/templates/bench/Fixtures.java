@@ -0,0 +1,209 @@
+package com.terheyden.templates.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates benchmark inputs. Everything is derived from a fixed seed,
+ * so every run (and every codepuncher version) is measured against the same data.
+ */
+public final class Fixtures {
+
+    /**
+     * Change this and you can't compare against older results anymore.
+     */
+    private static final long SEED = 20230301L;
+
+    private static final String[] WORDS = {
+        "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+        "india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa",
+    };
+
+    private Fixtures() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Properties used by every generated template.
+     */
+    public static Map<String, Object> props() {
+
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put("projectName", "Bench Project");
+        props.put("author", "Cora");
+        props.put("version", 3);
+
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            items.add(Map.of("name", WORDS[i % WORDS.length] + i, "price", i * 1.5));
+        }
+
+        props.put("items", items);
+        return props;
+    }
+
+    /**
+     * A template with roughly the given number of lines, mixing literal text,
+     * {@code ${}} expressions, and {@code <% %>} code.
+     * @param lines approximate number of lines
+     * @param extras also call the GroovyExtras helpers
+     */
+    public static String template(int lines, boolean extras) {
+
+        Random random = new Random(SEED + lines);
+        StringBuilder template = new StringBuilder();
+
+        for (int line = 0; line < lines; line++) {
+            switch (line % 4) {
+                case 0 -> template.append("# ${projectName} by ${author}, v${version}\n");
+                case 1 -> template.append(sentence(random)).append('\n');
+                case 2 -> template.append("<% items.take(3).each { item -> %>${item.name}: ${item.price}, <% } %>\n");
+                default -> template.append(extras ? "Slug: ${slugify(projectName)}\n" : "Upper: ${projectName.toUpperCase()}\n");
+            }
+        }
+
+        return template.toString();
+    }
+
+    /**
+     * A loop-heavy template: per-item method calls, arithmetic, and a branch, then a running total.
+     * @param typed compile with the static engine, with the variables declared
+     */
+    public static String loopTemplate(boolean typed) {
+
+        String header = typed
+            ? "<%@ engine static %>\n<%@ var List<" + Item.class.getCanonicalName() + "> items %>\n"
+            : "";
+
+        return header
+            + "<% for (item in items) { %>"
+            + "${item.name().toUpperCase()}: ${item.price() * item.quantity()}"
+            + "<% if (item.quantity() > 5) { %> (bulk)<% } %>\n"
+            + "<% } %>"
+            + "<% double total = 0; for (item in items) { total += item.price() * item.quantity() } %>"
+            + "Total: ${total}\n";
+    }
+
+    /**
+     * Properties for {@link #loopTemplate(boolean)}.
+     * @param count how many items to loop over
+     */
+    public static Map<String, Object> loopProps(int count) {
+
+        Random random = new Random(SEED + count);
+        List<Item> items = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            items.add(new Item(WORDS[i % WORDS.length] + i, random.nextInt(10_000) / 100.0, random.nextInt(10)));
+        }
+
+        return Map.of("items", items);
+    }
+
+    /**
+     * A directory tree of template files.
+     * @param files number of template files
+     * @param filesPerDir how many files before starting a new subdir
+     */
+    public static Path templateTree(Path rootDir, int files, int filesPerDir) throws IOException {
+
+        for (int i = 0; i < files; i++) {
+            Path dir = rootDir.resolve("dir" + (i / filesPerDir));
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve("file" + i + ".txt"), template(20 + i % 40, i % 2 == 0));
+        }
+
+        return rootDir;
+    }
+
+    /**
+     * A directory tree of plain text files to grep, with a {@code ${...}} in roughly one line out of ten.
+     */
+    public static Path grepTree(Path rootDir, int files, int linesPerFile) throws IOException {
+
+        Random random = new Random(SEED);
+
+        for (int i = 0; i < files; i++) {
+
+            Path dir = rootDir.resolve("dir" + (i % 10));
+            Files.createDirectories(dir);
+            StringBuilder text = new StringBuilder();
+
+            for (int line = 0; line < linesPerFile; line++) {
+                text.append(sentence(random));
+                if (random.nextInt(10) == 0) {
+                    text.append(" ${").append(WORDS[random.nextInt(WORDS.length)]).append('}');
+                }
+                text.append('\n');
+            }
+
+            Files.writeString(dir.resolve("file" + i + ".txt"), text);
+        }
+
+        return rootDir;
+    }
+
+    /**
+     * A YAML properties file with the given number of top-level sections.
+     */
+    public static String yaml(int sections) {
+
+        StringBuilder yaml = new StringBuilder();
+
+        for (int i = 0; i < sections; i++) {
+            yaml.append("section").append(i).append(":\n")
+                .append("  name: ").append(WORDS[i % WORDS.length]).append('\n')
+                .append("  enabled: ").append(i % 2 == 0).append('\n')
+                .append("  count: ").append(i).append('\n')
+                .append("  tags:\n")
+                .append("    - ").append(WORDS[(i + 1) % WORDS.length]).append('\n')
+                .append("    - ").append(WORDS[(i + 2) % WORDS.length]).append('\n');
+        }
+
+        return yaml.toString();
+    }
+
+    /**
+     * The same data as {@link #yaml(int)}, as HOCON.
+     */
+    public static String hocon(int sections) {
+
+        StringBuilder hocon = new StringBuilder();
+
+        for (int i = 0; i < sections; i++) {
+            hocon.append("section").append(i).append(" {\n")
+                .append("  name = ").append(WORDS[i % WORDS.length]).append('\n')
+                .append("  enabled = ").append(i % 2 == 0).append('\n')
+                .append("  count = ").append(i).append('\n')
+                .append("  tags = [").append(WORDS[(i + 1) % WORDS.length]).append(", ")
+                .append(WORDS[(i + 2) % WORDS.length]).append("]\n")
+                .append("}\n");
+        }
+
+        return hocon.toString();
+    }
+
+    private static String sentence(Random random) {
+
+        StringBuilder sentence = new StringBuilder();
+        int words = 5 + random.nextInt(10);
+
+        for (int i = 0; i < words; i++) {
+            sentence.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+
+        return sentence.append('.').toString();
+    }
+
+    /**
+     * A line item for {@link #loopTemplate(boolean)}.
+     */
+    public record Item(String name, double price, int quantity) {
+    }
+}
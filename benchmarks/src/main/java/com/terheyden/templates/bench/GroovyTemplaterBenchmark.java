@@ -0,0 +1,81 @@
+package com.terheyden.templates.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.terheyden.templates.GroovyTemplater;
+
+/**
+ * {@link GroovyTemplater#generate(String, Map)}: rendering an already-compiled template,
+ * and compiling + rendering from scratch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroovyTemplaterBenchmark {
+
+    /**
+     * Template size, in lines.
+     */
+    @Param({"10", "1000"})
+    private int lines;
+
+    /**
+     * Whether the template calls the GroovyExtras helpers.
+     */
+    @Param({"false", "true"})
+    private boolean extras;
+
+    private String template;
+    private Map<String, Object> props;
+
+    @Setup
+    public void setup() {
+        template = Fixtures.template(lines, extras);
+        props = Fixtures.props();
+    }
+
+    /**
+     * The common case: the template is already compiled and cached.
+     */
+    @Benchmark
+    public String generate() {
+        return GroovyTemplater.generate(template, props);
+    }
+
+    /**
+     * Cold path: every call compiles the template.
+     */
+    @Benchmark
+    public String compileAndGenerate(ColdCache coldCache) {
+        return GroovyTemplater.generate(template, props);
+    }
+
+    /**
+     * Empties the compiled template cache before every call.
+     */
+    @State(Scope.Thread)
+    public static class ColdCache {
+
+        @Setup(Level.Invocation)
+        public void clear() {
+            GroovyTemplater.clearCache();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.terheyden.templates.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.terheyden.templates.HoconMapper;
+import com.terheyden.templates.YamlMapper;
+
+/**
+ * Loading template properties: {@link YamlMapper#yamlToMap} and {@link HoconMapper#configToMap}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertiesBenchmark {
+
+    /**
+     * Number of top-level sections in the properties.
+     */
+    @Param({"10", "1000"})
+    private int sections;
+
+    private String yaml;
+    private String hocon;
+
+    @Setup
+    public void setup() {
+        yaml = Fixtures.yaml(sections);
+        hocon = Fixtures.hocon(sections);
+    }
+
+    @Benchmark
+    public Map<String, Object> yamlToMap() {
+        return YamlMapper.yamlToMap(yaml);
+    }
+
+    @Benchmark
+    public Map<String, Object> hoconToMap() {
+        return HoconMapper.configToMap(HoconMapper.parseString(hocon));
+    }
+}
@@ -0,0 +1,73 @@
+package com.terheyden.templates.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.terheyden.templates.FileUtils2;
+import com.terheyden.templates.GenerateOptions;
+import com.terheyden.templates.Templates;
+
+/**
+ * {@link Templates#generate} over a synthetic directory tree of templates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TemplatesBenchmark {
+
+    @Param({"200"})
+    private int files;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private Path workDir;
+    private Path sourceDir;
+    private Path outputDir;
+    private Map<String, Object> props;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        workDir = Files.createTempDirectory("codepuncher-bench");
+        sourceDir = Fixtures.templateTree(workDir.resolve("src"), files, 20);
+        props = Fixtures.props();
+    }
+
+    @Setup(Level.Iteration)
+    public void cleanOutput() {
+        outputDir = workDir.resolve("out");
+        if (Files.exists(outputDir)) {
+            FileUtils2.deleteEntireDir(outputDir);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() {
+        FileUtils2.deleteEntireDir(workDir);
+    }
+
+    @Benchmark
+    public void generateTree() {
+        Templates.generate(sourceDir, outputDir, props, GenerateOptions.defaults().withThreads(threads));
+    }
+}
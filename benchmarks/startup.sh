@@ -0,0 +1,53 @@
+#!/usr/bin/env bash
+# Measure CLI startup, with and without the AppCDS archive: ./startup.sh [runs]
+# Build first, from the repo root: mvn package -Pappcds
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-10}
+JAR=target/codepuncher.jar
+JSA=target/codepuncher.jsa
+OUT=$(mktemp -d)
+trap 'rm -rf "$OUT"' EXIT
+
+if [ ! -f "$JAR" ]; then
+    echo "Missing $JAR; run: mvn package -Pappcds" >&2
+    exit 1
+fi
+
+# Average wall-clock ms over $RUNS runs, after one discarded warmup run (for the OS file cache).
+measure() {
+    local label=$1
+    shift
+    "$@" > /dev/null 2>&1
+    local total=0
+    for ((i = 0; i < RUNS; i++)); do
+        local start end
+        start=$(date +%s%N)
+        "$@" > /dev/null 2>&1
+        end=$(date +%s%N)
+        total=$((total + (end - start) / 1000000))
+    done
+    printf "%-40s %6d ms\n" "$label" $((total / RUNS))
+}
+
+HELP=(-jar "$JAR" --help)
+RENDER=(-jar "$JAR" -t scripts/template.txt -o "$OUT/output.txt" -p scripts/vars.yaml)
+SHORT_RUN=(-XX:TieredStopAtLevel=1 -XX:+UseSerialGC)
+
+measure "--help" java "${HELP[@]}"
+measure "render" java "${RENDER[@]}"
+measure "render, short-run flags" java "${SHORT_RUN[@]}" "${RENDER[@]}"
+
+if [ -f "$JSA" ]; then
+    measure "--help, AppCDS" java -XX:SharedArchiveFile="$JSA" "${HELP[@]}"
+    measure "render, AppCDS" java -XX:SharedArchiveFile="$JSA" "${RENDER[@]}"
+    measure "render, AppCDS + short-run flags" java -XX:SharedArchiveFile="$JSA" "${SHORT_RUN[@]}" "${RENDER[@]}"
+    # The warmup run fills the disk cache, so this skips compiling the template too.
+    measure "render, all of the above + --cache-dir" \
+        java -XX:SharedArchiveFile="$JSA" "${SHORT_RUN[@]}" "${RENDER[@]}" --cache-dir "$OUT/cache"
+else
+    echo "No $JSA; run: mvn package -Pappcds" >&2
+fi
@@ -0,0 +1,180 @@
+package com.terheyden.templates;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Writes one run's outputs as entries in a zip or jar file; nothing is unpacked.
+ * Each output is rendered in parallel, like any other run, to its own temp file next to the archive,
+ * and then streamed into the archive and deleted; only adding entries takes turns.
+ * Outputs are never held in memory whole.
+ * <p>
+ * The archive is written next to the save file and renamed into place when the run finishes, and only if
+ * every output was written. A failed run leaves the old archive alone, rather than one with half an entry in it.
+ * Any {@link Durability} but {@code NONE} syncs the archive then, since it's one file.
+ */
+final class ArchiveOutputFiles implements OutputFiles {
+
+    private static final Logger LOG = getLogger(ArchiveOutputFiles.class);
+
+    private final Path archiveFile;
+    private final Durability durability;
+    private final Path tempFile;
+    private final FileChannel channel;
+    private final ZipOutputStream zip;
+
+    private boolean finished;
+
+    ArchiveOutputFiles(Path archiveFile, Durability durability) {
+        try {
+
+            this.archiveFile = archiveFile.toAbsolutePath();
+            this.durability = durability;
+            FileUtils2.createDirectories(this.archiveFile.getParent());
+            this.tempFile = FileUtils2.createTempSibling(this.archiveFile);
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+            this.zip = new ZipOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+        } catch (IOException e) {
+            throw Exceptions.<RuntimeException, RuntimeException>throwUnchecked(e);
+        }
+    }
+
+    @Override
+    public void write(Path saveFile, Consumer<Writer> contentWriter) {
+        render(saveFile, contentWriter);
+    }
+
+    @Override
+    public String writeIfChanged(Path saveFile, Consumer<Writer> contentWriter) {
+        // There's no old entry to leave alone; the archive is new each run.
+        return render(saveFile, contentWriter);
+    }
+
+    @Override
+    public synchronized long copy(Path sourceFile, Path saveFile) {
+        try {
+
+            zip.putNextEntry(new ZipEntry(entryName(saveFile)));
+            long size = Files.copy(sourceFile, zip);
+            zip.closeEntry();
+            return size;
+
+        } catch (IOException e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Write a binary entry.
+     */
+    synchronized void write(Path saveFile, byte[] content) {
+        try {
+
+            zip.putNextEntry(new ZipEntry(entryName(saveFile)));
+            zip.write(content);
+            zip.closeEntry();
+
+        } catch (IOException e) {
+            Exceptions.throwUnchecked(e);
+        }
+    }
+
+    @Override
+    public synchronized void finish(boolean complete) {
+
+        if (finished) {
+            return;
+        }
+
+        finished = true;
+
+        try {
+
+            if (!complete) {
+                LOG.debug("Not all outputs were written, dropping: {}", archiveFile);
+                zip.close();
+                Files.delete(tempFile);
+                return;
+            }
+
+            zip.finish();
+            zip.flush();
+            boolean fsync = durability != Durability.NONE;
+
+            if (fsync) {
+                channel.force(true);
+            }
+
+            zip.close();
+            FileUtils2.moveIntoPlace(tempFile, archiveFile, fsync);
+
+        } catch (IOException e) {
+            FileUtils2.deleteQuietly(tempFile);
+            Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Render to a temp file outside the lock, so renders into the same archive don't wait on each other,
+     * only on the copying into it.
+     * @return the SHA-256 hash of the content
+     */
+    private String render(Path saveFile, Consumer<Writer> contentWriter) {
+
+        Path renderedFile = null;
+
+        try {
+
+            renderedFile = FileUtils2.createTempSibling(archiveFile);
+            MessageDigest digest = Hashing.newSha256();
+
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new DigestOutputStream(Files.newOutputStream(renderedFile), digest),
+                StandardCharsets.UTF_8))) {
+
+                contentWriter.accept(writer);
+            }
+
+            copy(renderedFile, saveFile);
+            return Hashing.toHex(digest);
+
+        } catch (IOException e) {
+            return Exceptions.throwUnchecked(e);
+        } finally {
+            FileUtils2.deleteQuietly(renderedFile);
+        }
+    }
+
+    /**
+     * The save file is where the output would go if the archive were a dir, e.g. {@code out.zip/sub/file.txt}.
+     */
+    private String entryName(Path saveFile) {
+
+        Path relative = archiveFile.relativize(saveFile.toAbsolutePath());
+
+        if (relative.startsWith("..")) {
+            throw new IllegalArgumentException("Not in the archive: " + saveFile);
+        }
+
+        return relative.toString().replace('\\', '/');
+    }
+}
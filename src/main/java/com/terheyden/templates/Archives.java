@@ -0,0 +1,83 @@
+package com.terheyden.templates;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Zip and jar files, as template dirs and output dirs, so template sets and outputs don't have to be
+ * unpacked to disk and packed up again. Reading goes through the JDK's zip file system,
+ * so the rest of the code just sees {@link Path}s; writing is {@link ArchiveOutputFiles}.
+ */
+final class Archives {
+
+    /**
+     * Separates the archive from a dir inside it, like in {@code jar:} URLs: {@code templates.jar!/codegen}.
+     */
+    private static final String INSIDE = "!";
+
+    private Archives() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Is it named like a zip or jar file? It may not exist yet.
+     */
+    static boolean isArchive(Path file) {
+
+        Path fileName = file.getFileName();
+
+        if (fileName == null) {
+            return false;
+        }
+
+        String name = fileName.toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".zip") || name.endsWith(".jar");
+    }
+
+    /**
+     * If the path is an existing zip or jar file ({@code templates.jar}), or a dir inside one
+     * ({@code templates.jar!/codegen}), open the archive.
+     * @return the dir, in the archive's file system; close that when done
+     * @throws IllegalArgumentException if there's no such dir in the archive
+     */
+    static Optional<Path> openDir(Path path) {
+
+        String pathStr = path.toString();
+        String separator = path.getFileSystem().getSeparator();
+        int inside = pathStr.indexOf(INSIDE + separator);
+        Path archiveFile = inside < 0 ? path : path.getFileSystem().getPath(pathStr.substring(0, inside));
+        String dirInArchive = inside < 0 ? "/" : "/" + pathStr.substring(inside + 2).replace(separator, "/");
+
+        if (!isArchive(archiveFile) || !Files.isRegularFile(archiveFile)) {
+            return Optional.empty();
+        }
+
+        try {
+
+            FileSystem archive = FileSystems.newFileSystem(archiveFile);
+            Path dir = archive.getPath(dirInArchive);
+
+            if (!Files.isDirectory(dir)) {
+                archive.close();
+                throw new IllegalArgumentException("No such dir in " + archiveFile + ": " + dirInArchive);
+            }
+
+            return Optional.of(dir);
+
+        } catch (IOException e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Should outputs go into an archive, rather than a dir? Only if it isn't already a dir.
+     */
+    static boolean isArchiveOutput(Path saveDir) {
+        return isArchive(saveDir) && !Files.isDirectory(saveDir);
+    }
+}
@@ -0,0 +1,63 @@
+package com.terheyden.templates;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Thrown when one or more records in a batch failed to render (see {@link BatchRenderer}).
+ * Holds every failure, so the user can fix them all in one go.
+ */
+public class BatchRenderException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Don't bury the message under thousands of lines; {@link #getFailures()} has them all.
+     */
+    private static final int MAX_LISTED = 20;
+
+    private final transient Map<Long, Throwable> failures;
+
+    /**
+     * @param failures each failed record number (starting at 1), and why it failed
+     * @param recordCount the total number of records we tried to render
+     */
+    public BatchRenderException(Map<Long, Throwable> failures, long recordCount) {
+        super(buildMessage(sorted(failures), recordCount));
+        this.failures = sorted(failures);
+        this.failures.values().stream().limit(MAX_LISTED).forEach(this::addSuppressed);
+    }
+
+    private static Map<Long, Throwable> sorted(Map<Long, Throwable> failures) {
+        return Collections.unmodifiableMap(new TreeMap<>(failures));
+    }
+
+    private static String buildMessage(Map<Long, Throwable> failures, long recordCount) {
+
+        StringBuilder message = new StringBuilder()
+            .append(failures.size())
+            .append(" of ")
+            .append(recordCount)
+            .append(" records failed to render:");
+
+        failures.entrySet().stream().limit(MAX_LISTED).forEach(failure -> message
+            .append("\n  record ")
+            .append(failure.getKey())
+            .append(": ")
+            .append(failure.getValue()));
+
+        if (failures.size() > MAX_LISTED) {
+            message.append("\n  ... and ").append(failures.size() - MAX_LISTED).append(" more");
+        }
+
+        return message.toString();
+    }
+
+    /**
+     * Each failed record number (starting at 1), and why it failed.
+     */
+    public Map<Long, Throwable> getFailures() {
+        return failures;
+    }
+}
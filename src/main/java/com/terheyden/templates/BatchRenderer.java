@@ -0,0 +1,159 @@
+package com.terheyden.templates;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import groovy.text.Template;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Render one template against many property records, e.g. one output per microservice.
+ * <p>
+ * The template (and the output path pattern, itself a template) is compiled once.
+ * Records are streamed from the file one at a time and rendered in parallel; only a few records
+ * are in memory at once, however big the file is. Each output is streamed straight to disk.
+ * <p>
+ * Records files are picked by extension:
+ * <ul>
+ *     <li>{@code .jsonl}, {@code .ndjson}, {@code .json}: one JSON object after another (JSON Lines)</li>
+ *     <li>{@code .yaml}, {@code .yml}: one YAML document per record, separated by {@code ---}</li>
+ *     <li>{@code .csv}: a header row of property names, then one row per record (all values are strings)</li>
+ * </ul>
+ */
+public final class BatchRenderer {
+
+    private static final Logger LOG = getLogger(BatchRenderer.class);
+
+    private static final TypeReference<Map<String, Object>> RECORD = new TypeReference<>() {
+    };
+
+    private BatchRenderer() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * @param template the template to render for each record
+     * @param recordsFile the records, see the class docs for formats
+     * @param outputPattern where to save each output; a template too, e.g. {@code out/${name}/Dockerfile}
+     * @param baseProps properties for every record; record properties win
+     * @param options threads, limits, durability, and whether to leave unchanged outputs alone ({@code incremental})
+     * @return the number of records rendered
+     * @throws BatchRenderException if any of the records failed to render
+     */
+    public static long render(
+        String template,
+        Path recordsFile,
+        String outputPattern,
+        Map<String, Object> baseProps,
+        GenerateOptions options) {
+
+        Template compiledTemplate = GroovyTemplater.compile(template, options.limits().secure(), () -> { });
+        Template compiledPattern = GroovyTemplater.compile(outputPattern, options.limits().secure(), () -> { });
+        Map<Long, Throwable> failures = new ConcurrentHashMap<>();
+        OutputFiles outputs = new DirectoryOutputFiles(options.durability());
+        long recordCount = 0;
+
+        // A full queue makes the reading thread render the next record itself, which keeps memory bounded.
+        ThreadPoolExecutor executor = Templates.boundedExecutor(options.threads(), "batch");
+
+        try (MappingIterator<Map<String, Object>> records = readerFor(recordsFile).readValues(recordsFile.toFile())) {
+
+            while (records.hasNextValue()) {
+
+                long recordNumber = ++recordCount;
+                Map<String, Object> props = merge(baseProps, records.nextValue());
+
+                executor.execute(() -> {
+                    try {
+                        renderRecord(compiledTemplate, compiledPattern, props, options, outputs);
+                    } catch (Exception e) {
+                        LOG.debug("Failed to render record {}", recordNumber, e);
+                        failures.put(recordNumber, e);
+                    }
+                });
+            }
+
+        } catch (IOException e) {
+            Exceptions.throwUnchecked(e);
+        } finally {
+            Templates.awaitAll(executor);
+        }
+
+        outputs.finish(failures.isEmpty());
+
+        LOG.debug("Rendered {} records from: {}", recordCount, recordsFile);
+
+        if (!failures.isEmpty()) {
+            throw new BatchRenderException(failures, recordCount);
+        }
+
+        return recordCount;
+    }
+
+    private static void renderRecord(
+        Template compiledTemplate,
+        Template compiledPattern,
+        Map<String, Object> props,
+        GenerateOptions options,
+        OutputFiles outputs) {
+
+        StringWriter outPath = new StringWriter();
+        Sandbox.render(compiledPattern, props, outPath, options.limits());
+        Path outFile = Path.of(outPath.toString());
+
+        if (options.incremental()) {
+            outputs.writeIfChanged(outFile, writer -> Sandbox.render(compiledTemplate, props, writer, options.limits()));
+            return;
+        }
+
+        outputs.write(outFile, writer -> Sandbox.render(compiledTemplate, props, writer, options.limits()));
+    }
+
+    private static Map<String, Object> merge(Map<String, Object> baseProps, Map<String, Object> record) {
+
+        if (baseProps.isEmpty()) {
+            return record;
+        }
+
+        Map<String, Object> merged = new LinkedHashMap<>(baseProps);
+        merged.putAll(record);
+        return merged;
+    }
+
+    private static ObjectReader readerFor(Path recordsFile) {
+
+        String fileName = recordsFile.getFileName().toString().toLowerCase(Locale.ROOT);
+
+        if (fileName.endsWith(".jsonl") || fileName.endsWith(".ndjson") || fileName.endsWith(".json")) {
+            return new ObjectMapper().readerFor(RECORD);
+        }
+
+        if (fileName.endsWith(".yaml") || fileName.endsWith(".yml")) {
+            return new ObjectMapper(new YAMLFactory()).readerFor(RECORD);
+        }
+
+        if (fileName.endsWith(".csv")) {
+            return new CsvMapper().readerFor(RECORD).with(CsvSchema.emptySchema().withHeader());
+        }
+
+        throw new IllegalArgumentException(
+            "Unknown records file type, expected .jsonl, .yaml, or .csv: " + recordsFile);
+    }
+}
@@ -0,0 +1,62 @@
+package com.terheyden.templates;
+
+import java.util.Map;
+
+/**
+ * Defines the classes of one compiled template from their bytecode.
+ * <p>
+ * Each template gets its own loader, so once the template is dropped (e.g. evicted from the
+ * {@link TemplateCache}), its classes can be garbage collected too.
+ */
+final class BytecodeClassLoader extends ClassLoader {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final Map<String, byte[]> classes;
+
+    /**
+     * @param classes class name to bytecode, for every class the template compiled into
+     */
+    BytecodeClassLoader(Map<String, byte[]> classes) {
+        // The parent knows the GroovyExtras base class.
+        super(GroovyExtras.LOADER);
+        this.classes = Map.copyOf(classes);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+
+        // Don't bother asking the parent for our own classes.
+        if (!classes.containsKey(name)) {
+            return super.loadClass(name, resolve);
+        }
+
+        synchronized (getClassLoadingLock(name)) {
+
+            Class<?> found = findLoadedClass(name);
+            if (found == null) {
+                found = findClass(name);
+            }
+
+            if (resolve) {
+                resolveClass(found);
+            }
+
+            return found;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+
+        byte[] bytecode = classes.get(name);
+
+        if (bytecode == null) {
+            throw new ClassNotFoundException(name);
+        }
+
+        return defineClass(name, bytecode, 0, bytecode.length);
+    }
+}
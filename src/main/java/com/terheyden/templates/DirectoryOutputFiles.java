@@ -0,0 +1,88 @@
+package com.terheyden.templates;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Writes the output files of one run, atomically, syncing them to disk as the {@link Durability} says.
+ * Creates their dirs as needed. Thread-safe.
+ */
+final class DirectoryOutputFiles implements OutputFiles {
+
+    private final Durability durability;
+    /**
+     * The files this run actually wrote, for {@link Durability#END_OF_RUN}.
+     */
+    private final Set<Path> unsyncedFiles = ConcurrentHashMap.newKeySet();
+
+    DirectoryOutputFiles(Durability durability) {
+        this.durability = durability;
+    }
+
+    @Override
+    public void write(Path saveFile, Consumer<Writer> contentWriter) {
+        FileUtils2.createDirectories(saveFile.toAbsolutePath().getParent());
+        FileUtils2.writeAtomically(saveFile, contentWriter, syncNow());
+        written(saveFile);
+    }
+
+    /**
+     * Leaves the file alone (and its mtime) if its content didn't change, and doesn't sync it at the end of the run.
+     */
+    @Override
+    public String writeIfChanged(Path saveFile, Consumer<Writer> contentWriter) {
+        FileUtils2.createDirectories(saveFile.toAbsolutePath().getParent());
+        return FileUtils2.writeIfChanged(saveFile, contentWriter, syncNow(), () -> written(saveFile));
+    }
+
+    @Override
+    public long copy(Path sourceFile, Path saveFile) {
+        try {
+
+            FileUtils2.createDirectories(saveFile.toAbsolutePath().getParent());
+            FileUtils2.copyAtomically(sourceFile, saveFile, syncNow());
+            written(saveFile);
+            return Files.size(saveFile);
+
+        } catch (IOException e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Do the end-of-run syncing, if that's the policy. What was written stays, even if the run wasn't complete.
+     */
+    @Override
+    public void finish(boolean complete) {
+
+        if (durability != Durability.END_OF_RUN) {
+            return;
+        }
+
+        Set<Path> dirs = new HashSet<>();
+
+        for (Path file : unsyncedFiles) {
+            FileUtils2.fsync(file);
+            dirs.add(file.toAbsolutePath().getParent());
+        }
+
+        dirs.forEach(FileUtils2::fsync);
+        unsyncedFiles.clear();
+    }
+
+    private boolean syncNow() {
+        return durability == Durability.EACH_FILE;
+    }
+
+    private void written(Path saveFile) {
+        if (durability == Durability.END_OF_RUN) {
+            unsyncedFiles.add(saveFile);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.terheyden.templates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Compiled template bytecode, persisted to disk so the next JVM doesn't have to recompile it.
+ * <p>
+ * Entries are keyed by a hash of everything that affects the bytecode (see {@link TemplateCompiler}),
+ * so a changed template, Groovy version, or extras file just means a different key; stale entries
+ * are never read, only left behind. Entries are written to a temp file and moved into place, so
+ * concurrent processes never see half-written entries. Unreadable entries are deleted and recompiled.
+ */
+public final class DiskTemplateCache {
+
+    private static final Logger LOG = getLogger(DiskTemplateCache.class);
+
+    /**
+     * Bump this if the entry file format changes.
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x43505431; // "CPT1"
+    private static final String EXTENSION = ".classes";
+
+    private final Path cacheDir;
+
+    public DiskTemplateCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * @param key hash identifying the compiled template
+     * @return class name to bytecode, or empty if it's not cached (or the entry was unreadable)
+     */
+    Optional<Map<String, byte[]>> load(String key) {
+
+        Path entryFile = entryFile(key);
+
+        if (Files.notExists(entryFile)) {
+            return Optional.empty();
+        }
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(entryFile))) {
+
+            Map<String, byte[]> classes = readEntry(in);
+            LOG.debug("Loaded compiled template from disk cache: {}", entryFile);
+            return Optional.of(classes);
+
+        } catch (Exception e) {
+            LOG.warn("Deleting unreadable template cache entry: {}", entryFile, e);
+            FileUtils2.deleteQuietly(entryFile);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Save compiled template bytecode. Failures are logged and ignored; the cache is only an optimization.
+     * @param key hash identifying the compiled template
+     * @param classes class name to bytecode
+     */
+    void store(String key, Map<String, byte[]> classes) {
+
+        Path entryFile = entryFile(key);
+        Path tempFile = null;
+
+        try {
+
+            FileUtils2.createDirectories(cacheDir);
+            tempFile = Files.createTempFile(cacheDir, key, ".tmp");
+
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                writeEntry(out, classes);
+            }
+
+            Files.move(tempFile, entryFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            LOG.debug("Saved compiled template to disk cache: {}", entryFile);
+
+        } catch (Exception e) {
+            LOG.warn("Could not save template cache entry: {}", entryFile, e);
+            FileUtils2.deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Read one entry's classes; {@link PrecompiledTemplates} uses the same format. Doesn't close the stream.
+     * @return class name to bytecode
+     */
+    static Map<String, byte[]> readEntry(InputStream input) throws IOException {
+
+        DataInputStream in = new DataInputStream(input);
+
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a compiled template cache entry");
+        }
+
+        int classCount = in.readInt();
+        Map<String, byte[]> classes = new LinkedHashMap<>(classCount);
+
+        for (int i = 0; i < classCount; i++) {
+            String className = in.readUTF();
+            byte[] bytecode = new byte[in.readInt()];
+            in.readFully(bytecode);
+            classes.put(className, bytecode);
+        }
+
+        return classes;
+    }
+
+    /**
+     * Write one entry's classes. Flushes, but doesn't close, the stream.
+     * @param classes class name to bytecode
+     */
+    static void writeEntry(OutputStream output, Map<String, byte[]> classes) throws IOException {
+
+        DataOutputStream out = new DataOutputStream(output);
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(classes.size());
+
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+
+        out.flush();
+    }
+
+    private Path entryFile(String key) {
+        return cacheDir.resolve(key + EXTENSION);
+    }
+}
@@ -0,0 +1,26 @@
+package com.terheyden.templates;
+
+/**
+ * How hard to try to get generated files onto the disk before a run returns.
+ * Output files are always written to a temp file and renamed into place, so a crash never leaves
+ * a half-written file; this is about whether they survive a power cut once the run is done.
+ */
+public enum Durability {
+
+    /**
+     * Leave it to the OS. Fastest.
+     */
+    NONE,
+
+    /**
+     * Sync each file before renaming it into place, and its dir after. Safest, and slowest.
+     */
+    EACH_FILE,
+
+    /**
+     * Sync every written file, then each of their dirs once, at the end of the run.
+     * Nearly as safe as {@link #EACH_FILE} once the run returns, but the OS can write files back
+     * in the meantime instead of the run waiting on each one.
+     */
+    END_OF_RUN
+}
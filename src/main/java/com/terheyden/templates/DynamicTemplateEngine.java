@@ -0,0 +1,21 @@
+package com.terheyden.templates;
+
+import java.util.Map;
+
+/**
+ * The default engine: {@link groovy.text.SimpleTemplateEngine} syntax, compiled as plain dynamic Groovy
+ * (see {@link TemplateParser}). Variables are looked up in the properties as they're used;
+ * any declared in the header are ignored.
+ */
+final class DynamicTemplateEngine implements TemplateEngine {
+
+    @Override
+    public String name() {
+        return "dynamic";
+    }
+
+    @Override
+    public TemplateScript toScript(String template, Map<String, String> variables) {
+        return GroovyTemplater.toScript(template);
+    }
+}
@@ -1,18 +1,38 @@
 package com.terheyden.templates;
 
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -45,6 +65,11 @@ public final class FileUtils2 {
         }
     }
 
+    /**
+     * Lazily stream the regular files under the dir. Each file's type comes from the attributes
+     * read during the walk, so there's no extra stat per file.
+     * Links to files count as files; links to dirs aren't followed.
+     */
     public static Stream<Path> findFiles(Path startDir, int maxDepth) {
         try {
 
@@ -56,9 +81,11 @@ public final class FileUtils2 {
                 throw new IllegalArgumentException("Start dir isn't a directory: " + startDir);
             }
 
-            return Files
-                .walk(startDir, maxDepth)
-                .filter(Files::isRegularFile);
+            return Files.find(
+                startDir,
+                maxDepth,
+                (path, attrs) -> attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(path)));
+
         } catch (IOException e) {
             return Exceptions.throwUnchecked(e);
         }
@@ -79,9 +106,7 @@ public final class FileUtils2 {
     public static Stream<Path> findDirs(Path startDir, int maxDepth) {
         try {
 
-            return Files
-                .walk(startDir, maxDepth)
-                .filter(Files::isDirectory);
+            return Files.find(startDir, maxDepth, (path, attrs) -> attrs.isDirectory());
         } catch (IOException e) {
             return Exceptions.throwUnchecked(e);
         }
@@ -118,79 +143,122 @@ public final class FileUtils2 {
     }
 
     /**
-     * Simplistic grep we can use to find GString usages, so we can generate
-     * settings and sandboxes for the user.
+     * Walk the dir, handing each matching file to the visitor as soon as it's found,
+     * so the caller can start on it while the walk continues. Nothing is collected, so memory stays flat
+     * however big the tree is. Excluded dirs are skipped entirely.
+     * <p>
+     * Files and dirs that can't be read (and link loops) go to the error handler, and the walk carries on.
+     * @return the number of files visited
      */
-    public static List<String> grep(Path startDir, String regex, int context) {
+    public static long walkFiles(
+        Path startDir,
+        WalkOptions options,
+        Consumer<RelativeFile> visitor,
+        BiConsumer<Path, IOException> errorHandler) {
+
+        if (!Files.isDirectory(startDir)) {
+            throw new IllegalArgumentException("Start dir isn't a directory: " + startDir);
+        }
 
-        return findFiles(startDir)
-            .flatMap(file -> grepFile(file, regex, context))
-            .toList();
-    }
+        PathFilter filter = new PathFilter(options);
+        boolean follow = options.symlinks() == WalkOptions.Symlinks.FOLLOW;
+        AtomicLong fileCount = new AtomicLong();
 
-    private static Stream<String> grepFile(Path file, String regex, int context) {
         try {
 
-            List<String> snips = new ArrayList<>();
-            List<String> lines = Files.readAllLines(file);
-            Pattern pattern = Pattern.compile(regex);
+            Files.walkFileTree(
+                startDir,
+                follow ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class),
+                Integer.MAX_VALUE,
+                new SimpleFileVisitor<>() {
+
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        return dir.equals(startDir) || filter.acceptsDir(startDir.relativize(dir))
+                            ? FileVisitResult.CONTINUE
+                            : FileVisitResult.SKIP_SUBTREE;
+                    }
 
-            for (int index = 0; index < lines.size(); index++) {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
 
-                String line = lines.get(index);
+                        if (isWalkedFile(file, attrs, options.symlinks())
+                            && filter.acceptsFile(startDir.relativize(file))) {
 
-                if (!pattern.matcher(line).find()) {
-                    continue;
-                }
+                            fileCount.incrementAndGet();
+                            visitor.accept(new RelativeFile(startDir, file));
+                        }
 
-                StringBuilder snip = new StringBuilder();
-
-                // Add the context lines above.
-                for (int i = index - context; i < index; i++) {
-                    if (i >= 0) {
-                        snip.append(lines.get(i)).append('\n');
+                        return FileVisitResult.CONTINUE;
                     }
-                }
-
-                // Add the matching line.
-                snip.append(line).append('\n');
 
-                // Add the context lines below.
-                for (int i = index + 1; i <= index + context; i++) {
-                    if (i < lines.size()) {
-                        snip.append(lines.get(i)).append('\n');
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        errorHandler.accept(file, e);
+                        return FileVisitResult.CONTINUE;
                     }
-                }
+                });
 
-                snips.add(snip.toString());
-            }
+        } catch (IOException e) {
+            Exceptions.throwUnchecked(e);
+        }
 
-            return snips.stream();
+        return fileCount.get();
+    }
 
-        } catch (Exception e) {
-            return Exceptions.throwUnchecked(e);
+    /**
+     * Links are only reported as links when we aren't following them.
+     */
+    private static boolean isWalkedFile(Path file, BasicFileAttributes attrs, WalkOptions.Symlinks symlinks) {
+
+        if (!attrs.isSymbolicLink()) {
+            return attrs.isRegularFile();
         }
+
+        return symlinks == WalkOptions.Symlinks.FILES_ONLY && Files.isRegularFile(file);
+    }
+
+    /**
+     * Simplistic grep we can use to find GString usages, so we can generate
+     * settings and sandboxes for the user. Returns each matching line with its context lines;
+     * see {@link Grep} for matches with file and line numbers.
+     */
+    public static List<String> grep(Path startDir, String regex, int context) {
+
+        return Grep
+            .search(startDir, regex, GrepOptions.defaults().withContext(context))
+            .map(GrepMatch::snippet)
+            .toList();
     }
 
+    /**
+     * Delete the dir and everything in it, in one pass: each dir is deleted right after its contents.
+     * Links are deleted, not followed.
+     */
     public static void deleteEntireDir(Path dir) {
         try {
 
-            // First delete the files.
-            List<Path> allFiles = findFiles(dir).toList();
-            for (Path file : allFiles) {
-                LOG.debug("Cleaning: {}", file);
-                Files.delete(file);
-            }
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
 
-            // Then delete the subdirs.
-            List<Path> allDirs = findDirs(dir)
-                .sorted((dir1, dir2) -> dir2.getNameCount() - dir1.getNameCount())
-                .toList();
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    LOG.debug("Cleaning: {}", file);
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
 
-            for (Path subDir : allDirs) {
-                LOG.debug("Cleaning: {}", subDir);
-                Files.delete(subDir);
-            }
+                @Override
+                public FileVisitResult postVisitDirectory(Path subDir, @Nullable IOException e) throws IOException {
+
+                    if (e != null) {
+                        throw e;
+                    }
+
+                    LOG.debug("Cleaning: {}", subDir);
+                    Files.delete(subDir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
 
         } catch (Exception e) {
             Exceptions.throwUnchecked(e);
@@ -218,21 +286,256 @@ public final class FileUtils2 {
         }
     }
 
+    /**
+     * Like {@link Files#createDirectories}, but safe to call from many threads at once.
+     * If another thread creates the dir (or one of its parents) first, that's fine, as long as it's a dir.
+     */
+    public static void createDirectories(Path dir) {
+        try {
+
+            Files.createDirectories(dir);
+
+        } catch (FileAlreadyExistsException e) {
+            // Lost a race with another thread; only a problem if it's a file and not a dir.
+            if (!Files.isDirectory(dir)) {
+                Exceptions.throwUnchecked(e);
+            }
+        } catch (Exception e) {
+            Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Write a UTF-8 text file atomically, see {@link #writeAtomically}.
+     */
     public static void writeFile(Path saveFile, String text) {
+        writeAtomically(
+            saveFile,
+            writer -> Try.run(() -> writer.write(text)).onFailure(Exceptions::throwUnchecked),
+            false);
+    }
+
+    /**
+     * Open a buffered UTF-8 writer to the given file, creating it or clobbering it.
+     * For streaming large outputs to disk; the caller must close it.
+     * Not atomic; prefer {@link #writeAtomically} for output files.
+     */
+    public static BufferedWriter newWriter(Path saveFile) {
         try {
 
-            Files.writeString(
+            return Files.newBufferedWriter(
                 saveFile,
-                text,
                 StandardCharsets.UTF_8,
                 StandardOpenOption.CREATE,             // Create if not exists.
-                StandardOpenOption.TRUNCATE_EXISTING); // Clobber if it exists.
+                StandardOpenOption.TRUNCATE_EXISTING,  // Clobber if it exists.
+                StandardOpenOption.WRITE);
 
         } catch (Exception e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Write a UTF-8 file via the given writer, into a temp file next to the save file,
+     * then rename it into place. Readers (and crashes) see the old file or the new one, never half of one.
+     * A replaced file keeps its permissions.
+     * @param fsync sync the file before renaming it, and the dir after, so it survives a power cut
+     */
+    public static void writeAtomically(Path saveFile, Consumer<Writer> contentWriter, boolean fsync) {
+
+        Path tempFile = null;
+
+        try {
+
+            tempFile = createTempSibling(saveFile);
+
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+                 Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8))) {
+
+                contentWriter.accept(writer);
+                writer.flush();
+
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+
+            moveIntoPlace(tempFile, saveFile, fsync);
+
+        } catch (Exception e) {
+            deleteQuietly(tempFile);
             Exceptions.throwUnchecked(e);
         }
     }
 
+    /**
+     * Write a file via the given writer, but only touch the real file if the content changed.
+     */
+    public static String writeIfChanged(Path saveFile, Consumer<Writer> contentWriter) {
+        return writeIfChanged(saveFile, contentWriter, false);
+    }
+
+    /**
+     * Write a file via the given writer, but only touch the real file if the content changed.
+     * The content is written to a temp file next to the save file and hashed on the way;
+     * if the save file already has the same hash the temp file is dropped, otherwise it's renamed into place.
+     * Leaving unchanged files alone keeps their mtimes, so downstream builds don't think they changed.
+     * @param fsync sync a changed file before renaming it, and the dir after
+     * @return the SHA-256 hash of the content
+     */
+    public static String writeIfChanged(Path saveFile, Consumer<Writer> contentWriter, boolean fsync) {
+        return writeIfChanged(saveFile, contentWriter, fsync, () -> { });
+    }
+
+    /**
+     * @param onChanged run once the changed file is in place; not run if it was unchanged
+     */
+    static String writeIfChanged(Path saveFile, Consumer<Writer> contentWriter, boolean fsync, Runnable onChanged) {
+
+        Path tempFile = null;
+
+        try {
+
+            tempFile = createTempSibling(saveFile);
+            MessageDigest digest = Hashing.newSha256();
+
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(
+                     new DigestOutputStream(Channels.newOutputStream(channel), digest),
+                     StandardCharsets.UTF_8))) {
+
+                contentWriter.accept(writer);
+                writer.flush();
+
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+
+            String newHash = Hashing.toHex(digest);
+
+            if (Files.isRegularFile(saveFile) && Hashing.sha256(saveFile).equals(newHash)) {
+                LOG.debug("Unchanged, not rewriting: {}", saveFile);
+                Files.delete(tempFile);
+            } else {
+                moveIntoPlace(tempFile, saveFile, fsync);
+                onChanged.run();
+            }
+
+            return newHash;
+
+        } catch (Exception e) {
+            deleteQuietly(tempFile);
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Copy a file byte-for-byte, atomically, creating or replacing the save file.
+     */
+    public static void copyFile(Path sourceFile, Path saveFile) {
+        copyAtomically(sourceFile, saveFile, false);
+    }
+
+    /**
+     * Copy a file byte-for-byte into a temp file next to the save file, then rename it into place.
+     * Uses {@link FileChannel#transferTo}, so the OS can copy it without it passing through the JVM.
+     * @param fsync sync the file before renaming it, and the dir after
+     */
+    public static void copyAtomically(Path sourceFile, Path saveFile, boolean fsync) {
+
+        Path tempFile = null;
+
+        try {
+
+            tempFile = createTempSibling(saveFile);
+
+            try (FileChannel in = FileChannel.open(sourceFile, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+
+                long position = 0;
+                long transferred;
+
+                // May transfer less than asked for, so keep going until the end of the file,
+                // wherever that is by now; it may have grown or shrunk since we opened it.
+                while ((transferred = in.transferTo(position, Long.MAX_VALUE - position, out)) > 0) {
+                    position += transferred;
+                }
+
+                if (fsync) {
+                    out.force(true);
+                }
+            }
+
+            moveIntoPlace(tempFile, saveFile, fsync);
+
+        } catch (Exception e) {
+            deleteQuietly(tempFile);
+            Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Flush the file's (or dir's) data and metadata to disk.
+     * Some platforms (Windows) can't sync dirs; that's logged and skipped.
+     */
+    public static void fsync(Path fileOrDir) {
+        try (FileChannel channel = FileChannel.open(fileOrDir, StandardOpenOption.READ)) {
+
+            channel.force(true);
+
+        } catch (IOException e) {
+
+            if (!Files.isDirectory(fileOrDir)) {
+                Exceptions.throwUnchecked(e);
+            }
+
+            LOG.debug("Can't sync dir, skipping: {}", fileOrDir, e);
+        }
+    }
+
+    /**
+     * A new, empty, hidden file in the same dir, so renaming it over the save file is atomic.
+     * Created with default permissions, unlike {@link Files#createTempFile}, which makes it owner-only.
+     */
+    static Path createTempSibling(Path saveFile) throws IOException {
+        Path saveDir = saveFile.toAbsolutePath().getParent();
+        return Files.createFile(saveDir.resolve("." + saveFile.getFileName() + "." + UUID.randomUUID() + ".tmp"));
+    }
+
+    static void moveIntoPlace(Path tempFile, Path saveFile, boolean fsyncDir) throws IOException {
+
+        if (Files.exists(saveFile)
+            && Files.getFileStore(saveFile).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            // E.g. keep an executable script executable.
+            Files.setPosixFilePermissions(tempFile, Files.getPosixFilePermissions(saveFile));
+        }
+
+        try {
+            Files.move(tempFile, saveFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            LOG.debug("Atomic moves not supported, replacing: {}", saveFile);
+            Files.move(tempFile, saveFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (fsyncDir) {
+            fsync(saveFile.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Best-effort cleanup, e.g. of temp files after a failure.
+     */
+    static void deleteQuietly(@Nullable Path file) {
+        try {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (Exception e) {
+            LOG.debug("Could not delete: {}", file, e);
+        }
+    }
+
     /**
      * Load a file of settings stored in the Java Properties format.
      * Convert the Properties to a Map, and return it.
@@ -0,0 +1,65 @@
+package com.terheyden.templates;
+
+/**
+ * Knobs for {@link Templates#generate(java.nio.file.Path, java.nio.file.Path, java.util.Map, GenerateOptions)}.
+ * Start with {@link #defaults()} and use the {@code withX()} methods to change things.
+ *
+ * @param threads number of worker threads used to generate a directory of templates
+ * @param incremental skip templates whose inputs haven't changed since the last run,
+ *                    and don't touch output files whose content hasn't changed (see {@link GenerationManifest})
+ * @param walk which files in a directory of templates to generate
+ * @param listener hears about each file generated, e.g. {@link RenderStats}
+ * @param limits sandboxing, and time and output size limits for each template
+ * @param durability when to sync output files to disk; they're always written atomically
+ */
+public record GenerateOptions(
+    int threads,
+    boolean incremental,
+    WalkOptions walk,
+    RenderListener listener,
+    RenderLimits limits,
+    Durability durability) {
+
+    public GenerateOptions {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+    }
+
+    /**
+     * One thread per core, not incremental, every file, nobody listening, no limits, no syncing.
+     */
+    public static GenerateOptions defaults() {
+        return new GenerateOptions(
+            Runtime.getRuntime().availableProcessors(),
+            false,
+            WalkOptions.defaults(),
+            RenderListener.NONE,
+            RenderLimits.none(),
+            Durability.NONE);
+    }
+
+    public GenerateOptions withThreads(int newThreads) {
+        return new GenerateOptions(newThreads, incremental, walk, listener, limits, durability);
+    }
+
+    public GenerateOptions withIncremental(boolean newIncremental) {
+        return new GenerateOptions(threads, newIncremental, walk, listener, limits, durability);
+    }
+
+    public GenerateOptions withWalk(WalkOptions newWalk) {
+        return new GenerateOptions(threads, incremental, newWalk, listener, limits, durability);
+    }
+
+    public GenerateOptions withListener(RenderListener newListener) {
+        return new GenerateOptions(threads, incremental, walk, newListener, limits, durability);
+    }
+
+    public GenerateOptions withLimits(RenderLimits newLimits) {
+        return new GenerateOptions(threads, incremental, walk, listener, newLimits, durability);
+    }
+
+    public GenerateOptions withDurability(Durability newDurability) {
+        return new GenerateOptions(threads, incremental, walk, listener, limits, newDurability);
+    }
+}
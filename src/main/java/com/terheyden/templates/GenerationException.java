@@ -0,0 +1,55 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Thrown when one or more template files failed to generate.
+ * Holds every failure, so the user can fix them all in one go.
+ */
+public class GenerationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Map<Path, Throwable> failures;
+
+    /**
+     * @param failures each failed source file, and why it failed
+     * @param fileCount the total number of files we tried to generate
+     */
+    public GenerationException(Map<Path, Throwable> failures, int fileCount) {
+        super(buildMessage(sorted(failures), fileCount));
+        this.failures = sorted(failures);
+        this.failures.values().forEach(this::addSuppressed);
+    }
+
+    private static Map<Path, Throwable> sorted(Map<Path, Throwable> failures) {
+        return Collections.unmodifiableMap(new TreeMap<>(failures));
+    }
+
+    private static String buildMessage(Map<Path, Throwable> failures, int fileCount) {
+
+        StringBuilder message = new StringBuilder()
+            .append(failures.size())
+            .append(" of ")
+            .append(fileCount)
+            .append(" template files failed to generate:");
+
+        failures.forEach((file, failure) -> message
+            .append("\n  ")
+            .append(file)
+            .append(": ")
+            .append(failure));
+
+        return message.toString();
+    }
+
+    /**
+     * Each failed source file, and why it failed.
+     */
+    public Map<Path, Throwable> getFailures() {
+        return failures;
+    }
+}
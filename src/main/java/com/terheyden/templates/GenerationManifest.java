@@ -0,0 +1,152 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Remembers what each output file was generated from, for incremental generation.
+ * Saved as a YAML file in the output dir, mapping each output file (relative to the output dir)
+ * to hashes of its template, the properties, and the generated output.
+ * <p>
+ * If the template and properties hashes still match, and the output file still has the recorded hash,
+ * there's no need to render it again.
+ */
+final class GenerationManifest {
+
+    private static final Logger LOG = getLogger(GenerationManifest.class);
+
+    static final String FILE_NAME = ".codepuncher-manifest.yaml";
+
+    private static final TypeReference<Map<String, Entry>> ENTRIES = new TypeReference<>() {
+    };
+
+    private final Path manifestFile;
+    private final Map<String, Entry> entries;
+
+    private GenerationManifest(Path manifestFile, Map<String, Entry> entries) {
+        this.manifestFile = manifestFile;
+        this.entries = new ConcurrentHashMap<>(entries);
+    }
+
+    /**
+     * Load the manifest from the output dir. If it's missing or unreadable, start fresh.
+     */
+    static GenerationManifest load(Path outputDir) {
+
+        Path manifestFile = outputDir.resolve(FILE_NAME);
+
+        if (Files.notExists(manifestFile)) {
+            return new GenerationManifest(manifestFile, Map.of());
+        }
+
+        try {
+
+            Map<String, Entry> entries = YamlMapper.yamlToObj(FileUtils2.readFile(manifestFile), ENTRIES);
+            return new GenerationManifest(manifestFile, entries == null ? Map.of() : entries);
+
+        } catch (Exception e) {
+            LOG.warn("Ignoring unreadable manifest, everything will be regenerated: {}", manifestFile, e);
+            return new GenerationManifest(manifestFile, Map.of());
+        }
+    }
+
+    /**
+     * @param outputFile an output file, relative to the output dir
+     */
+    Optional<Entry> get(Path outputFile) {
+        return Optional.ofNullable(entries.get(key(outputFile)));
+    }
+
+    /**
+     * @param outputFile an output file, relative to the output dir
+     */
+    void put(Path outputFile, Entry entry) {
+        entries.put(key(outputFile), entry);
+    }
+
+    /**
+     * Forget an output file, e.g. because it failed to generate, so it's regenerated next time.
+     * @param outputFile an output file, relative to the output dir
+     */
+    void remove(Path outputFile) {
+        entries.remove(key(outputFile));
+    }
+
+    Collection<String> outputFiles() {
+        return entries.keySet();
+    }
+
+    void save() {
+        FileUtils2.createDirectories(manifestFile.toAbsolutePath().getParent());
+        // Sorted, so the file is stable and diffable.
+        FileUtils2.writeFile(manifestFile, YamlMapper.objToYaml(new TreeMap<>(entries)));
+    }
+
+    /**
+     * Same key on every OS.
+     */
+    private static String key(Path outputFile) {
+        return outputFile.toString().replace('\\', '/');
+    }
+
+    /**
+     * A hash of the properties. Maps are sorted first, so key order doesn't matter.
+     * Values are hashed by their {@code toString()}; values without a stable {@code toString()}
+     * will always look changed, which is safe, just not incremental.
+     */
+    static String hashProps(Map<String, Object> props) {
+        return Hashing.sha256(String.valueOf(sortMaps(props)));
+    }
+
+    private static Object sortMaps(Object value) {
+
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((key, val) -> sorted.put(String.valueOf(key), sortMaps(val)));
+            return sorted;
+        }
+
+        if (value instanceof Collection<?> collection) {
+            return collection.stream().map(GenerationManifest::sortMaps).toList();
+        }
+
+        return value;
+    }
+
+    /**
+     * What one output file was generated from.
+     * @param includes each partial the template included (relative to the template dir), and its hash
+     */
+    record Entry(
+        String templateHash,
+        String propsHash,
+        String outputHash,
+        @JsonInclude(JsonInclude.Include.NON_EMPTY) Map<String, String> includes) {
+
+        Entry {
+            // Older manifests don't have includes. Sorted, like the rest of the file.
+            includes = includes == null ? Map.of() : Collections.unmodifiableMap(new TreeMap<>(includes));
+        }
+
+        Entry(String templateHash, String propsHash, String outputHash) {
+            this(templateHash, propsHash, outputHash, Map.of());
+        }
+
+        boolean sameInputs(String newTemplateHash, String newPropsHash) {
+            return templateHash.equals(newTemplateHash) && propsHash.equals(newPropsHash);
+        }
+    }
+}
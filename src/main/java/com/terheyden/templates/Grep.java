@@ -0,0 +1,349 @@
+package com.terheyden.templates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Searches a dir of files for a regex, e.g. to find the GString usages in a project,
+ * so we can generate settings and sandboxes for the user.
+ * <p>
+ * The pattern is compiled once and matched against each line, like grep. Files are streamed a line
+ * at a time, so memory stays flat however big they are, and a few files ahead of the consumer are
+ * searched in parallel. Binary files (anything with a NUL byte near the start, same as git) are skipped,
+ * and bad UTF-8 is replaced rather than failing the search.
+ * <p>
+ * Like git, {@code .gitignore} files in any walked dir apply to everything under it,
+ * and deeper ones override their parents.
+ */
+public final class Grep {
+
+    private static final Logger LOG = getLogger(Grep.class);
+
+    /**
+     * How far into a file to look for NUL bytes. Git looks this far too.
+     */
+    private static final int BINARY_CHECK_BYTES = 8000;
+
+    /**
+     * How many files to search ahead of the consumer, per thread.
+     */
+    private static final int AHEAD_PER_THREAD = 2;
+
+    private Grep() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Search with a regex that's matched against each line, like grep;
+     * i.e. {@code ^} and {@code $} match at line starts and ends.
+     */
+    public static Stream<GrepMatch> search(Path startDir, String regex, GrepOptions options) {
+        return search(startDir, Pattern.compile(regex), options);
+    }
+
+    /**
+     * Search with a compiled pattern, which is matched against each line (without its line ending).
+     * Each matching line is reported once, in file order; files are in dir-walk order.
+     * Files are found and searched lazily, a few ahead of the consumer, so stop consuming
+     * (or hit {@link GrepOptions#maxMatches()}) to stop searching. Close the stream if you stop early.
+     */
+    public static Stream<GrepMatch> search(Path startDir, Pattern pattern, GrepOptions options) {
+
+        if (Files.notExists(startDir)) {
+            throw new IllegalArgumentException("Start dir doesn't exist: " + startDir);
+        }
+
+        SearchAhead searches = new SearchAhead(
+            new FileWalker(startDir, options),
+            file -> searchFile(file, pattern, options.context(), options.maxMatches()));
+
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(searches, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(searches::cancel)
+            .flatMap(List::stream)
+            .limit(options.maxMatches());
+    }
+
+    /**
+     * @param maxMatches stop reading the file after this many matching lines
+     */
+    static List<GrepMatch> searchFile(Path file, Pattern pattern, int context, long maxMatches) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+
+            if (isBinary(in)) {
+                LOG.debug("Binary, skipping: {}", file);
+                return List.of();
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                in,
+                StandardCharsets.UTF_8
+                    .newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)));
+
+            List<GrepMatch> matches = new ArrayList<>();
+            Deque<String> before = new ArrayDeque<>(context + 1);
+            // Matches still collecting their after-context.
+            Deque<PendingMatch> pending = new ArrayDeque<>();
+            int lineNumber = 0;
+            String line;
+
+            while (matches.size() < maxMatches && (line = reader.readLine()) != null) {
+
+                lineNumber++;
+
+                for (PendingMatch match : pending) {
+                    match.after.add(line);
+                }
+
+                if (matches.size() + pending.size() < maxMatches && pattern.matcher(line).find()) {
+                    pending.addLast(new PendingMatch(lineNumber, line, List.copyOf(before)));
+                }
+
+                while (!pending.isEmpty() && pending.peekFirst().after.size() == context) {
+                    matches.add(pending.removeFirst().toMatch(file));
+                }
+
+                before.addLast(line);
+
+                if (before.size() > context) {
+                    before.removeFirst();
+                }
+            }
+
+            // Near the end of the file; less after-context than asked for.
+            pending.forEach(match -> matches.add(match.toMatch(file)));
+            return matches;
+
+        } catch (IOException e) {
+            LOG.debug("Can't read, skipping: {}", file, e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Peeks at the start of the stream without consuming it.
+     */
+    private static boolean isBinary(InputStream in) throws IOException {
+
+        in.mark(BINARY_CHECK_BYTES);
+
+        try {
+
+            byte[] start = in.readNBytes(BINARY_CHECK_BYTES);
+
+            for (byte b : start) {
+                if (b == 0) {
+                    return true;
+                }
+            }
+
+            return false;
+
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * @param before the context lines above it
+     */
+    private record PendingMatch(int lineNumber, String line, List<String> before, List<String> after) {
+
+        PendingMatch(int lineNumber, String line, List<String> before) {
+            this(lineNumber, line, before, new ArrayList<>());
+        }
+
+        GrepMatch toMatch(Path file) {
+            return new GrepMatch(file, lineNumber, line, before, after);
+        }
+    }
+
+    /**
+     * Searches the walked files in order, a few at a time in the background, ahead of the consumer.
+     */
+    private static final class SearchAhead implements Iterator<List<GrepMatch>> {
+
+        private final Iterator<Path> files;
+        private final Function<Path, List<GrepMatch>> search;
+        private final Deque<CompletableFuture<List<GrepMatch>>> ahead = new ArrayDeque<>();
+        private final int maxAhead = ForkJoinPool.getCommonPoolParallelism() * AHEAD_PER_THREAD;
+
+        SearchAhead(Iterator<Path> files, Function<Path, List<GrepMatch>> search) {
+            this.files = files;
+            this.search = search;
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return !ahead.isEmpty();
+        }
+
+        @Override
+        public List<GrepMatch> next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return ahead.removeFirst().join();
+        }
+
+        void cancel() {
+            ahead.forEach(future -> future.cancel(false));
+            ahead.clear();
+        }
+
+        private void fill() {
+            while (ahead.size() < maxAhead && files.hasNext()) {
+                Path file = files.next();
+                ahead.addLast(CompletableFuture.supplyAsync(() -> search.apply(file), ForkJoinPool.commonPool()));
+            }
+        }
+    }
+
+    /**
+     * Walks the dir depth-first, a dir listing at a time, skipping ignored dirs entirely
+     * instead of filtering out their files afterward. Links aren't followed.
+     */
+    private static final class FileWalker implements Iterator<Path> {
+
+        private final Path startDir;
+        private final boolean gitignore;
+        private final IgnorePatterns excludes;
+        private final Deque<Level> levels = new ArrayDeque<>();
+        private Path next;
+
+        FileWalker(Path startDir, GrepOptions options) {
+
+            this.startDir = startDir;
+            this.gitignore = options.gitignore();
+            this.excludes = IgnorePatterns.of(options.excludes());
+
+            if (Files.isDirectory(startDir, LinkOption.NOFOLLOW_LINKS)) {
+                enter(startDir);
+            } else {
+                next = startDir;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            while (next == null && !levels.isEmpty()) {
+
+                Level level = levels.peekLast();
+
+                if (!level.entries.hasNext()) {
+                    levels.removeLast();
+                    continue;
+                }
+
+                visit(level.entries.next());
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public Path next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Path file = next;
+            next = null;
+            return file;
+        }
+
+        private void visit(Path path) {
+            try {
+
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+                if (attrs.isDirectory()) {
+                    if (!isIgnored(path, true)) {
+                        enter(path);
+                    }
+                } else if (attrs.isRegularFile() && !isIgnored(path, false)) {
+                    next = path;
+                }
+
+            } catch (IOException e) {
+                LOG.debug("Can't read, skipping: {}", path, e);
+            }
+        }
+
+        private void enter(Path dir) {
+
+            List<Path> entries = new ArrayList<>();
+
+            try (DirectoryStream<Path> listing = Files.newDirectoryStream(dir)) {
+                listing.forEach(entries::add);
+            } catch (IOException e) {
+                LOG.debug("Can't read, skipping: {}", dir, e);
+                return;
+            }
+
+            levels.addLast(new Level(dir, entries.iterator(), gitignore ? IgnorePatterns.ofGitignore(dir) : IgnorePatterns.NONE));
+        }
+
+        /**
+         * Each dir's {@code .gitignore} overrides its parents' where it matches, and the excludes override them all.
+         */
+        private boolean isIgnored(Path path, boolean isDir) {
+
+            if (gitignore && isDir && path.getFileName().toString().equals(".git")) {
+                return true;
+            }
+
+            Optional<Boolean> ignored = Optional.empty();
+
+            for (Level level : levels) {
+                Optional<Boolean> decided = level.ignore.decide(level.dir.relativize(path), isDir);
+                ignored = decided.isPresent() ? decided : ignored;
+            }
+
+            Optional<Boolean> excluded = excludes.decide(startDir.relativize(path), isDir);
+            return excluded.isPresent() ? excluded.get() : ignored.orElse(false);
+        }
+
+        /**
+         * @param ignore the dir's {@code .gitignore} patterns
+         */
+        private record Level(Path dir, Iterator<Path> entries, IgnorePatterns ignore) {
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * One line that matched a {@link Grep} search.
+ *
+ * @param file the file it's in
+ * @param lineNumber the line's number, starting at 1
+ * @param line the matching line, without its line ending
+ * @param before the context lines above it
+ * @param after the context lines below it
+ */
+public record GrepMatch(Path file, int lineNumber, String line, List<String> before, List<String> after) {
+
+    public GrepMatch {
+        before = List.copyOf(before);
+        after = List.copyOf(after);
+    }
+
+    /**
+     * The context lines and the matching line, each followed by a newline.
+     */
+    public String snippet() {
+
+        StringBuilder snip = new StringBuilder();
+        before.forEach(contextLine -> snip.append(contextLine).append('\n'));
+        snip.append(line).append('\n');
+        after.forEach(contextLine -> snip.append(contextLine).append('\n'));
+        return snip.toString();
+    }
+}
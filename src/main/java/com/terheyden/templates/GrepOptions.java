@@ -0,0 +1,51 @@
+package com.terheyden.templates;
+
+import java.util.List;
+
+/**
+ * Knobs for {@link Grep#search(java.nio.file.Path, String, GrepOptions)}.
+ * Start with {@link #defaults()} and use the {@code withX()} methods to change things.
+ *
+ * @param context number of lines to include above and below each matching line
+ * @param maxMatches stop searching after this many matches
+ * @param excludes {@code .gitignore}-style patterns of files and dirs to skip
+ * @param gitignore also skip {@code .git/} dirs, and whatever the {@code .gitignore} files in the walked dirs say to
+ */
+public record GrepOptions(int context, long maxMatches, List<String> excludes, boolean gitignore) {
+
+    public GrepOptions {
+
+        if (context < 0) {
+            throw new IllegalArgumentException("Context can't be negative: " + context);
+        }
+
+        if (maxMatches < 1) {
+            throw new IllegalArgumentException("Max matches must be at least 1: " + maxMatches);
+        }
+
+        excludes = List.copyOf(excludes);
+    }
+
+    /**
+     * No context, no limit, no excludes, and honor {@code .gitignore}.
+     */
+    public static GrepOptions defaults() {
+        return new GrepOptions(0, Long.MAX_VALUE, List.of(), true);
+    }
+
+    public GrepOptions withContext(int newContext) {
+        return new GrepOptions(newContext, maxMatches, excludes, gitignore);
+    }
+
+    public GrepOptions withMaxMatches(long newMaxMatches) {
+        return new GrepOptions(context, newMaxMatches, excludes, gitignore);
+    }
+
+    public GrepOptions withExcludes(List<String> newExcludes) {
+        return new GrepOptions(context, maxMatches, newExcludes, gitignore);
+    }
+
+    public GrepOptions withGitignore(boolean newGitignore) {
+        return new GrepOptions(context, maxMatches, excludes, newGitignore);
+    }
+}
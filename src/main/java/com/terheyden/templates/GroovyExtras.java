@@ -0,0 +1,52 @@
+package com.terheyden.templates;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+
+/**
+ * Extra methods available to every template, e.g. {@code slugify()}.
+ * <p>
+ * The methods live in {@code GroovyExtras.groovy}, which is compiled once per JVM into a {@link Script} subclass.
+ * Every template is then compiled as a subclass of that script, so the methods are inherited
+ * rather than pasted into (and recompiled with) every template.
+ * <p>
+ * Since templates override the base script's {@code run()}, the extras file should only declare methods;
+ * any top-level statements in it will never run.
+ */
+final class GroovyExtras {
+
+    /**
+     * The Groovy source of the extras.
+     */
+    static final String SOURCE = FileUtils2.readResource("GroovyExtras.groovy");
+
+    /**
+     * Identifies the extras that templates are compiled against, so changing them invalidates any caches.
+     */
+    static final String HASH = Hashing.sha256(SOURCE);
+
+    /**
+     * Holds the compiled extras class, so templates can find their base class.
+     */
+    static final GroovyClassLoader LOADER = new GroovyClassLoader(GroovyExtras.class.getClassLoader());
+
+    /**
+     * The compiled extras; the base class of every template script.
+     */
+    static final Class<?> BASE_CLASS = LOADER.parseClass(SOURCE, "GroovyExtras.groovy");
+
+    private GroovyExtras() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Compiler settings for templates that extend the extras.
+     */
+    static CompilerConfiguration compilerConfiguration() {
+        CompilerConfiguration config = new CompilerConfiguration();
+        config.setScriptBaseClass(BASE_CLASS.getName());
+        return config;
+    }
+}
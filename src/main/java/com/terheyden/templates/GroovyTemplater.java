@@ -1,16 +1,15 @@
 package com.terheyden.templates;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Optional;
 
 import org.slf4j.Logger;
 
 import groovy.lang.Writable;
 import groovy.text.GStringTemplateEngine;
-import groovy.text.SimpleTemplateEngine;
 import groovy.text.Template;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -18,25 +17,31 @@ import static org.slf4j.LoggerFactory.getLogger;
 /**
  * Groovy-powered text templating.
  * Specifying variable maps, Groovy templates, and combining the two.
+ * <p>
+ * Why SimpleTemplateEngine syntax and not e.g. GStringTemplateEngine?
+ * GStringTemplateEngine (and others) are streaming, which makes their
+ * syntax clunkier to use. SimpleTemplateEngine is easier to read and work with.
+ * We do the SimpleTemplateEngine translation ourselves ({@link TemplateParser})
+ * so we can get at the bytecode and cache it on disk.
  */
 public final class GroovyTemplater {
 
     private static final Logger LOG = getLogger(GroovyTemplater.class);
 
-    // Any backslash NOT at the EOL (those are special to Groovy).
-    private static final Pattern JAVA_ESCAPES = Pattern.compile("\\\\.");
+    /**
+     * Where compiled templates are persisted across runs, if anywhere.
+     */
+    private static volatile Optional<DiskTemplateCache> diskCache = Optional.empty();
 
     /**
-     * Why SimpleTemplateEngine and not e.g. GStringTemplateEngine?
-     * GStringTemplateEngine (and others) are streaming, which makes their
-     * syntax clunkier to use. SimpleTemplateEngine is easier to read and work with.
+     * Max number of compiled templates to keep in memory.
      */
-    private static final SimpleTemplateEngine ENGINE = new SimpleTemplateEngine();
+    private static final int CACHE_SIZE = 512;
 
     /**
-     * Extra methods related to Templates.
+     * Compiled templates, keyed by a hash of the template and the extras they extend.
      */
-    private static final String GROOVY_EXTRAS = FileUtils2.readResource("GroovyExtras.groovy");
+    private static final TemplateCache CACHE = new TemplateCache(CACHE_SIZE);
 
     private GroovyTemplater() {
         // Private since this class shouldn't be instantiated.
@@ -49,80 +54,134 @@ public final class GroovyTemplater {
      * @return the result of evaluating the template and injecting the vars
      */
     public static String generate(String template, Map<String, Object> varMap) {
-        try {
+        StringWriter writer = new StringWriter();
+        generate(template, varMap, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Like {@link #generate(String, Map)}, but streams the result to the given writer
+     * instead of building it up in memory. The writer is flushed but not closed.
+     */
+    public static void generate(String template, Map<String, Object> varMap, Writer writer) {
+        writeTo(compile(template), varMap, writer);
+    }
 
-            String enhancedTemplate = enhanceGroovyTemplate(template);
-            String combinedTemplate = combineGroovyTemplateScripts(GROOVY_EXTRAS, enhancedTemplate);
-            LOG.debug("Injecting template: {}", combinedTemplate);
-            LOG.debug("Injecting vars: {}", varMap);
+    /**
+     * Render an already-compiled template to the writer, which is flushed but not closed.
+     */
+    static void writeTo(Template compiledTemplate, Map<String, Object> varMap, Writer writer) {
+        try {
 
-            Template compiledTemplate = ENGINE.createTemplate(combinedTemplate);
+            // Could be huge, so not at debug level.
+            LOG.trace("Injecting vars: {}", varMap);
 
-            // Even though we don't return it, the binding map must be mutable
-            // because the template engine will try to write to it (depending on the template).
-            HashMap<String, Object> mutableVarMap = new HashMap<>(varMap);
-            Writable writableResult = compiledTemplate.make(mutableVarMap);
-            return writableResult.toString();
+            // No need to copy the map; template writes go to a per-render overlay.
+            Writable writableResult = compiledTemplate.make(varMap);
+            writableResult.writeTo(writer);
+            writer.flush();
 
         } catch (Exception e) {
-            return Exceptions.throwUnchecked(e);
+            Exceptions.throwUnchecked(e);
         }
     }
 
-    private static String enhanceGroovyTemplate(String template) {
-
-        // JSP comments
-        //template = template.replace("<%--", "<%/*");
-        //template = template.replace("--%>", "*/%>");
+    /**
+     * Like {@link #generate(String, Map)}, but streams the result straight to a UTF-8 file,
+     * so large outputs never have to fit in memory.
+     * The file is created or replaced atomically (see {@link FileUtils2#writeAtomically}).
+     */
+    public static void generateTo(String template, Map<String, Object> varMap, Path saveFile) {
+        FileUtils2.writeAtomically(saveFile, writer -> generate(template, varMap, writer), false);
+    }
 
-        // No newline
-        //template = template.replace("<%-", "<% ");
-        //template = template.replace("-%>", " %>");
+    /**
+     * Compile the template, or return the already-compiled version from the cache.
+     */
+    static Template compile(String template) {
+        return compile(template, false, () -> { });
+    }
 
-        // Escape all backslashes except those at the end of the line.
-        return JAVA_ESCAPES.matcher(template).replaceAll("\\\\$0");
+    /**
+     * Like {@link #compile(String)}, but calls {@code onCacheMiss} if it wasn't in the in-memory cache.
+     * @param secure compile with the {@link Sandbox}'s restrictions
+     */
+    static Template compile(String template, boolean secure, Runnable onCacheMiss) {
+        return compile(Optional.empty(), template, secure, onCacheMiss);
     }
 
     /**
-     * Combine together pre-init scripts to be run (in order) with the template in the Groovy template engine
-     * ({@link GroovyTemplater#generate(String, Map)}).
-     * <p>
-     * It's assumed that the last script is the actual template, e.g.:
-     * <pre>
-     * {@code
-     *     combineGroovyTemplateScripts(initScript1, initScript2, template);
-     * }
-     * </pre>
+     * Like {@link #compile(String, boolean, Runnable)}, for a template file.
+     * @param templateFile the file the template came from, which may pick its {@link TemplateEngine}
      */
-    private static String combineGroovyTemplateScripts(List<String> scripts) {
+    static Template compile(Optional<Path> templateFile, String template, boolean secure, Runnable onCacheMiss) {
+
+        Prepared prepared = prepare(templateFile, template, secure);
+
+        Template compiled = CACHE.get(prepared.key(), () -> {
+            onCacheMiss.run();
+            return PrecompiledTemplates
+                .find(templateFile, prepared.key(), prepared.script(), secure)
+                .orElseGet(() -> TemplateCompiler.compile(
+                    prepared.engine(),
+                    prepared.script(),
+                    prepared.key(),
+                    secure,
+                    diskCache));
+        });
+
+        // Cached by script alone, which says nothing about the template's name or header; report this one's.
+        return compiled instanceof ScriptTemplate scriptTemplate ? scriptTemplate.withScript(prepared.script()) : compiled;
+    }
 
-        if (scripts.isEmpty()) {
-            return "";
-        }
+    /**
+     * Everything short of compiling: pick the engine, translate the template, and hash the result.
+     * @param templateFile the file the template came from, which may pick its {@link TemplateEngine}
+     */
+    static Prepared prepare(Optional<Path> templateFile, String template, boolean secure) {
 
-        if (scripts.size() == 1) {
-            return scripts.get(0);
-        }
+        TemplateHeader header = TemplateHeader.parse(template);
+        TemplateEngine engine = TemplateEngines.select(templateFile, header);
+        TemplateScript script = engine
+            .toScript(header.body(), header.variables())
+            .from(templateFile.map(file -> file.getFileName().toString()).orElse("template"), header.bodyLine());
 
-        // We're really careful with the spaces and newlines
-        // because we don't want to impact the output of the template.
+        return new Prepared(engine, script, TemplateCompiler.cacheKey(engine, script.source(), secure));
+    }
 
-        StringBuilder builder = new StringBuilder();
+    /**
+     * The dynamic Groovy script source that the template body (no header) compiles to.
+     */
+    static TemplateScript toScript(String template) {
+        return TemplateParser.parse(template);
+    }
 
-        // Don't surround the last script; it's the template text.
-        for (int index = 0; index < scripts.size(); index++) {
+    /**
+     * A template, ready to compile.
+     * @param key the script's {@link TemplateCompiler#cacheKey}
+     */
+    record Prepared(TemplateEngine engine, TemplateScript script, String key) {
+    }
 
-            if (index < scripts.size() - 1) {
-                builder.append("<% ").append(scripts.get(index)).append(" %>");
-            } else {
-                builder.append(scripts.get(index));
-            }
-        }
+    /**
+     * Also persist compiled templates to the given dir, and reuse them from there in later runs.
+     * Useful for CLI runs, where each run is a cold JVM.
+     */
+    public static void useDiskCache(Path cacheDir) {
+        diskCache = Optional.of(new DiskTemplateCache(cacheDir));
+    }
 
-        return builder.toString();
+    /**
+     * Hit / miss / eviction counters for the compiled template cache.
+     */
+    public static TemplateCache.Stats cacheStats() {
+        return CACHE.stats();
     }
 
-    private static String combineGroovyTemplateScripts(String... scripts) {
-        return combineGroovyTemplateScripts(Arrays.asList(scripts));
+    /**
+     * Drop all compiled templates.
+     */
+    public static void clearCache() {
+        CACHE.clear();
     }
 }
@@ -0,0 +1,79 @@
+package com.terheyden.templates;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Content hashing, used for cache keys.
+ */
+public final class Hashing {
+
+    private static final HexFormat HEX = HexFormat.of();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Hashing() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * SHA-256 hash of the given strings, hashed in order, as a hex String.
+     */
+    public static String sha256(String... parts) {
+
+        MessageDigest digest = newSha256();
+
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            // Separate the parts so ("ab", "c") and ("a", "bc") don't collide.
+            digest.update((byte) 0);
+        }
+
+        return toHex(digest);
+    }
+
+    /**
+     * SHA-256 hash of the given bytes, as a hex String.
+     */
+    public static String sha256(byte[] bytes) {
+        return HEX.formatHex(newSha256().digest(bytes));
+    }
+
+    /**
+     * SHA-256 hash of the file's contents, as a hex String. The file is streamed, not read into memory.
+     */
+    public static String sha256(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+
+            MessageDigest digest = newSha256();
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+
+            return toHex(digest);
+
+        } catch (Exception e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Finish the digest and return it as a hex String.
+     */
+    public static String toHex(MessageDigest digest) {
+        return HEX.formatHex(digest.digest());
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.terheyden.templates;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A simple take on {@code .gitignore} patterns, used for excludes (and includes) when walking dirs:
+ * <ul>
+ *     <li>Blank lines and lines starting with {@code #} are skipped.</li>
+ *     <li>Patterns without a slash match a file or dir name at any depth, e.g. {@code *.log}.</li>
+ *     <li>Patterns with a slash match the path relative to the start dir, e.g. {@code build/*.jar}.</li>
+ *     <li>A trailing slash only matches dirs, and a leading {@code !} un-ignores.</li>
+ *     <li>The last matching pattern wins.</li>
+ * </ul>
+ * Globs are {@link FileSystems#getPathMatcher} globs, so {@code **} crosses dirs.
+ */
+final class IgnorePatterns {
+
+    /**
+     * Matches nothing.
+     */
+    static final IgnorePatterns NONE = new IgnorePatterns(List.of());
+
+    private static final String GITIGNORE = ".gitignore";
+
+    private final List<Rule> rules;
+
+    private IgnorePatterns(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    static IgnorePatterns of(List<String> patterns) {
+
+        List<Rule> rules = new ArrayList<>();
+
+        for (String pattern : patterns) {
+
+            String glob = pattern.strip();
+
+            if (glob.isEmpty() || glob.startsWith("#")) {
+                continue;
+            }
+
+            boolean negated = glob.startsWith("!");
+            glob = negated ? glob.substring(1) : glob;
+
+            boolean dirOnly = glob.endsWith("/");
+            glob = dirOnly ? glob.substring(0, glob.length() - 1) : glob;
+
+            boolean anchored = glob.contains("/");
+            glob = glob.startsWith("/") ? glob.substring(1) : glob;
+
+            if (!glob.isEmpty()) {
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+                rules.add(new Rule(matcher, negated, dirOnly, anchored));
+            }
+        }
+
+        return new IgnorePatterns(List.copyOf(rules));
+    }
+
+    /**
+     * The patterns in a {@code .gitignore} file, or none if there isn't one.
+     */
+    static IgnorePatterns ofGitignore(Path dir) {
+        Path gitignore = dir.resolve(GITIGNORE);
+        return Files.isRegularFile(gitignore) ? of(FileUtils2.readFile(gitignore).lines().toList()) : NONE;
+    }
+
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Should the path be ignored?
+     * @param relative the path, relative to the start dir
+     */
+    boolean matches(Path relative, boolean isDir) {
+        return decide(relative, isDir).orElse(false);
+    }
+
+    /**
+     * Like {@link #matches}, but says if no pattern matched, so a nested {@code .gitignore}
+     * can override its parents' only where it has something to say.
+     * @param relative the path, relative to the dir the patterns are from
+     * @return whether the last matching pattern ignores the path, or empty if none match
+     */
+    Optional<Boolean> decide(Path relative, boolean isDir) {
+
+        Path fileName = relative.getFileName();
+        Optional<Boolean> ignored = Optional.empty();
+
+        for (Rule rule : rules) {
+
+            if (rule.dirOnly && !isDir) {
+                continue;
+            }
+
+            if (rule.matcher.matches(rule.anchored ? relative : fileName)) {
+                ignored = Optional.of(!rule.negated);
+            }
+        }
+
+        return ignored;
+    }
+
+    private record Rule(PathMatcher matcher, boolean negated, boolean dirOnly, boolean anchored) {
+    }
+}
@@ -0,0 +1,51 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Which partials each template included the last time it was rendered (see {@link Partials}),
+ * so when a partial changes, we know which templates to regenerate.
+ * All paths are relative to the template dir. Safe to update from many threads.
+ */
+final class IncludeGraph {
+
+    /**
+     * Template to every partial it includes, directly or not.
+     */
+    private final Map<Path, Set<Path>> includes = new ConcurrentHashMap<>();
+
+    /**
+     * @param partials everything the template included, directly or not
+     */
+    void record(Path template, Set<Path> partials) {
+        if (partials.isEmpty()) {
+            includes.remove(template);
+        } else {
+            includes.put(template, Set.copyOf(partials));
+        }
+    }
+
+    void remove(Path template) {
+        includes.remove(template);
+    }
+
+    Set<Path> includedBy(Path template) {
+        return includes.getOrDefault(template, Set.of());
+    }
+
+    /**
+     * Every template that includes the partial, directly or not.
+     */
+    Set<Path> dependents(Path partial) {
+        return includes
+            .entrySet()
+            .stream()
+            .filter(entry -> entry.getValue().contains(partial))
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toSet());
+    }
+}
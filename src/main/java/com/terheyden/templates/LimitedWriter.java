@@ -0,0 +1,52 @@
+package com.terheyden.templates;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Passes writes through until they add up to too many UTF-8 bytes, then throws.
+ * Throws an unchecked exception, since templates print through a {@link java.io.PrintWriter},
+ * which would swallow an {@link IOException}.
+ */
+final class LimitedWriter extends Writer {
+
+    private final Writer writer;
+    private final long maxBytes;
+    private long bytes;
+
+    LimitedWriter(Writer writer, long maxBytes) {
+        this.writer = writer;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        count(RenderTimer.utf8Length(chars, offset, length));
+        writer.write(chars, offset, length);
+    }
+
+    @Override
+    public void write(String str, int offset, int length) throws IOException {
+        count(RenderTimer.utf8Length(str, offset, length));
+        writer.write(str, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void count(long newBytes) {
+
+        bytes += newBytes;
+
+        if (bytes > maxBytes) {
+            throw new TemplateLimitException("Template output is over the limit of " + maxBytes + " bytes");
+        }
+    }
+}
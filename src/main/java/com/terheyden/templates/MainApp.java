@@ -1,13 +1,16 @@
 package com.terheyden.templates;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 
-import io.vavr.control.Try;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -31,15 +34,86 @@ public final class MainApp implements Callable<Integer> {
     @Option(names = {"-h", "--help"}, description = "Show this help and exit", usageHelp = true)
     private boolean showHelp;
 
-    @Option(names = {"-t", "--template"}, description = "A single template file or directory of template files")
+    @Option(names = {"-t", "--template"}, description = "A single template file or directory of template files; "
+        + "the directory can be a zip or jar file, or a dir in one: templates.jar!/codegen")
     private Optional<Path> template = Optional.empty();
 
-    @Option(names = {"-o", "--output"}, description = "Output file or directory")
+    @Option(names = {"-o", "--output"}, description = "Output file or directory; for a directory of templates, can be a zip or jar file")
     private Optional<Path> output = Optional.empty();
 
     @Option(names = {"-p", "--properties"}, description = "Properties file to use for template values; can be JSON, HOCON, or YAML")
     private Optional<Path> properties = Optional.empty();
 
+    @Option(names = {"--threads"}, description = "Number of files to generate in parallel; defaults to one per core")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = {"--incremental"}, description = "Only regenerate files whose template or properties changed since the last run")
+    private boolean incremental;
+
+    @Option(
+        names = {"--cache-dir"},
+        arity = "0..1",
+        fallbackValue = "${sys:user.home}/.cache/codepuncher",
+        description = "Keep compiled templates in this dir to speed up later runs; defaults to ~/.cache/codepuncher")
+    private Optional<Path> cacheDir = Optional.empty();
+
+    @Option(names = {"--include"}, description = "Only generate template files matching this .gitignore-style pattern; repeatable")
+    private List<String> includes = new ArrayList<>();
+
+    @Option(names = {"--exclude"}, description = "Skip template files and dirs matching this .gitignore-style pattern; repeatable")
+    private List<String> excludes = new ArrayList<>();
+
+    @Option(
+        names = {"--symlinks"},
+        description = "What to do with symbolic links in the template dir: ${COMPLETION-CANDIDATES}; defaults to ${DEFAULT-VALUE}")
+    private WalkOptions.Symlinks symlinks = WalkOptions.Symlinks.FILES_ONLY;
+
+    @Option(names = {"--secure"}, description = "Reject templates that obviously touch files, processes, reflection, etc.; a guard, not a sandbox for hostile templates")
+    private boolean secure;
+
+    @Option(names = {"--timeout"}, description = "Fail any template that takes longer than this many seconds to render")
+    private Optional<Long> timeoutSeconds = Optional.empty();
+
+    @Option(names = {"--max-output"}, description = "Fail any template whose output is bigger than this many bytes")
+    private Optional<Long> maxOutputBytes = Optional.empty();
+
+    @Option(
+        names = {"--durability"},
+        description = "When to sync output files to disk: ${COMPLETION-CANDIDATES}; defaults to ${DEFAULT-VALUE}")
+    private Durability durability = Durability.NONE;
+
+    @Option(
+        names = {"--engine"},
+        description = "Compile template files with this extension with this engine, e.g. --engine java=static; repeatable")
+    private Map<String, String> engines = new LinkedHashMap<>();
+
+    @Option(names = {"--stats"}, description = "Print where the time went: totals, and the slowest templates; for one generation run here")
+    private boolean stats;
+
+    @Option(names = {"-w", "--watch"}, description = "Keep running, and regenerate templates as they (or the properties file) change")
+    private boolean watch;
+
+    @Option(
+        names = {"--batch"},
+        description = "Render the template once per record in this file (.jsonl, .yaml, or .csv); "
+            + "the output path is a template too, e.g. -o 'out/$${name}.txt'")
+    private Optional<Path> batch = Optional.empty();
+
+    @Option(
+        names = {"--serve"},
+        arity = "0..1",
+        fallbackValue = "${sys:java.io.tmpdir}/codepuncher-${sys:user.name}.sock",
+        description = "Run as a render server listening on this Unix socket, so later renders skip JVM startup; see --connect")
+    private Optional<Path> serve = Optional.empty();
+
+    @Option(
+        names = {"--connect"},
+        arity = "0..1",
+        fallbackValue = "${sys:java.io.tmpdir}/codepuncher-${sys:user.name}.sock",
+        description = "Send this render to a server started with --serve, instead of rendering here; "
+            + "--engine and --cache-dir go to --serve")
+    private Optional<Path> connect = Optional.empty();
+
     private MainApp() {
         // Private constructor since this shouldn't be instantiated.
     }
@@ -63,13 +137,54 @@ public final class MainApp implements Callable<Integer> {
                 return 0;
             }
 
-            Map<String, Object> props = calculateProperties();
+            if (stats && (serve.isPresent() || connect.isPresent() || batch.isPresent() || watch)) {
+                throw new IllegalArgumentException("--stats only works for one generation run here, "
+                    + "not with --serve, --connect, --batch, or --watch");
+            }
+
+            if (connect.isPresent() && (!engines.isEmpty() || cacheDir.isPresent())) {
+                throw new IllegalArgumentException("--engine and --cache-dir set up the server, not one render; "
+                    + "pass them to --serve instead of --connect");
+            }
+
+            cacheDir.ifPresent(GroovyTemplater::useDiskCache);
+            engines.forEach(TemplateEngines::useForExtension);
+
+            if (serve.isPresent()) {
+                serve(serve.get());
+                return 0;
+            }
+
+            Path templatePath = template.orElseThrow(() -> new IllegalArgumentException("Bad template path"));
+            Path outputPath = output.orElseThrow(() -> new IllegalArgumentException("Bad output path"));
+            GenerateOptions options = GenerateOptions
+                .defaults()
+                .withThreads(threads)
+                .withIncremental(incremental)
+                .withWalk(new WalkOptions(includes, excludes, symlinks))
+                .withLimits(calculateLimits())
+                .withDurability(durability);
+
+            if (batch.isPresent()) {
+                renderBatch(batch.get(), templatePath, outputPath, options);
+                return 0;
+            }
+
+            if (connect.isPresent()) {
+                return sendToServer(connect.get(), templatePath, outputPath, options);
+            }
+
+            if (watch) {
+                watch(templatePath, outputPath, options);
+                return 0;
+            }
 
-            Templates.generate(
-                template.orElseThrow(() -> new IllegalArgumentException("Bad template path")),
-                output.orElseThrow(() -> new IllegalArgumentException("Bad output path")),
-                props);
+            if (stats) {
+                generateWithStats(templatePath, outputPath, options);
+                return 0;
+            }
 
+            Templates.generate(templatePath, outputPath, calculateProperties(), options);
             return 0;
 
         } catch (Exception e) {
@@ -78,21 +193,121 @@ public final class MainApp implements Callable<Integer> {
         }
     }
 
-    private Map<String, Object> calculateProperties() {
+    /**
+     * PicoCli - the {@code compile} subcommand. Options for the whole run ({@code --threads},
+     * {@code --engine}, {@code --exclude}, etc.) go before it: {@code --threads 8 compile -t templates/ -o templates.jar}.
+     */
+    @Command(
+        name = "compile",
+        description = "Compile a directory of templates into a jar, to generate from later (-t templates.jar) without compiling them again")
+    int compile(
+        @Option(names = {"-t", "--template"}, required = true, paramLabel = "<dir>", description = "Directory of template files")
+        Path templateDir,
+        @Option(names = {"-o", "--output"}, required = true, paramLabel = "<jar>", description = "Jar file to write")
+        Path jarFile) {
+
+        try {
+
+            engines.forEach(TemplateEngines::useForExtension);
+            int templateCount = Templates.precompile(
+                templateDir,
+                jarFile,
+                GenerateOptions
+                    .defaults()
+                    .withThreads(threads)
+                    .withWalk(new WalkOptions(includes, excludes, symlinks))
+                    .withLimits(calculateLimits())
+                    .withDurability(durability));
 
-        return Try
+            LOG.info("Compiled {} templates into {}.", templateCount, jarFile);
+            return 0;
+
+        } catch (Exception e) {
+            LOG.error("Exception during compilation.", e);
+            return 1;
+        }
+    }
+
+    /**
+     * The report is printed even if some templates failed; it may show why.
+     */
+    private void generateWithStats(Path templatePath, Path outputPath, GenerateOptions options) {
+
+        RenderStats renderStats = new RenderStats();
+        long propsStart = System.nanoTime();
+        Map<String, Object> props = calculateProperties();
+        renderStats.propertiesLoaded(System.nanoTime() - propsStart);
+
+        try {
+            Templates.generate(templatePath, outputPath, props, options.withListener(renderStats));
+        } finally {
+            LOG.info("Stats:\n{}", renderStats.report());
+        }
+    }
+
+    /**
+     * Runs until the user hits Ctrl-C.
+     */
+    private void watch(Path templatePath, Path outputPath, GenerateOptions options) {
+
+        TemplateWatcher watcher = new TemplateWatcher(
+            templatePath,
+            outputPath,
+            properties,
+            this::calculateProperties,
+            options,
+            TemplateWatcher.DEFAULT_DEBOUNCE);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(watcher::close));
+        watcher.run();
+    }
+
+    private void renderBatch(Path recordsFile, Path templatePath, Path outputPattern, GenerateOptions options) {
+
+        long recordCount = BatchRenderer.render(
+            FileUtils2.readFile(templatePath),
+            recordsFile,
+            outputPattern.toString(),
+            // The properties file is optional here; it's the defaults for every record.
+            properties.isPresent() ? calculateProperties() : Map.of(),
+            options);
+
+        LOG.info("Rendered {} records.", recordCount);
+    }
+
+    /**
+     * Runs until the user hits Ctrl-C.
+     */
+    private static void serve(Path socketFile) {
+        RenderServer server = new RenderServer(socketFile);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.run();
+    }
+
+    private int sendToServer(Path socketFile, Path templatePath, Path outputPath, GenerateOptions options) {
+
+        RenderResponse response = RenderClient.send(
+            socketFile,
+            RenderRequest.ofFiles(templatePath, outputPath, properties, options));
+
+        if (!response.ok()) {
+            LOG.error("Render server failed: {}", response.error());
+            return 1;
+        }
+
+        return 0;
+    }
+
+    private RenderLimits calculateLimits() {
+        return new RenderLimits(
+            secure,
+            timeoutSeconds.map(Duration::ofSeconds).orElse(Duration.ZERO),
+            maxOutputBytes.orElse(Long.MAX_VALUE));
+    }
+
+    private Map<String, Object> calculateProperties() {
+        return PropertyFiles.load(
             // Make sure PicoCli could parse the string into a Path obj.
-            .of(() -> properties.orElseThrow(() -> new IllegalArgumentException("Invaid properties file path")))
-            // We want to pass 'path' to potentially both the HoconMapper and YamlMapper, so we need to flatMap.
-            .flatMap(path -> Try
-                // Can we parse it into HOCON / JSON?
-                .of(() -> HoconMapper.parseFile(path))
-                .map(HoconMapper::configToMap)
-                .orElse(Try
-                    // If that failed, can we parse it as YAML?
-                    .of(() -> FileUtils2.readFile(path))
-                    .map(YamlMapper::yamlToMap)
-                )
-            ).getOrElseThrow(() -> new IllegalArgumentException("Could not parse the properties file"));
+            properties.orElseThrow(() -> new IllegalArgumentException("Invaid properties file path")));
     }
 }
@@ -0,0 +1,35 @@
+package com.terheyden.templates;
+
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Where one run's outputs go: files in a dir ({@link DirectoryOutputFiles}),
+ * or entries in a zip or jar file ({@link ArchiveOutputFiles}). Thread-safe.
+ */
+interface OutputFiles {
+
+    /**
+     * Create or replace the file.
+     */
+    void write(Path saveFile, Consumer<Writer> contentWriter);
+
+    /**
+     * Like {@link #write}, but leave the file alone if its content didn't change.
+     * @return the SHA-256 hash of the content
+     */
+    String writeIfChanged(Path saveFile, Consumer<Writer> contentWriter);
+
+    /**
+     * Copy a file byte-for-byte.
+     * @return the number of bytes copied
+     */
+    long copy(Path sourceFile, Path saveFile);
+
+    /**
+     * Done writing.
+     * @param complete false if some outputs failed
+     */
+    void finish(boolean complete);
+}
@@ -0,0 +1,116 @@
+package com.terheyden.templates;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import groovy.lang.Binding;
+
+/**
+ * A template binding over a shared, read-only map of properties.
+ * Reads fall through to the shared map; writes (e.g. the {@code out} writer, or variables the template
+ * assigns) go to a small map local to this render. So the properties are never copied per render,
+ * and one render can't change what another render sees.
+ * <p>
+ * Only variables set during this render can be removed; the shared ones are read-only.
+ */
+final class OverlayBinding extends Binding {
+
+    private final Map<?, ?> shared;
+
+    @SuppressWarnings("rawtypes")
+    OverlayBinding(Map shared) {
+        super(new HashMap<>());
+        this.shared = shared;
+    }
+
+    @Override
+    public Object getVariable(String name) {
+
+        Map<?, ?> local = super.getVariables();
+
+        if (local.containsKey(name)) {
+            return local.get(name);
+        }
+
+        if (shared.containsKey(name)) {
+            return shared.get(name);
+        }
+
+        // Throws MissingPropertyException, like any other binding.
+        return super.getVariable(name);
+    }
+
+    @Override
+    public boolean hasVariable(String name) {
+        return super.hasVariable(name) || shared.containsKey(name);
+    }
+
+    /**
+     * A snapshot of every variable, local ones winning. Writing to it doesn't change the binding;
+     * use {@link #setVariable(String, Object)}.
+     */
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public Map getVariables() {
+        Map merged = new LinkedHashMap<>(shared);
+        merged.putAll(super.getVariables());
+        return merged;
+    }
+
+    /**
+     * A read-only view of a binding's variables with more on top, for a nested render (e.g. a partial)
+     * that sees everything its caller does. Nothing is copied; reads go through to the binding.
+     * @param hidden a variable not to pass through, e.g. the caller's {@code out}
+     */
+    static Map<String, Object> layered(Binding below, Map<String, Object> above, String hidden) {
+        return new Layered(below, above, hidden);
+    }
+
+    private static final class Layered extends AbstractMap<String, Object> {
+
+        private final Binding below;
+        private final Map<String, Object> above;
+        private final String hidden;
+
+        Layered(Binding below, Map<String, Object> above, String hidden) {
+            this.below = below;
+            this.above = above;
+            this.hidden = hidden;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return above.containsKey(key) || isVisibleBelow(key);
+        }
+
+        @Override
+        public Object get(Object key) {
+
+            if (above.containsKey(key)) {
+                return above.get(key);
+            }
+
+            return isVisibleBelow(key) ? below.getVariable((String) key) : null;
+        }
+
+        /**
+         * A snapshot; only for iterating, e.g. logging. Lookups don't use it.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<Entry<String, Object>> entrySet() {
+            Map<String, Object> merged = new LinkedHashMap<>(below.getVariables());
+            merged.remove(hidden);
+            merged.putAll(above);
+            return Collections.unmodifiableMap(merged).entrySet();
+        }
+
+        private boolean isVisibleBelow(Object key) {
+            return key instanceof String name && !name.equals(hidden) && below.hasVariable(name);
+        }
+    }
+}
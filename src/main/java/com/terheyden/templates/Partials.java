@@ -0,0 +1,227 @@
+package com.terheyden.templates;
+
+import java.io.StringWriter;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+
+import groovy.lang.Script;
+import groovy.text.Template;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Lets templates share snippets: {@code ${include('_partials/header.txt', [title: 'Hi'])}}.
+ * <p>
+ * Partial paths are relative to the template dir. A partial sees the including template's variables,
+ * plus any passed to {@code include()}, and may include other partials; include cycles are an error.
+ * Files under {@value #DIR_NAME}/ in the template dir are only used as partials, never generated by themselves.
+ * <p>
+ * Each partial is compiled once, and recompiled only if the file changes (or it's been evicted). Every render records the partials
+ * it included (see {@link #render}), so incremental and watch modes know what to regenerate.
+ * <p>
+ * Public, since compiled templates (in their own class loaders) call {@link #include}.
+ */
+public final class Partials {
+
+    private static final Logger LOG = getLogger(Partials.class);
+
+    /**
+     * The template dir's subdir for partials.
+     */
+    public static final String DIR_NAME = "_partials";
+
+    /**
+     * The render in progress on this thread, if any. Includes render on the including template's thread.
+     */
+    private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<>();
+
+    /**
+     * Max number of compiled partials to keep, so watch and server mode don't grow forever.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    /**
+     * Compiled partials, by absolute path. Least-recently-used first, like the {@link TemplateCache}.
+     * Partials in an archive are dropped when it closes (see {@link #forget}).
+     */
+    private static final Map<Path, CompiledPartial> COMPILED = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CompiledPartial> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+
+    private Partials() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Render a template, letting it include partials from the template dir.
+     * Every partial it includes, directly or not, is recorded in the include graph, even if the render fails.
+     * @param templateDir where partial paths are resolved from
+     * @param template the template being rendered, relative to the template dir
+     * @param limits also applied to partials; the template's timeout covers the partials it includes
+     * @return whatever the render returns
+     */
+    static <T> T render(Path templateDir, Path template, IncludeGraph includes, RenderLimits limits, Supplier<T> render) {
+
+        Context outer = CONTEXT.get();
+        Context context = new Context(templateDir.toAbsolutePath().normalize(), template, limits);
+        CONTEXT.set(context);
+
+        try {
+            return render.get();
+        } finally {
+            includes.record(template, context.included);
+            // Put back whatever was there, e.g. for a template rendered from inside another one.
+            CONTEXT.set(outer);
+        }
+    }
+
+    /**
+     * Drop the compiled partials from a file system that's closing, e.g. a template archive,
+     * so they don't keep it (and their classes) around; its paths will never be asked for again.
+     */
+    static void forget(FileSystem fileSystem) {
+        synchronized (COMPILED) {
+            COMPILED.keySet().removeIf(path -> path.getFileSystem() == fileSystem);
+        }
+    }
+
+    /**
+     * How many compiled partials are kept.
+     */
+    static int compiledCount() {
+        return COMPILED.size();
+    }
+
+    /**
+     * Is this file (relative to the template dir) in the partials dir?
+     */
+    static boolean isPartial(Path relativeFile) {
+        return relativeFile.getNameCount() > 1 && relativeFile.getName(0).toString().equals(DIR_NAME);
+    }
+
+    /**
+     * Called by templates, via {@code include()} in GroovyExtras.groovy.
+     * @param caller the including template
+     * @param path the partial, relative to the template dir
+     * @param vars extra variables for the partial
+     * @return the rendered partial
+     */
+    public static String include(Script caller, String path, Map<String, Object> vars) {
+
+        Context context = CONTEXT.get();
+
+        if (context == null) {
+            throw new IllegalStateException("include() only works when rendering template files: " + path);
+        }
+
+        Path partialFile = context.templateDir.resolve(path).normalize();
+
+        if (!partialFile.startsWith(context.templateDir)) {
+            throw new IllegalArgumentException("Partials must be inside the template dir: " + path);
+        }
+
+        Path relative = context.templateDir.relativize(partialFile);
+
+        if (context.stack.contains(relative)) {
+            throw new IllegalStateException("Include cycle: " + Stream
+                .concat(context.stack.stream(), Stream.of(relative))
+                .map(Path::toString)
+                .collect(Collectors.joining(" -> ")));
+        }
+
+        context.included.add(relative);
+        context.stack.addLast(relative);
+
+        try {
+
+            // The caller's variables, read through rather than copied, with the partial's args on top.
+            Map<String, Object> partialVars = OverlayBinding.layered(caller.getBinding(), vars, "out");
+
+            StringWriter writer = new StringWriter();
+            Sandbox.render(
+                compile(partialFile, context.limits.secure()),
+                partialVars,
+                writer,
+                context.limits.withTimeout(Duration.ZERO));
+            return writer.toString();
+
+        } catch (Exception e) {
+            return Exceptions.throwUnchecked(e);
+        } finally {
+            context.stack.removeLast();
+        }
+    }
+
+    private static Template compile(Path partialFile, boolean secure) throws Exception {
+
+        if (!Files.isRegularFile(partialFile)) {
+            throw new IllegalArgumentException("Partial not found: " + partialFile);
+        }
+
+        BasicFileAttributes attrs = Files.readAttributes(partialFile, BasicFileAttributes.class);
+        CompiledPartial compiled = COMPILED.get(partialFile);
+
+        if (compiled != null && compiled.isCurrent(attrs, secure)) {
+            return compiled.template;
+        }
+
+        LOG.debug("Compiling partial: {}", partialFile);
+        Template template = GroovyTemplater.compile(
+            Optional.of(partialFile),
+            FileUtils2.readFile(partialFile),
+            secure,
+            () -> { });
+        COMPILED.put(partialFile, new CompiledPartial(attrs.lastModifiedTime(), attrs.size(), secure, template));
+        return template;
+    }
+
+    /**
+     * @param modified the file's mtime when it was compiled
+     * @param size the file's size when it was compiled
+     * @param secure compiled with the sandbox's restrictions
+     */
+    private record CompiledPartial(FileTime modified, long size, boolean secure, Template template) {
+
+        boolean isCurrent(BasicFileAttributes attrs, boolean wantSecure) {
+            return modified.equals(attrs.lastModifiedTime()) && size == attrs.size() && secure == wantSecure;
+        }
+    }
+
+    /**
+     * One template render's includes.
+     */
+    private static final class Context {
+
+        private final Path templateDir;
+        private final Deque<Path> stack = new ArrayDeque<>();
+        private final Set<Path> included = new LinkedHashSet<>();
+        private final RenderLimits limits;
+
+        private Context(Path templateDir, Path template, RenderLimits limits) {
+            this.templateDir = templateDir;
+            this.limits = limits;
+            this.stack.addLast(template);
+        }
+    }
+}
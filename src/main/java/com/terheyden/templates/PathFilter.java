@@ -0,0 +1,47 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+
+/**
+ * The include and exclude patterns of some {@link WalkOptions}, compiled once per walk.
+ */
+final class PathFilter {
+
+    private final IgnorePatterns includes;
+    private final IgnorePatterns excludes;
+    private final boolean includeAll;
+
+    PathFilter(WalkOptions options) {
+        this.includes = IgnorePatterns.of(options.includes());
+        this.excludes = IgnorePatterns.of(options.excludes());
+        this.includeAll = options.includes().isEmpty();
+    }
+
+    /**
+     * @param relativeDir the dir, relative to the start dir
+     */
+    boolean acceptsDir(Path relativeDir) {
+        return !excludes.matches(relativeDir, true);
+    }
+
+    /**
+     * @param relativeFile the file, relative to the start dir
+     */
+    boolean acceptsFile(Path relativeFile) {
+        return !excludes.matches(relativeFile, false) && (includeAll || includes.matches(relativeFile, false));
+    }
+
+    /**
+     * Like {@link #acceptsFile(Path)}, but also checks the file's dirs, for files that weren't found by walking.
+     */
+    boolean acceptsPath(Path relativeFile) {
+
+        for (Path dir = relativeFile.getParent(); dir != null; dir = dir.getParent()) {
+            if (!acceptsDir(dir)) {
+                return false;
+            }
+        }
+
+        return acceptsFile(relativeFile);
+    }
+}
@@ -0,0 +1,286 @@
+package com.terheyden.templates;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+import groovy.text.Template;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A template dir precompiled into a jar, so generating from it doesn't run the Groovy compiler.
+ * The jar has the dir's files as-is, plus every template's bytecode and an index of them
+ * under {@code META-INF/codepuncher/}; generate from it like any other archive ({@code -t templates.jar}).
+ * <p>
+ * Bytecode is looked up by {@link TemplateCompiler#cacheKey}, like in the {@link DiskTemplateCache},
+ * so a template that doesn't match what was compiled (a different engine, {@code --secure} setting,
+ * or Groovy version) is just compiled as usual. Secure runs never load a jar's bytecode at all;
+ * the sandbox is applied when compiling, and the jar's bytecode may not have been.
+ */
+final class PrecompiledTemplates implements AutoCloseable {
+
+    private static final Logger LOG = getLogger(PrecompiledTemplates.class);
+
+    /**
+     * Where the bytecode and index go in the jar. Not generated from.
+     */
+    static final String DIR = "META-INF/codepuncher/";
+    private static final String INDEX = DIR + "index.yaml";
+    private static final String EXTENSION = ".classes";
+
+    /**
+     * The jars being generated from, by their zip file system.
+     */
+    private static final Map<FileSystem, PrecompiledTemplates> OPEN = new ConcurrentHashMap<>();
+
+    private final FileSystem jar;
+    private final boolean indexed;
+    private final Set<String> keys;
+
+    /**
+     * @param indexed the jar has an index (and bytecode) to skip when generating
+     * @param keys the bytecode to use
+     */
+    private PrecompiledTemplates(FileSystem jar, boolean indexed, Set<String> keys) {
+        this.jar = jar;
+        this.indexed = indexed;
+        this.keys = keys;
+    }
+
+    /**
+     * Compile every template in the dir, partials too, in parallel, and write them to the jar along with
+     * the dir's files. Other files are copied as-is. The jar is only written if every template compiled.
+     * @return the number of templates compiled
+     * @throws GenerationException if any of them didn't compile
+     */
+    static int compile(Path templateDir, Path jarFile, GenerateOptions options) {
+
+        if (!Files.isDirectory(templateDir)) {
+            throw new IllegalArgumentException("Template dir does not exist: " + templateDir);
+        }
+
+        boolean secure = options.limits().secure();
+        Map<String, String> templates = new ConcurrentHashMap<>();
+        Set<String> compiledKeys = ConcurrentHashMap.newKeySet();
+        Map<Path, Throwable> failures = new ConcurrentHashMap<>();
+        AtomicInteger fileCount = new AtomicInteger();
+        ArchiveOutputFiles outputs = new ArchiveOutputFiles(jarFile, options.durability());
+        ThreadPoolExecutor executor = Templates.boundedExecutor(options.threads(), "compile");
+
+        boolean complete = false;
+
+        try {
+
+            try {
+                FileUtils2.walkFiles(
+                    templateDir,
+                    options.walk(),
+                    found -> {
+                        fileCount.incrementAndGet();
+                        executor.execute(() -> {
+                            try {
+                                compileFile(found, jarFile, secure, outputs, templates, compiledKeys);
+                            } catch (Exception e) {
+                                LOG.warn("Failed to compile: {}: {}", found.getRelativeFile(), e.toString());
+                                failures.put(found.getRelativeFile(), e);
+                            }
+                        });
+                    },
+                    (file, e) -> {
+                        LOG.warn("Could not read: {}: {}", file, e.toString());
+                        failures.put(templateDir.relativize(file), e);
+                    });
+            } finally {
+                Templates.awaitAll(executor);
+            }
+
+            if (failures.isEmpty()) {
+                // Sorted, so the index is stable and diffable.
+                Index index = new Index(TemplateCompiler.version(), secure, new TreeMap<>(templates));
+                outputs.write(jarFile.resolve(INDEX), writer -> writeYaml(writer, index));
+                complete = true;
+            }
+
+        } finally {
+            // Even if the walk threw, so the temp jar is dropped.
+            outputs.finish(complete);
+        }
+
+        if (!failures.isEmpty()) {
+            throw new GenerationException(failures, fileCount.get());
+        }
+
+        LOG.debug("Compiled {} templates into: {}", templates.size(), jarFile);
+        return templates.size();
+    }
+
+    private static void compileFile(
+        RelativeFile found,
+        Path jarFile,
+        boolean secure,
+        ArchiveOutputFiles outputs,
+        Map<String, String> templates,
+        Set<String> compiledKeys) throws IOException {
+
+        Path sourceFile = found.getAbsoluteFile();
+        outputs.copy(sourceFile, found.calculateTargetFile(jarFile));
+
+        if (TemplateParser.isLiteral(sourceFile)) {
+            return;
+        }
+
+        // The relative file, like when generating, so extensions pick the same engines.
+        GroovyTemplater.Prepared prepared = GroovyTemplater.prepare(
+            Optional.of(found.getRelativeFile()),
+            FileUtils2.readFile(sourceFile),
+            secure);
+
+        templates.put(found.getRelativeFile().toString().replace('\\', '/'), prepared.key());
+
+        // Identical templates compile to the same bytecode.
+        if (!compiledKeys.add(prepared.key())) {
+            return;
+        }
+
+        Map<String, byte[]> classes = TemplateCompiler.compileToBytecode(
+            prepared.engine(),
+            prepared.script(),
+            TemplateCompiler.className(prepared.key()),
+            secure);
+
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        DiskTemplateCache.writeEntry(entry, classes);
+        outputs.write(jarFile.resolve(DIR + prepared.key() + EXTENSION), entry.toByteArray());
+    }
+
+    private static void writeYaml(Writer writer, Index index) {
+        try {
+            writer.write(YamlMapper.objToYaml(index));
+        } catch (IOException e) {
+            Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Use the jar's bytecode, if it has any, for templates in it until this is closed.
+     * Does nothing for other archives, or for secure runs, which always compile from source;
+     * anyone can write a jar, so its bytecode could do anything, whatever its index says.
+     * @param jar an open zip file system
+     * @param secure the run is compiling with the {@link Sandbox}'s restrictions
+     */
+    static PrecompiledTemplates open(FileSystem jar, boolean secure) {
+
+        Path indexFile = jar.getPath("/" + INDEX);
+
+        if (Files.notExists(indexFile)) {
+            return new PrecompiledTemplates(jar, false, Set.of());
+        }
+
+        if (secure) {
+            LOG.debug("Secure run, compiling templates instead of using the precompiled ones in: {}", jar);
+            return new PrecompiledTemplates(jar, true, Set.of());
+        }
+
+        Index index = YamlMapper.yamlToObj(FileUtils2.readFile(indexFile), Index.class);
+
+        if (!index.compiler().equals(TemplateCompiler.version())) {
+            LOG.warn("{} was compiled by a different version of codepuncher, Groovy, or the Groovy extras; "
+                + "templates will be compiled as they're used", jar);
+        } else if (index.secure()) {
+            LOG.warn("{} was compiled with --secure, so its bytecode is only for secure runs, which don't use it; "
+                + "templates will be compiled as they're used", jar);
+        }
+
+        PrecompiledTemplates precompiled = new PrecompiledTemplates(jar, true, Set.copyOf(index.templates().values()));
+        OPEN.put(jar, precompiled);
+        LOG.debug("Using {} precompiled templates from: {}", index.templates().size(), jar);
+        return precompiled;
+    }
+
+    /**
+     * The template's precompiled bytecode, loaded, if it's in an open precompiled jar.
+     * Never for secure runs.
+     * @param templateFile the file the template came from
+     * @param key the template's {@link TemplateCompiler#cacheKey}
+     * @param script what it was compiled from, for error positions
+     * @param secure compiling with the {@link Sandbox}'s restrictions
+     */
+    static Optional<Template> find(Optional<Path> templateFile, String key, TemplateScript script, boolean secure) {
+
+        if (secure) {
+            return Optional.empty();
+        }
+
+        return templateFile
+            .map(file -> OPEN.get(file.getFileSystem()))
+            .flatMap(precompiled -> precompiled.load(key))
+            .map(classes -> TemplateCompiler.load(classes, TemplateCompiler.className(key), script));
+    }
+
+    /**
+     * Generate from the dir without generating the bytecode and index too.
+     */
+    GenerateOptions skipIndex(GenerateOptions options) {
+
+        if (!indexed) {
+            return options;
+        }
+
+        List<String> excludes = new ArrayList<>(options.walk().excludes());
+        excludes.add("/" + DIR);
+        return options.withWalk(options.walk().withExcludes(excludes));
+    }
+
+    /**
+     * @return class name to bytecode, or empty if it wasn't precompiled (or the entry was unreadable)
+     */
+    private Optional<Map<String, byte[]>> load(String key) {
+
+        if (!keys.contains(key)) {
+            return Optional.empty();
+        }
+
+        Path entryFile = jar.getPath("/" + DIR + key + EXTENSION);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(entryFile))) {
+
+            LOG.debug("Loading precompiled template: {}", entryFile);
+            return Optional.of(DiskTemplateCache.readEntry(in));
+
+        } catch (Exception e) {
+            LOG.warn("Compiling instead of using unreadable precompiled template: {}", entryFile, e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void close() {
+        OPEN.remove(jar, this);
+    }
+
+    /**
+     * The jar's index.
+     * @param compiler the {@link TemplateCompiler#version()} that compiled the templates
+     * @param secure compiled with the {@link Sandbox}'s restrictions
+     * @param templates each template (relative to the template dir, partials too), and its cache key
+     */
+    record Index(String compiler, boolean secure, Map<String, String> templates) {
+    }
+}
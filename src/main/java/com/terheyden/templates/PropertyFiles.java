@@ -0,0 +1,51 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import io.vavr.control.Try;
+
+/**
+ * Loads the template properties file the user gave us.
+ */
+public final class PropertyFiles {
+
+    private PropertyFiles() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Parse a properties file, picking the format from its extension:
+     * YAML for {@code .yaml} / {@code .yml}, HOCON for {@code .conf}, {@code .json}, and {@code .properties}.
+     * Anything else is read once, and parsed as HOCON / JSON, or failing that, YAML.
+     */
+    public static PropertyTree load(Path propsFile) {
+
+        if (Files.notExists(propsFile)) {
+            throw new IllegalArgumentException("Properties file doesn't exist: " + propsFile);
+        }
+
+        String fileName = propsFile.getFileName().toString().toLowerCase(Locale.ROOT);
+
+        if (fileName.endsWith(".yaml") || fileName.endsWith(".yml")) {
+            return PropertyTree.of(YamlMapper.yamlToMap(FileUtils2.readFile(propsFile)));
+        }
+
+        if (fileName.endsWith(".conf") || fileName.endsWith(".json") || fileName.endsWith(".properties")) {
+            // The HOCON parser also picks its syntax by extension.
+            return PropertyTree.of(HoconMapper.configToMap(HoconMapper.parseFile(propsFile)));
+        }
+
+        String text = FileUtils2.readFile(propsFile);
+
+        return Try
+            // Can we parse it into HOCON / JSON?
+            .of(() -> HoconMapper.parseString(text))
+            .map(HoconMapper::configToMap)
+            // If that failed, can we parse it as YAML?
+            .orElse(Try.of(() -> YamlMapper.yamlToMap(text)))
+            .map(PropertyTree::of)
+            .getOrElseThrow(() -> new IllegalArgumentException("Could not parse the properties file: " + propsFile));
+    }
+}
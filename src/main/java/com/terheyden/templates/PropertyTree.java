@@ -0,0 +1,171 @@
+package com.terheyden.templates;
+
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parsed template properties: a read-only map (nested maps and lists too), shared by every render
+ * (see {@link OverlayBinding}), plus typed accessors for nested values by dotted path, e.g. {@code getString("db.host")}.
+ * Paths are resolved the first time they're asked for, then remembered.
+ */
+public final class PropertyTree extends AbstractMap<String, Object> {
+
+    private final Map<String, Object> root;
+    private final Map<String, Optional<Object>> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * @param root already {@link #freeze frozen}
+     */
+    private PropertyTree(Map<String, Object> root) {
+        this.root = root;
+    }
+
+    /**
+     * @param root the parsed properties; null (e.g. an empty YAML file) means no properties.
+     *             Copied, so changing it afterward doesn't change the tree.
+     */
+    @SuppressWarnings("unchecked")
+    public static PropertyTree of(@Nullable Map<String, Object> root) {
+
+        if (root instanceof PropertyTree tree) {
+            return tree;
+        }
+
+        return new PropertyTree(root == null ? Map.of() : (Map<String, Object>) freeze(root));
+    }
+
+    /**
+     * @param path dot-separated keys, e.g. {@code "db.host"}
+     * @return the value, or empty if any part of the path is missing (or the value is null)
+     */
+    public Optional<Object> find(String path) {
+        return resolved.computeIfAbsent(path, this::resolve);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the path is missing
+     */
+    public Object getValue(String path) {
+        return find(path).orElseThrow(() -> new IllegalArgumentException("No property: " + path));
+    }
+
+    public String getString(String path) {
+        return String.valueOf(getValue(path));
+    }
+
+    /**
+     * Numbers, or strings that parse as numbers.
+     */
+    public int getInt(String path) {
+        return getValue(path) instanceof Number number
+            ? number.intValue()
+            : Integer.parseInt(getString(path).trim());
+    }
+
+    /**
+     * Booleans, or strings that say {@code true} or {@code false}.
+     */
+    public boolean getBoolean(String path) {
+
+        Object value = getValue(path);
+
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+
+        return switch (getString(path).trim().toLowerCase(Locale.ROOT)) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw new IllegalArgumentException("Not a boolean: " + path + " = " + value);
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Object> getList(String path) {
+        return as(path, List.class);
+    }
+
+    /**
+     * A nested section, e.g. {@code getTree("db")}.
+     */
+    @SuppressWarnings("unchecked")
+    public PropertyTree getTree(String path) {
+        // Already frozen, like everything in the tree.
+        return new PropertyTree(as(path, Map.class));
+    }
+
+    @Override
+    public Object get(Object key) {
+        return root.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return root.size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return root.entrySet();
+    }
+
+    /**
+     * A read-only deep copy. Nested maps and lists are copied too, so a template can't change them
+     * for the renders running alongside it, e.g. with {@code <% db.host = 'x' %>}.
+     */
+    private static Object freeze(Object value) {
+
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            map.forEach((key, nested) -> copy.put(key, freeze(nested)));
+            return Collections.unmodifiableMap(copy);
+        }
+
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            list.forEach(nested -> copy.add(freeze(nested)));
+            return Collections.unmodifiableList(copy);
+        }
+
+        return value;
+    }
+
+    private <T> T as(String path, Class<T> type) {
+
+        Object value = getValue(path);
+
+        if (!type.isInstance(value)) {
+            throw new IllegalArgumentException("Not a %s: %s = %s".formatted(type.getSimpleName(), path, value));
+        }
+
+        return type.cast(value);
+    }
+
+    private Optional<Object> resolve(String path) {
+
+        Object value = root;
+
+        for (String key : path.split("\\.")) {
+            if (!(value instanceof Map<?, ?> map)) {
+                return Optional.empty();
+            }
+            value = map.get(key);
+        }
+
+        return Optional.ofNullable(value);
+    }
+}
@@ -36,7 +36,8 @@ class RelativeFile {
     Path calculateTargetFile(Path targetDir) {
         // path.resolve(relativePath) will append the relative onto the original path,
         // essentially mirroring the original dir structure in the save dir.
-        return targetDir.resolve(relativeFile).toAbsolutePath();
+        // As a string, since the source dir may be in another file system (e.g. a zip file).
+        return targetDir.resolve(relativeFile.toString()).toAbsolutePath();
     }
 
     public Path getSourceDir() {
@@ -0,0 +1,64 @@
+package com.terheyden.templates;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sends render requests to a running {@link RenderServer}.
+ */
+public final class RenderClient {
+
+    private RenderClient() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Send one request to the server on the default socket, and wait for the response.
+     */
+    public static RenderResponse send(RenderRequest request) {
+        return send(RenderProtocol.defaultSocketFile(), request);
+    }
+
+    /**
+     * Send one request to a server, and wait for the response.
+     */
+    public static RenderResponse send(Path socketFile, RenderRequest request) {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketFile));
+             BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+             Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+
+            RenderProtocol.write(out, request);
+
+            return RenderProtocol
+                .read(in, RenderResponse.class)
+                .orElseThrow(() -> new IOException("Render server hung up without responding: " + socketFile));
+
+        } catch (IOException e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Is a server accepting connections on this socket file?
+     */
+    public static boolean isListening(Path socketFile) {
+
+        if (!Files.exists(socketFile)) {
+            return false;
+        }
+
+        try (SocketChannel ignored = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            return ignored.connect(UnixDomainSocketAddress.of(socketFile));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
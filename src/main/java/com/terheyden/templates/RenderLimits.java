@@ -0,0 +1,52 @@
+package com.terheyden.templates;
+
+import java.time.Duration;
+
+/**
+ * Limits on running templates, so one bad template fails fast instead of hanging or filling the disk.
+ * Start with {@link #none()} and use the {@code withX()} methods to change things.
+ *
+ * @param secure compile templates without access to files, processes, reflection, etc. (see {@link Sandbox})
+ * @param timeout max wall-clock time per render, or {@link Duration#ZERO} for no limit
+ * @param maxOutputBytes max size of each rendered file, in UTF-8 bytes
+ */
+public record RenderLimits(boolean secure, Duration timeout, long maxOutputBytes) {
+
+    public RenderLimits {
+
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout can't be negative: " + timeout);
+        }
+
+        if (maxOutputBytes < 1) {
+            throw new IllegalArgumentException("Max output bytes must be at least 1: " + maxOutputBytes);
+        }
+    }
+
+    /**
+     * Trust templates, and let them run as long as they like.
+     */
+    public static RenderLimits none() {
+        return new RenderLimits(false, Duration.ZERO, Long.MAX_VALUE);
+    }
+
+    public RenderLimits withSecure(boolean newSecure) {
+        return new RenderLimits(newSecure, timeout, maxOutputBytes);
+    }
+
+    public RenderLimits withTimeout(Duration newTimeout) {
+        return new RenderLimits(secure, newTimeout, maxOutputBytes);
+    }
+
+    public RenderLimits withMaxOutputBytes(long newMaxOutputBytes) {
+        return new RenderLimits(secure, timeout, newMaxOutputBytes);
+    }
+
+    boolean hasTimeout() {
+        return !timeout.isZero();
+    }
+
+    boolean hasMaxOutput() {
+        return maxOutputBytes != Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,43 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+
+/**
+ * Hears about each template file as a generation run handles it, e.g. to time runs (see {@link RenderStats}).
+ * Set one with {@link GenerateOptions#withListener(RenderListener)}.
+ * <p>
+ * Files are generated in parallel, so implementations must be thread-safe, and quick.
+ * Every file is also reported as a {@link TemplateRenderEvent} JFR event.
+ */
+public interface RenderListener {
+
+    /**
+     * Ignores everything.
+     */
+    RenderListener NONE = new RenderListener() {
+    };
+
+    /**
+     * A template file was rendered, or copied as-is.
+     */
+    default void rendered(TemplateMetrics metrics) {
+        // Ignored by default.
+    }
+
+    /**
+     * An incremental run skipped a template file, since its inputs haven't changed.
+     * @param template the template file, relative to the template dir
+     */
+    default void skipped(Path template) {
+        // Ignored by default.
+    }
+
+    /**
+     * A template file failed to generate. The run carries on, and reports every failure at the end.
+     * @param template the template file, relative to the template dir
+     * @param cause why it failed
+     */
+    default void failed(Path template, Throwable cause) {
+        // Ignored by default.
+    }
+}
@@ -0,0 +1,60 @@
+package com.terheyden.templates;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The render server's wire format: one JSON object per line, in both directions.
+ * Requests and responses alternate, and a client may send as many as it likes on one connection.
+ */
+final class RenderProtocol {
+
+    private static final ObjectMapper JSON = new ObjectMapper()
+        .findAndRegisterModules()
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        // So older clients and servers can talk to newer ones.
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private RenderProtocol() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Where the server listens, unless told otherwise. One per user, so users don't render each other's files.
+     */
+    static Path defaultSocketFile() {
+        return Path.of(System.getProperty("java.io.tmpdir"), "codepuncher-" + System.getProperty("user.name") + ".sock");
+    }
+
+    static void write(Writer out, Object message) throws IOException {
+        // JSON escapes newlines inside strings, so a message is always one line.
+        out.write(JSON.writeValueAsString(message));
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * @return the next message, or empty if the other side hung up
+     */
+    static <T> Optional<T> read(BufferedReader in, Class<T> messageClass) throws IOException {
+
+        String line = in.readLine();
+
+        while (line != null && line.isBlank()) {
+            line = in.readLine();
+        }
+
+        return line == null ? Optional.empty() : Optional.of(parse(line, messageClass));
+    }
+
+    static <T> T parse(String line, Class<T> messageClass) throws IOException {
+        return JSON.readValue(line, messageClass);
+    }
+}
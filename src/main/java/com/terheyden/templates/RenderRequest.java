@@ -0,0 +1,101 @@
+package com.terheyden.templates;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * One render, sent by a {@link RenderClient} to a {@link RenderServer}.
+ * Paths should be absolute, since the server's working dir probably isn't the client's.
+ *
+ * @param template a template file or dir; or null if {@code templateText} is given
+ * @param templateText an inline template; or null if {@code template} is given
+ * @param properties a properties file (HOCON, JSON, or YAML); or null to use {@code props}
+ * @param props the properties, if there's no {@code properties} file
+ * @param output the output file or dir; for inline templates, null to send the text back in the response
+ * @param threads see {@link GenerateOptions}; 0 for the server's default
+ * @param incremental see {@link GenerateOptions}
+ * @param walk see {@link GenerateOptions}; null for the defaults
+ * @param secure see {@link RenderLimits}
+ * @param timeoutMillis see {@link RenderLimits}; 0 for no limit
+ * @param maxOutputBytes see {@link RenderLimits}; 0 for no limit
+ * @param durability see {@link GenerateOptions}; null for the default
+ */
+public record RenderRequest(
+    @Nullable String template,
+    @Nullable String templateText,
+    @Nullable String properties,
+    @Nullable Map<String, Object> props,
+    @Nullable String output,
+    int threads,
+    boolean incremental,
+    @Nullable WalkOptions walk,
+    boolean secure,
+    long timeoutMillis,
+    long maxOutputBytes,
+    @Nullable Durability durability) {
+
+    public RenderRequest {
+        if ((template == null) == (templateText == null)) {
+            throw new IllegalArgumentException("Exactly one of template and templateText is required");
+        }
+        if (template != null && output == null) {
+            throw new IllegalArgumentException("Template files need an output path: " + template);
+        }
+    }
+
+    /**
+     * Render a template file or dir, like the CLI does.
+     */
+    public static RenderRequest ofFiles(
+        Path template,
+        Path output,
+        Optional<Path> properties,
+        GenerateOptions options) {
+
+        return new RenderRequest(
+            template.toAbsolutePath().toString(),
+            null,
+            properties.map(file -> file.toAbsolutePath().toString()).orElse(null),
+            null,
+            output.toAbsolutePath().toString(),
+            options.threads(),
+            options.incremental(),
+            options.walk(),
+            options.limits().secure(),
+            options.limits().hasTimeout() ? Math.max(1, options.limits().timeout().toMillis()) : 0,
+            options.limits().hasMaxOutput() ? options.limits().maxOutputBytes() : 0,
+            options.durability());
+    }
+
+    /**
+     * Render an inline template and send the text back.
+     */
+    public static RenderRequest ofText(String templateText, Map<String, Object> props) {
+        return new RenderRequest(null, templateText, null, props, null, 0, false, null, false, 0, 0, null);
+    }
+
+    GenerateOptions options() {
+
+        GenerateOptions defaults = GenerateOptions.defaults();
+        GenerateOptions options = defaults
+            .withIncremental(incremental)
+            .withWalk(walk == null ? defaults.walk() : walk)
+            .withLimits(limits())
+            .withDurability(durability == null ? defaults.durability() : durability);
+
+        return threads > 0 ? options.withThreads(threads) : options;
+    }
+
+    RenderLimits limits() {
+
+        RenderLimits limits = RenderLimits
+            .none()
+            .withSecure(secure)
+            .withTimeout(Duration.ofMillis(timeoutMillis));
+
+        return maxOutputBytes > 0 ? limits.withMaxOutputBytes(maxOutputBytes) : limits;
+    }
+}
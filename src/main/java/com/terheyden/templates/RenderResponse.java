@@ -0,0 +1,21 @@
+package com.terheyden.templates;
+
+import javax.annotation.Nullable;
+
+/**
+ * What a {@link RenderServer} sends back for each {@link RenderRequest}.
+ *
+ * @param ok whether the render succeeded
+ * @param text the rendered text, for inline templates without an output path
+ * @param error what went wrong, if it failed
+ */
+public record RenderResponse(boolean ok, @Nullable String text, @Nullable String error) {
+
+    static RenderResponse success(@Nullable String text) {
+        return new RenderResponse(true, text, null);
+    }
+
+    static RenderResponse failure(String error) {
+        return new RenderResponse(false, null, error);
+    }
+}
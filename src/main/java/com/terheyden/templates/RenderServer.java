@@ -0,0 +1,215 @@
+package com.terheyden.templates;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+
+import groovy.text.Template;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * A long-running render daemon, so callers that render over and over don't pay for
+ * JVM startup and Groovy warmup every time. Compiled templates stay cached between requests.
+ * <p>
+ * Listens on a Unix-domain socket (only the owner can connect), and speaks {@link RenderProtocol}.
+ * Every connection gets its own thread, so requests are served concurrently.
+ * Use {@link RenderClient} to talk to it.
+ */
+public final class RenderServer implements Closeable {
+
+    private static final Logger LOG = getLogger(RenderServer.class);
+
+    private final Path socketFile;
+    private final ServerSocketChannel server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(Templates.namedThreads("render"));
+
+    /**
+     * Start listening. Call {@link #run()} to start serving.
+     * @throws IllegalStateException if another server is already listening on the socket
+     */
+    public RenderServer(Path socketFile) {
+
+        this.socketFile = socketFile.toAbsolutePath();
+
+        if (RenderClient.isListening(this.socketFile)) {
+            throw new IllegalStateException("A render server is already listening on: " + this.socketFile);
+        }
+
+        try {
+
+            // Left behind by a server that didn't shut down cleanly.
+            Files.deleteIfExists(this.socketFile);
+            server = bindOwnerOnly(this.socketFile);
+
+        } catch (IOException e) {
+            throw Exceptions.<RuntimeException, RuntimeException>throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Clients send templates, which run as us, so no one else may ever connect. The socket is bound in
+     * a new dir only we can get into, restricted, and only then moved to where clients look for it;
+     * there's no moment when it's there with looser permissions.
+     * @throws IllegalStateException if the file system can't restrict permissions
+     */
+    private static ServerSocketChannel bindOwnerOnly(Path socketFile) throws IOException {
+
+        Path privateDir;
+
+        try {
+            privateDir = Files.createTempDirectory(
+                socketFile.getParent(),
+                ".codepuncher-",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalStateException("Can't make the render server socket owner-only here: " + socketFile, e);
+        }
+
+        Path boundFile = privateDir.resolve("render.sock");
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+
+        try {
+
+            server.bind(UnixDomainSocketAddress.of(boundFile));
+            Files.setPosixFilePermissions(boundFile, PosixFilePermissions.fromString("rw-------"));
+            Files.move(boundFile, socketFile, StandardCopyOption.ATOMIC_MOVE);
+            return server;
+
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            FileUtils2.deleteQuietly(boundFile);
+            throw e;
+        } finally {
+            FileUtils2.deleteQuietly(privateDir);
+        }
+    }
+
+    /**
+     * Use the default socket file.
+     */
+    public RenderServer() {
+        this(RenderProtocol.defaultSocketFile());
+    }
+
+    public Path getSocketFile() {
+        return socketFile;
+    }
+
+    /**
+     * Serve requests. Blocks until {@link #close()} is called.
+     */
+    public void run() {
+
+        LOG.info("Render server listening on: {}", socketFile);
+
+        try {
+
+            while (true) {
+                SocketChannel client = server.accept();
+                executor.execute(() -> serve(client));
+            }
+
+        } catch (ClosedChannelException e) {
+            LOG.debug("Render server socket closed, stopping.");
+        } catch (IOException e) {
+            Exceptions.throwUnchecked(e);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close render server socket.", e);
+        }
+
+        executor.shutdown();
+        FileUtils2.deleteQuietly(socketFile);
+    }
+
+    /**
+     * Answer every request on one connection, until the client hangs up.
+     */
+    private void serve(SocketChannel client) {
+        try (client;
+             BufferedReader in = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+             Writer out = Channels.newWriter(client, StandardCharsets.UTF_8)) {
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isBlank()) {
+                    RenderProtocol.write(out, handle(line));
+                }
+            }
+
+        } catch (Exception e) {
+            LOG.debug("Render client connection failed.", e);
+        }
+    }
+
+    private static RenderResponse handle(String line) {
+        try {
+
+            RenderRequest request = RenderProtocol.parse(line, RenderRequest.class);
+            LOG.debug("Render request: {}", request);
+            return RenderResponse.success(render(request).orElse(null));
+
+        } catch (Exception e) {
+            LOG.debug("Render request failed: {}", line, e);
+            return RenderResponse.failure(e.toString());
+        }
+    }
+
+    /**
+     * @return the rendered text, for inline templates without an output path
+     */
+    private static Optional<String> render(RenderRequest request) {
+
+        Map<String, Object> props = request.properties() != null
+            ? PropertyFiles.load(Path.of(request.properties()))
+            : PropertyTree.of(request.props());
+
+        if (request.templateText() == null) {
+            Templates.generate(Path.of(request.template()), Path.of(request.output()), props, request.options());
+            return Optional.empty();
+        }
+
+        RenderLimits limits = request.limits();
+        Template compiled = GroovyTemplater.compile(request.templateText(), limits.secure(), () -> { });
+
+        if (request.output() == null) {
+            StringWriter writer = new StringWriter();
+            Sandbox.render(compiled, props, writer, limits);
+            return Optional.of(writer.toString());
+        }
+
+        FileUtils2.writeAtomically(
+            Path.of(request.output()),
+            writer -> Sandbox.render(compiled, props, writer, limits),
+            false);
+        return Optional.empty();
+    }
+}
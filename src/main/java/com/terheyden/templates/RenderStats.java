@@ -0,0 +1,119 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Collects {@link TemplateMetrics} during a run, and sums them up into a report.
+ * This is what {@code --stats} prints.
+ */
+public final class RenderStats implements RenderListener {
+
+    /**
+     * How many of the slowest templates to list in the report.
+     */
+    private static final int SLOWEST_COUNT = 20;
+
+    private final long start = System.nanoTime();
+    private final Queue<TemplateMetrics> rendered = new ConcurrentLinkedQueue<>();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong propertiesNanos = new AtomicLong();
+
+    @Override
+    public void rendered(TemplateMetrics metrics) {
+        rendered.add(metrics);
+    }
+
+    @Override
+    public void skipped(Path template) {
+        skipped.increment();
+    }
+
+    @Override
+    public void failed(Path template, Throwable cause) {
+        failed.increment();
+    }
+
+    /**
+     * How long loading the properties took, since that happens before any templates are rendered.
+     */
+    public void propertiesLoaded(long nanos) {
+        propertiesNanos.set(nanos);
+    }
+
+    /**
+     * Everything reported so far, in no particular order.
+     */
+    public List<TemplateMetrics> getMetrics() {
+        return List.copyOf(rendered);
+    }
+
+    /**
+     * Totals, then the slowest templates. Phase times are summed over every thread,
+     * so with more than one thread they can add up to more than the elapsed time.
+     */
+    public String report() {
+
+        List<TemplateMetrics> all = getMetrics();
+        long compiled = all.stream().filter(metrics -> !metrics.copied()).count();
+        long cacheHits = all.stream().filter(TemplateMetrics::cacheHit).count();
+
+        StringBuilder report = new StringBuilder()
+            .append(String.format(Locale.ROOT,
+                "Generated %d files (%d rendered, %d copied as-is), skipped %d unchanged, %d failed, in %s%n",
+                all.size(),
+                compiled,
+                all.size() - compiled,
+                skipped.sum(),
+                failed.sum(),
+                millis(System.nanoTime() - start)))
+            .append(String.format(Locale.ROOT, "  Properties: %s%n", millis(propertiesNanos.get())))
+            .append(String.format(Locale.ROOT, "  Compile:    %s, cache hits %d of %d (%d%%)%n",
+                millis(sum(all, TemplateMetrics::compileNanos)),
+                cacheHits,
+                compiled,
+                compiled == 0 ? 0 : cacheHits * 100 / compiled))
+            .append(String.format(Locale.ROOT, "  Eval:       %s%n", millis(sum(all, TemplateMetrics::evalNanos))))
+            .append(String.format(Locale.ROOT, "  Write:      %s, %d bytes%n",
+                millis(sum(all, TemplateMetrics::writeNanos)),
+                sum(all, TemplateMetrics::outputBytes)));
+
+        if (all.isEmpty()) {
+            return report.toString();
+        }
+
+        report.append(String.format(Locale.ROOT, "%nSlowest:%n%10s %10s %10s %10s %12s  %s%n",
+            "total", "compile", "eval", "write", "bytes", "template"));
+
+        all.stream()
+            .sorted(Comparator.comparingLong(TemplateMetrics::totalNanos).reversed())
+            .limit(SLOWEST_COUNT)
+            .forEach(metrics -> report.append(String.format(Locale.ROOT, "%10s %10s %10s %10s %12d  %s%s%n",
+                millis(metrics.totalNanos()),
+                millis(metrics.compileNanos()),
+                millis(metrics.evalNanos()),
+                millis(metrics.writeNanos()),
+                metrics.outputBytes(),
+                metrics.template(),
+                metrics.copied() ? " (copied)" : "")));
+
+        return report.toString();
+    }
+
+    private static long sum(List<TemplateMetrics> all, ToLongFunction<TemplateMetrics> field) {
+        return all.stream().mapToLong(field).sum();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f ms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,158 @@
+package com.terheyden.templates;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import groovy.text.Template;
+
+/**
+ * Times the phases of generating one template file, for {@link RenderListener}s and JFR.
+ * Used by one thread at a time.
+ */
+final class RenderTimer {
+
+    private final Path template;
+    private final TemplateRenderEvent event = new TemplateRenderEvent();
+    private final long start = System.nanoTime();
+
+    private boolean copied;
+    private boolean cacheHit = true;
+    private long compileNanos;
+    private long writeNanos;
+    private long outputBytes;
+
+    /**
+     * @param template the template file, relative to the template dir
+     */
+    RenderTimer(Path template) {
+        this.template = template;
+        event.begin();
+    }
+
+    Template compile(String templateText, boolean secure) {
+
+        long compileStart = System.nanoTime();
+        Template compiled = GroovyTemplater.compile(Optional.of(template), templateText, secure, () -> cacheHit = false);
+        compileNanos += System.nanoTime() - compileStart;
+        return compiled;
+    }
+
+    /**
+     * Time a copy of a file without template syntax.
+     */
+    void copy(OutputFiles outputs, Path sourceFile, Path outFile) {
+
+        long copyStart = System.nanoTime();
+        outputBytes += outputs.copy(sourceFile, outFile);
+        writeNanos += System.nanoTime() - copyStart;
+        copied = true;
+        cacheHit = false;
+    }
+
+    /**
+     * Time (and count the UTF-8 bytes of) everything written through the returned writer.
+     */
+    Writer wrap(Writer writer) {
+        return new Writer() {
+
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                long writeStart = System.nanoTime();
+                writer.write(chars, offset, length);
+                writeNanos += System.nanoTime() - writeStart;
+                outputBytes += utf8Length(chars, offset, length);
+            }
+
+            @Override
+            public void write(String str, int offset, int length) throws IOException {
+                long writeStart = System.nanoTime();
+                writer.write(str, offset, length);
+                writeNanos += System.nanoTime() - writeStart;
+                outputBytes += utf8Length(str, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                long flushStart = System.nanoTime();
+                writer.flush();
+                writeNanos += System.nanoTime() - flushStart;
+            }
+
+            @Override
+            public void close() throws IOException {
+                long closeStart = System.nanoTime();
+                writer.close();
+                writeNanos += System.nanoTime() - closeStart;
+            }
+        };
+    }
+
+    /**
+     * Stop timing, and report to the listener and JFR.
+     */
+    void finish(RenderListener listener) {
+
+        long totalNanos = System.nanoTime() - start;
+        long evalNanos = Math.max(0, totalNanos - compileNanos - writeNanos);
+
+        TemplateMetrics metrics = new TemplateMetrics(
+            template,
+            copied,
+            cacheHit,
+            compileNanos,
+            evalNanos,
+            writeNanos,
+            outputBytes);
+
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.template = template.toString();
+            event.copied = copied;
+            event.cacheHit = cacheHit;
+            event.compileTime = compileNanos;
+            event.evalTime = evalNanos;
+            event.writeTime = writeNanos;
+            event.outputBytes = outputBytes;
+            event.commit();
+        }
+
+        listener.rendered(metrics);
+    }
+
+    static long utf8Length(CharSequence chars, int offset, int length) {
+
+        long bytes = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            bytes += utf8Length(chars.charAt(i));
+        }
+
+        return bytes;
+    }
+
+    static long utf8Length(char[] chars, int offset, int length) {
+
+        long bytes = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            bytes += utf8Length(chars[i]);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * A surrogate pair is 4 bytes, so 2 per half.
+     */
+    private static int utf8Length(char c) {
+
+        if (c < 0x80) {
+            return 1;
+        }
+
+        return c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+    }
+}
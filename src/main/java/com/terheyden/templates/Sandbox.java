@@ -0,0 +1,243 @@
+package com.terheyden.templates;
+
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.expr.ClassExpression;
+import org.codehaus.groovy.ast.expr.ConstructorCallExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.StaticMethodCallExpression;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.control.customizers.SecureASTCustomizer;
+
+import groovy.text.Template;
+import groovy.transform.ThreadInterrupt;
+
+/**
+ * Enforces {@link RenderLimits}.
+ * <p>
+ * Every template is compiled with {@link ThreadInterrupt}, so loops, closures, and methods check
+ * whether their thread was interrupted. A per-render timeout is then just a watchdog that interrupts
+ * the rendering thread. (Groovy's {@code TimedInterrupt} would bake the timeout into the bytecode,
+ * so every timeout would need its own compiled copy of every template.)
+ * <p>
+ * Secure templates are also compiled with a {@link SecureASTCustomizer} that rejects files, processes,
+ * threads, reflection, class loading, and evaluating more Groovy. It's a guard against templates
+ * doing things they obviously shouldn't, not a hardened boundary for hostile code.
+ */
+final class Sandbox {
+
+    private static final Set<String> DENIED_PACKAGES = Set.of(
+        "java.io.",
+        "java.nio.",
+        "java.net.",
+        "java.lang.reflect.",
+        "java.lang.invoke.",
+        "java.util.concurrent.",
+        "javax.script.",
+        "sun.",
+        "jdk.");
+
+    private static final Set<String> DENIED_CLASSES = Set.of(
+        "java.lang.System",
+        "java.lang.Runtime",
+        "java.lang.ProcessBuilder",
+        "java.lang.Process",
+        "java.lang.Thread",
+        "java.lang.ThreadGroup",
+        "java.lang.Class",
+        "java.lang.ClassLoader",
+        "groovy.lang.GroovyShell",
+        "groovy.lang.GroovyClassLoader",
+        "groovy.util.Eval",
+        "groovy.util.GroovyScriptEngine");
+
+    /**
+     * Methods and properties that get at the above dynamically, e.g. {@code 'ls'.execute()} or {@code x.class}.
+     */
+    private static final Set<String> DENIED_MEMBERS = Set.of(
+        "execute",
+        "exit",
+        "halt",
+        "getClass",
+        "class",
+        "forName",
+        "getClassLoader",
+        "classLoader",
+        "getMetaClass",
+        "setMetaClass",
+        "metaClass",
+        "invokeMethod",
+        "evaluate",
+        "getRuntime",
+        "getBinding",
+        "setBinding",
+        "binding");
+
+    /**
+     * Interrupts renders that run too long. One daemon thread for every render.
+     */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+        Templates.namedThreads("render-watchdog"));
+
+    private Sandbox() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Add the compile-time parts of the sandbox.
+     */
+    static CompilerConfiguration configure(CompilerConfiguration config, boolean secure) {
+
+        config.addCompilationCustomizers(new ASTTransformationCustomizer(ThreadInterrupt.class));
+
+        if (secure) {
+            SecureASTCustomizer customizer = new SecureASTCustomizer();
+            customizer.setPackageAllowed(false);
+            customizer.setIndirectImportCheckEnabled(true);
+            customizer.addExpressionCheckers(Sandbox::isAllowed);
+            config.addCompilationCustomizers(customizer);
+        }
+
+        return config;
+    }
+
+    /**
+     * Render the template to the writer (flushed, not closed), within the limits.
+     * @throws TemplateLimitException if the template ran too long or wrote too much
+     */
+    static void render(Template compiled, Map<String, Object> props, Writer writer, RenderLimits limits) {
+
+        Writer limitedWriter = limits.hasMaxOutput() ? new LimitedWriter(writer, limits.maxOutputBytes()) : writer;
+
+        if (!limits.hasTimeout()) {
+            GroovyTemplater.writeTo(compiled, props, limitedWriter);
+            return;
+        }
+
+        Alarm alarm = new Alarm(Thread.currentThread());
+        ScheduledFuture<?> scheduled = WATCHDOG.schedule(alarm::ring, limits.timeout().toNanos(), TimeUnit.NANOSECONDS);
+
+        try {
+
+            GroovyTemplater.writeTo(compiled, props, limitedWriter);
+
+        } catch (Exception e) {
+
+            if (alarm.stop()) {
+                throw new TemplateLimitException("Template ran longer than the limit of " + limits.timeout(), e);
+            }
+
+            Exceptions.throwUnchecked(e);
+
+        } finally {
+            scheduled.cancel(false);
+            alarm.stop();
+        }
+    }
+
+    /**
+     * Interrupts the rendering thread, unless the render is already over. Ringing and stopping are locked,
+     * so the watchdog can't interrupt a thread that has moved on to something else (e.g. the next file).
+     */
+    static final class Alarm {
+
+        private final Thread thread;
+        private boolean stopped;
+        private boolean rang;
+
+        Alarm(Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void ring() {
+            if (!stopped) {
+                rang = true;
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Call from the rendering thread. Clears the interrupt if the alarm rang,
+         * so this (pool) thread isn't left interrupted.
+         * @return true if the alarm rang
+         */
+        synchronized boolean stop() {
+
+            if (!stopped && rang) {
+                Thread.interrupted();
+            }
+
+            stopped = true;
+            return rang;
+        }
+    }
+
+    private static boolean isAllowed(Expression expression) {
+
+        if (isThreadInterruptCheck(expression)) {
+            return true;
+        }
+
+        if (expression instanceof ConstructorCallExpression call) {
+            return isAllowed(call.getType());
+        }
+
+        if (expression instanceof ClassExpression classExpression) {
+            return isAllowed(classExpression.getType());
+        }
+
+        if (expression instanceof StaticMethodCallExpression call) {
+            return isAllowed(call.getOwnerType()) && !DENIED_MEMBERS.contains(call.getMethod());
+        }
+
+        // A null name is a dynamic one, e.g. obj."$name"(); there's no telling what it calls.
+        if (expression instanceof MethodCallExpression call) {
+            return call.getMethodAsString() != null && !DENIED_MEMBERS.contains(call.getMethodAsString());
+        }
+
+        if (expression instanceof PropertyExpression property) {
+            return property.getPropertyAsString() != null && !DENIED_MEMBERS.contains(property.getPropertyAsString());
+        }
+
+        return true;
+    }
+
+    /**
+     * The {@code Thread.currentThread().isInterrupted()} checks {@link ThreadInterrupt} adds.
+     * They aren't from the template, so they have no line number; the template's own code always does.
+     */
+    private static boolean isThreadInterruptCheck(Expression expression) {
+
+        if (expression.getLineNumber() >= 0) {
+            return false;
+        }
+
+        if (expression instanceof ClassExpression classExpression) {
+            return classExpression.getType().getName().equals(Thread.class.getName());
+        }
+
+        if (expression instanceof MethodCallExpression call) {
+            return call.getObjectExpression() instanceof ClassExpression owner
+                && owner.getType().getName().equals(Thread.class.getName())
+                && "currentThread".equals(call.getMethodAsString());
+        }
+
+        return false;
+    }
+
+    private static boolean isAllowed(ClassNode type) {
+
+        String name = type.getName();
+        return !DENIED_CLASSES.contains(name) && DENIED_PACKAGES.stream().noneMatch(name::startsWith);
+    }
+}
@@ -0,0 +1,245 @@
+package com.terheyden.templates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.groovy.ast.ClassCodeVisitorSupport;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.VariableScope;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.ConstructorCallExpression;
+import org.codehaus.groovy.ast.expr.DeclarationExpression;
+import org.codehaus.groovy.ast.expr.GStringExpression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.StaticMethodCallExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.BreakStatement;
+import org.codehaus.groovy.ast.stmt.ContinueStatement;
+import org.codehaus.groovy.ast.stmt.ExpressionStatement;
+import org.codehaus.groovy.ast.stmt.ReturnStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.classgen.GeneratorContext;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
+
+/**
+ * Splits big template scripts into many small methods.
+ * The JVM won't load a method with more than 64KB of bytecode ("method too large"),
+ * and HotSpot won't JIT a method over 8000 bytes, so without this a big template either fails to compile
+ * or runs interpreted, forever.
+ * <p>
+ * Any block of statements that's too big (the script itself, or e.g. {@code <% if (x) { %>...<% } %>})
+ * is cut into chunks, innermost blocks first. Each chunk becomes a closure that's called in place,
+ * {@code { -> ... }.call()}, so it compiles to its own small method (in its own class, with its own constant pool),
+ * but can still see the locals around it.
+ * Local declarations stay where they are, between the chunks, so everything after them can still see them.
+ * <p>
+ * A closure can't {@code break}, {@code continue}, or {@code return} for the block around it,
+ * so blocks that do aren't split.
+ */
+final class ScriptChunker extends CompilationCustomizer {
+
+    /**
+     * Roughly how many expressions go in each chunk. A few bytes of bytecode each,
+     * so this keeps methods under HotSpot's 8000-byte JIT limit.
+     */
+    private static final int MAX_CHUNK_SIZE = 400;
+
+    ScriptChunker() {
+        super(CompilePhase.CONVERSION);
+    }
+
+    @Override
+    public void call(SourceUnit source, GeneratorContext context, ClassNode classNode) {
+
+        MethodNode run = classNode.getMethod("run", Parameter.EMPTY_ARRAY);
+
+        if (classNode.isScript() && run != null && run.getCode() instanceof BlockStatement body) {
+            body.visit(new BlockSplitter());
+        }
+    }
+
+    /**
+     * Visits blocks innermost first, so by the time we get to a block, its big inner blocks are already small.
+     */
+    private static final class BlockSplitter extends ClassCodeVisitorSupport {
+
+        @Override
+        protected SourceUnit getSourceUnit() {
+            return null;
+        }
+
+        @Override
+        public void visitBlockStatement(BlockStatement block) {
+
+            super.visitBlockStatement(block);
+
+            List<Statement> statements = block.getStatements();
+            List<StatementScan> scans = statements.stream().map(StatementScan::of).toList();
+
+            if (scans.stream().mapToInt(scan -> scan.size).sum() <= MAX_CHUNK_SIZE
+                || scans.stream().anyMatch(scan -> scan.jumps)) {
+                return;
+            }
+
+            List<Statement> split = new ArrayList<>();
+            List<Statement> chunk = new ArrayList<>();
+            int chunkSize = 0;
+
+            for (int i = 0; i < statements.size(); i++) {
+
+                Statement statement = statements.get(i);
+                StatementScan scan = scans.get(i);
+
+                if (scan.declares || chunkSize + scan.size > MAX_CHUNK_SIZE) {
+                    addChunk(chunk, split);
+                    chunk = new ArrayList<>();
+                    chunkSize = 0;
+                }
+
+                if (scan.declares) {
+                    split.add(statement);
+                } else {
+                    chunk.add(statement);
+                    chunkSize += scan.size;
+                }
+            }
+
+            addChunk(chunk, split);
+
+            statements.clear();
+            statements.addAll(split);
+        }
+
+        private static void addChunk(List<Statement> chunk, List<Statement> split) {
+
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            ClosureExpression closure = new ClosureExpression(
+                Parameter.EMPTY_ARRAY,
+                new BlockStatement(chunk, new VariableScope()));
+
+            split.add(new ExpressionStatement(new MethodCallExpression(
+                closure,
+                "call",
+                ArgumentListExpression.EMPTY_ARGUMENTS)));
+        }
+    }
+
+    /**
+     * What we need to know about a statement to decide where to split.
+     * The size is a count of the expressions that end up in the method itself; closures get their own classes.
+     */
+    private static final class StatementScan extends ClassCodeVisitorSupport {
+
+        private boolean declares;
+        private boolean jumps;
+        private int size;
+        private int closureDepth;
+
+        static StatementScan of(Statement statement) {
+
+            StatementScan scan = new StatementScan();
+            statement.visit(scan);
+
+            scan.declares = statement instanceof ExpressionStatement expressionStatement
+                && expressionStatement.getExpression() instanceof DeclarationExpression;
+
+            return scan;
+        }
+
+        @Override
+        protected SourceUnit getSourceUnit() {
+            return null;
+        }
+
+        @Override
+        public void visitReturnStatement(ReturnStatement statement) {
+            jumps |= closureDepth == 0;
+            super.visitReturnStatement(statement);
+        }
+
+        @Override
+        public void visitBreakStatement(BreakStatement statement) {
+            jumps |= closureDepth == 0;
+            super.visitBreakStatement(statement);
+        }
+
+        @Override
+        public void visitContinueStatement(ContinueStatement statement) {
+            jumps |= closureDepth == 0;
+            super.visitContinueStatement(statement);
+        }
+
+        @Override
+        public void visitClosureExpression(ClosureExpression expression) {
+            closureDepth++;
+            super.visitClosureExpression(expression);
+            closureDepth--;
+        }
+
+        @Override
+        public void visitVariableExpression(VariableExpression expression) {
+            count();
+            super.visitVariableExpression(expression);
+        }
+
+        @Override
+        public void visitMethodCallExpression(MethodCallExpression call) {
+            count();
+            super.visitMethodCallExpression(call);
+        }
+
+        @Override
+        public void visitStaticMethodCallExpression(StaticMethodCallExpression call) {
+            count();
+            super.visitStaticMethodCallExpression(call);
+        }
+
+        @Override
+        public void visitConstructorCallExpression(ConstructorCallExpression call) {
+            count();
+            super.visitConstructorCallExpression(call);
+        }
+
+        @Override
+        public void visitPropertyExpression(PropertyExpression expression) {
+            count();
+            super.visitPropertyExpression(expression);
+        }
+
+        @Override
+        public void visitBinaryExpression(BinaryExpression expression) {
+            count();
+            super.visitBinaryExpression(expression);
+        }
+
+        @Override
+        public void visitGStringExpression(GStringExpression expression) {
+            count();
+            super.visitGStringExpression(expression);
+        }
+
+        @Override
+        public void visitConstantExpression(ConstantExpression expression) {
+            count();
+            super.visitConstantExpression(expression);
+        }
+
+        private void count() {
+            if (closureDepth == 0) {
+                size++;
+            }
+        }
+    }
+}
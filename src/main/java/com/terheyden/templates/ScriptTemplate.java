@@ -0,0 +1,124 @@
+package com.terheyden.templates;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import groovy.lang.Binding;
+import groovy.lang.Script;
+import groovy.lang.Writable;
+import groovy.text.Template;
+
+/**
+ * A template compiled into a Groovy script class (see {@link TemplateParser}).
+ * Each {@link #make(Map)} runs a fresh script instance, so one compiled template can be rendered
+ * by many threads at once. The map is shared, not copied, and never written to (see {@link OverlayBinding}).
+ * <p>
+ * If a render fails, the script's stack frames are rewritten to the template's name and lines
+ * (e.g. {@code at Template_1a2b.run(page.txt:12)}), so the stack trace points at the template.
+ */
+final class ScriptTemplate implements Template {
+
+    private final Class<? extends Script> scriptClass;
+    private final TemplateScript script;
+
+    ScriptTemplate(Class<? extends Script> scriptClass, TemplateScript script) {
+        this.scriptClass = scriptClass;
+        this.script = script;
+    }
+
+    @Override
+    public Writable make() {
+        return make(null);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Writable make(Map binding) {
+        return new ScriptWritable(new OverlayBinding(binding == null ? Map.of() : binding));
+    }
+
+    /**
+     * The same compiled class, reporting errors against another template that compiles to the same script,
+     * e.g. one with another name or a longer header.
+     */
+    ScriptTemplate withScript(TemplateScript newScript) {
+        return newScript == script ? this : new ScriptTemplate(scriptClass, newScript);
+    }
+
+    Class<? extends Script> getScriptClass() {
+        return scriptClass;
+    }
+
+    /**
+     * Runs the template script, printing to the given writer.
+     */
+    private final class ScriptWritable implements Writable {
+
+        private final Binding binding;
+
+        private ScriptWritable(Binding binding) {
+            this.binding = binding;
+        }
+
+        @Override
+        public Writer writeTo(Writer writer) {
+
+            Script instance = InvokerHelper.createScript(scriptClass, binding);
+            PrintWriter printWriter = new PrintWriter(writer);
+            instance.setProperty("out", printWriter);
+
+            try {
+                instance.run();
+            } catch (Throwable e) {
+                remapStackTraces(e);
+                throw e;
+            }
+
+            printWriter.flush();
+            return writer;
+        }
+
+        @Override
+        public String toString() {
+            return writeTo(new StringWriter()).toString();
+        }
+    }
+
+    /**
+     * Rewrite this template's frames in the exception and its causes; other templates' (e.g. partials') are left alone.
+     */
+    private void remapStackTraces(Throwable error) {
+
+        String scriptFile = scriptClass.getName() + ".groovy";
+        String closurePrefix = scriptClass.getName() + "$";
+
+        for (Throwable e = error; e != null; e = e.getCause()) {
+
+            StackTraceElement[] frames = e.getStackTrace();
+
+            for (int i = 0; i < frames.length; i++) {
+
+                StackTraceElement frame = frames[i];
+
+                if (scriptFile.equals(frame.getFileName())
+                    && (frame.getClassName().equals(scriptClass.getName()) || frame.getClassName().startsWith(closurePrefix))) {
+
+                    frames[i] = script
+                        .position(frame.getLineNumber())
+                        .map(position -> new StackTraceElement(
+                            frame.getClassName(),
+                            frame.getMethodName(),
+                            script.templateName(),
+                            position.line()))
+                        .orElse(frame);
+                }
+            }
+
+            e.setStackTrace(frames);
+        }
+    }
+}
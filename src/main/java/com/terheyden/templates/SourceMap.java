@@ -0,0 +1,165 @@
+package com.terheyden.templates;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Where each part of a generated template script came from in the template, so errors can point at the template
+ * instead of the script. {@link TemplateParser} records it as it goes: one entry wherever the script stops being
+ * a straight copy of the template (tags, quotes, backslashes), not one per char.
+ * <p>
+ * Lookups are only needed for errors, so they just scan the texts.
+ */
+final class SourceMap {
+
+    /**
+     * Maps nothing.
+     */
+    static final SourceMap NONE = new SourceMap("", new int[0], new int[0], 0);
+
+    private final String template;
+
+    /**
+     * Entry {@code i}: script chars from {@code scriptOffsets[i]} on were copied from the template
+     * from {@code templateOffsets[i]} on. Both ascending.
+     */
+    private final int[] scriptOffsets;
+    private final int[] templateOffsets;
+    private final int size;
+
+    /**
+     * Chars added in front of the script (e.g. declarations).
+     */
+    private final int scriptShift;
+
+    /**
+     * Lines in front of the template text (its header).
+     */
+    private final int lineShift;
+
+    SourceMap(String template, int[] scriptOffsets, int[] templateOffsets, int size) {
+        this(template, scriptOffsets, templateOffsets, size, 0, 0);
+    }
+
+    private SourceMap(String template, int[] scriptOffsets, int[] templateOffsets, int size, int scriptShift, int lineShift) {
+        this.template = template;
+        this.scriptOffsets = scriptOffsets;
+        this.templateOffsets = templateOffsets;
+        this.size = size;
+        this.scriptShift = scriptShift;
+        this.lineShift = lineShift;
+    }
+
+    /**
+     * @param scriptChars chars added in front of the script
+     * @param templateLines lines in front of the template text
+     */
+    SourceMap shift(int scriptChars, int templateLines) {
+        return new SourceMap(template, scriptOffsets, templateOffsets, size,
+            scriptShift + scriptChars, lineShift + templateLines);
+    }
+
+    /**
+     * @param script the script this maps
+     * @param line 1-based script line
+     * @param column 1-based script column
+     * @return where that char came from in the template, if anywhere
+     */
+    Optional<Position> position(String script, int line, int column) {
+
+        int lineStart = lineStart(script, line);
+
+        if (lineStart < 0 || column < 1) {
+            return Optional.empty();
+        }
+
+        return templateOffset(lineStart + column - 1).map(this::positionOf);
+    }
+
+    /**
+     * Like {@link #position(String, int, int)}, for the first thing on the script line that came from the template;
+     * for stack traces, which only have lines.
+     */
+    Optional<Position> position(String script, int line) {
+
+        int lineStart = lineStart(script, line);
+
+        if (lineStart < 0) {
+            return Optional.empty();
+        }
+
+        int lineEnd = script.indexOf('\n', lineStart);
+        int entry = entryAtOrAfter(lineStart - scriptShift);
+
+        // Nothing on the line came from the template (it's all generated), so use whatever the line starts with.
+        return entry < size && (lineEnd < 0 || scriptOffsets[entry] + scriptShift < lineEnd)
+            ? Optional.of(positionOf(templateOffsets[entry]))
+            : templateOffset(lineStart).map(this::positionOf);
+    }
+
+    private Optional<Integer> templateOffset(int scriptOffset) {
+
+        int offset = scriptOffset - scriptShift;
+        int entry = entryAtOrAfter(offset + 1) - 1;
+
+        if (offset < 0 || entry < 0) {
+            return Optional.empty();
+        }
+
+        // Generated text (e.g. the end of a print) maps to wherever the template continues.
+        int templateOffset = templateOffsets[entry] + offset - scriptOffsets[entry];
+        int limit = entry + 1 < size ? templateOffsets[entry + 1] : template.length();
+        return Optional.of(Math.min(templateOffset, limit));
+    }
+
+    /**
+     * @return the first entry whose script offset is at least this, or {@link #size} if none
+     */
+    private int entryAtOrAfter(int offset) {
+        int entry = Arrays.binarySearch(scriptOffsets, 0, size, offset);
+        return entry >= 0 ? entry : -entry - 1;
+    }
+
+    /**
+     * The generated script only breaks lines with {@code \n}, like Groovy counts them.
+     * @return the offset the 1-based line starts at, or -1 if there's no such line
+     */
+    private static int lineStart(String script, int line) {
+
+        int offset = 0;
+
+        for (int current = 1; current < line; current++) {
+            offset = script.indexOf('\n', offset) + 1;
+
+            if (offset == 0) {
+                return -1;
+            }
+        }
+
+        return line < 1 ? -1 : offset;
+    }
+
+    private Position positionOf(int templateOffset) {
+
+        int line = 1;
+        int lineStart = 0;
+
+        for (int index = 0; index < templateOffset; index++) {
+
+            char c = template.charAt(index);
+
+            if (c == '\n' || (c == '\r' && (index + 1 >= template.length() || template.charAt(index + 1) != '\n'))) {
+                line++;
+                lineStart = index + 1;
+            }
+        }
+
+        return new Position(line + lineShift, templateOffset - lineStart + 1);
+    }
+
+    /**
+     * A 1-based line and column in the template.
+     */
+    record Position(int line, int column) {
+    }
+}
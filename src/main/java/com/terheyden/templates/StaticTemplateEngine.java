@@ -0,0 +1,129 @@
+package com.terheyden.templates;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.BinaryExpression;
+import org.codehaus.groovy.ast.expr.MethodCall;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.PropertyExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.transform.stc.AbstractTypeCheckingExtension;
+import org.codehaus.groovy.transform.stc.StaticTypeCheckingVisitor;
+
+import groovy.transform.CompileStatic;
+
+/**
+ * Same syntax as the {@link TemplateEngines#DYNAMIC} engine, but compiled with {@code @CompileStatic},
+ * so method calls and property access on declared variables are direct calls instead of dynamic dispatch.
+ * That's much faster in tight loops over big lists, and type errors fail the compile instead of the render.
+ * <p>
+ * Declare the variables in the header, with Groovy types:
+ * <pre>
+ * &lt;%@ engine static %&gt;
+ * &lt;%@ var List&lt;Map&lt;String, Object&gt;&gt; items %&gt;
+ * &lt;% for (item in items) { %&gt;${item.name}: ${item.price}
+ * &lt;% } %&gt;
+ * </pre>
+ * Anything not declared (and anything reached through it) falls back to dynamic Groovy,
+ * see {@link UndeclaredVariables}; a template that declares nothing just uses the dynamic engine.
+ */
+public final class StaticTemplateEngine implements TemplateEngine {
+
+    StaticTemplateEngine() {
+        // Use TemplateEngines.STATIC.
+    }
+
+    @Override
+    public String name() {
+        return "static";
+    }
+
+    /**
+     * The declarations all go on the first line, so script line numbers still match the template body's.
+     */
+    @Override
+    public TemplateScript toScript(String template, Map<String, String> variables) {
+
+        StringBuilder declarations = new StringBuilder()
+            .append(PrintWriter.class.getName()).append(" out = (")
+            .append(PrintWriter.class.getName()).append(") binding.getVariable('out'); ");
+
+        variables.forEach((name, type) -> declarations
+            .append(type).append(' ').append(name)
+            .append(" = (").append(type).append(") binding.getVariable('").append(name).append("'); "));
+
+        return GroovyTemplater.toScript(template).prepend(declarations.toString());
+    }
+
+    @Override
+    public void configure(CompilerConfiguration config) {
+        config.addCompilationCustomizers(new ASTTransformationCustomizer(
+            Map.of("extensions", List.of(UndeclaredVariables.class.getName())),
+            CompileStatic.class));
+    }
+
+    /**
+     * Type checking extension that resolves undeclared names the way a dynamic template would:
+     * from the properties, at render time. Properties and methods of those (typed {@code Object})
+     * are dynamic too; everything else is still type checked, and operators need typed operands.
+     * <p>
+     * Public, since the Groovy compiler creates it.
+     */
+    public static final class UndeclaredVariables extends AbstractTypeCheckingExtension {
+
+        public UndeclaredVariables(StaticTypeCheckingVisitor typeCheckingVisitor) {
+            super(typeCheckingVisitor);
+        }
+
+        @Override
+        public boolean handleUnresolvedVariableExpression(VariableExpression expression) {
+            makeDynamic(expression);
+            return true;
+        }
+
+        @Override
+        public boolean handleUnresolvedProperty(PropertyExpression expression) {
+
+            if (!isUntyped(getType(expression.getObjectExpression()))) {
+                return false;
+            }
+
+            makeDynamic(expression);
+            return true;
+        }
+
+        @Override
+        public List<MethodNode> handleMissingMethod(
+            ClassNode receiver,
+            String name,
+            ArgumentListExpression arguments,
+            ClassNode[] argumentTypes,
+            MethodCall call) {
+
+            return isUntyped(receiver) && !isOperator(call) ? List.of(makeDynamic(call)) : List.of();
+        }
+
+        /**
+         * For an operator (e.g. {@code a * b}), the type checker looks for a made-up call ({@code a.multiply(b)}),
+         * which can't be made dynamic; the operands need types.
+         */
+        private boolean isOperator(MethodCall call) {
+            BinaryExpression enclosing = getEnclosingBinaryExpression();
+            return enclosing != null
+                && call instanceof MethodCallExpression methodCall
+                && methodCall.getObjectExpression() == enclosing.getLeftExpression();
+        }
+
+        private static boolean isUntyped(ClassNode type) {
+            return ClassHelper.isObjectType(type);
+        }
+    }
+}
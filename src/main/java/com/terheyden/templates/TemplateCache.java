@@ -0,0 +1,113 @@
+package com.terheyden.templates;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import groovy.text.Template;
+
+/**
+ * Bounded, least-recently-used cache of compiled templates.
+ * Compiling a template generates a brand-new Groovy class, so we want to do it as rarely as possible.
+ * <p>
+ * Thread-safe. Compilation happens outside the lock, so two threads that miss on the same key
+ * at the same time may both compile it; the last one in wins, which is harmless.
+ */
+public final class TemplateCache {
+
+    private final int maxSize;
+    private final Map<String, Template> templates;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize the max number of compiled templates to keep before evicting the least recently used
+     */
+    public TemplateCache(int maxSize) {
+
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+
+        // Access-ordered, so iteration order is least-recently-used first.
+        this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+
+                boolean evict = size() > TemplateCache.this.maxSize;
+
+                if (evict) {
+                    evictions.increment();
+                }
+
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Return the cached template for the given key, compiling and caching it if it's missing.
+     * @param key a hash of everything that affects the compiled template
+     * @param compiler compiles the template on a cache miss
+     */
+    public Template get(String key, Supplier<Template> compiler) {
+
+        Template cached;
+        synchronized (templates) {
+            cached = templates.get(key);
+        }
+
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        Template compiled = compiler.get();
+
+        synchronized (templates) {
+            templates.put(key, compiled);
+        }
+
+        return compiled;
+    }
+
+    public void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    /**
+     * A snapshot of the cache counters.
+     */
+    public record Stats(long hits, long misses, long evictions, int size) {
+
+        /**
+         * @return the fraction of lookups that were hits, from 0.0 to 1.0
+         */
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+}
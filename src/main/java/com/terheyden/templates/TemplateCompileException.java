@@ -0,0 +1,67 @@
+package com.terheyden.templates;
+
+import java.util.List;
+
+import org.codehaus.groovy.control.MultipleCompilationErrorsException;
+import org.codehaus.groovy.control.messages.ExceptionMessage;
+import org.codehaus.groovy.control.messages.Message;
+import org.codehaus.groovy.control.messages.SimpleMessage;
+import org.codehaus.groovy.control.messages.SyntaxErrorMessage;
+import org.codehaus.groovy.syntax.SyntaxException;
+
+import groovy.lang.GroovyRuntimeException;
+
+/**
+ * Thrown when a template doesn't compile. Each error says where it is in the template,
+ * e.g. {@code page.txt:12:5: unexpected token: }}, not in the script it was translated to.
+ * A {@link GroovyRuntimeException}, like Groovy's own compile errors.
+ */
+public class TemplateCompileException extends GroovyRuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    TemplateCompileException(TemplateScript script, MultipleCompilationErrorsException cause) {
+        super(buildMessage(script, cause.getErrorCollector().getErrors()), cause);
+    }
+
+    private static String buildMessage(TemplateScript script, List<? extends Message> errors) {
+
+        StringBuilder message = new StringBuilder();
+
+        for (Message error : errors) {
+
+            if (!message.isEmpty()) {
+                message.append('\n');
+            }
+
+            if (error instanceof SyntaxErrorMessage syntaxError) {
+                appendError(message, script, syntaxError.getCause());
+            } else {
+                message.append(script.templateName()).append(": ").append(describe(error));
+            }
+        }
+
+        return message.toString();
+    }
+
+    private static String describe(Message error) {
+
+        if (error instanceof ExceptionMessage exceptionMessage) {
+            return exceptionMessage.getCause().getMessage();
+        }
+
+        return error instanceof SimpleMessage simpleMessage ? simpleMessage.getMessage() : error.toString();
+    }
+
+    private static void appendError(StringBuilder message, TemplateScript script, SyntaxException error) {
+
+        script.position(error.getStartLine(), error.getStartColumn()).ifPresentOrElse(
+            position -> message
+                .append(script.templateName())
+                .append(':').append(position.line())
+                .append(':').append(position.column())
+                .append(": ").append(error.getOriginalMessage()),
+            // No source map; the message has the script line.
+            () -> message.append(script.templateName()).append(": ").append(error.getMessage()));
+    }
+}
@@ -0,0 +1,134 @@
+package com.terheyden.templates;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.MultipleCompilationErrorsException;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.slf4j.Logger;
+
+import groovy.lang.GroovySystem;
+import groovy.lang.Script;
+import groovy.text.Template;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Compiles template scripts (see {@link TemplateParser}) to bytecode and loads them.
+ * Optionally backed by a {@link DiskTemplateCache}, so bytecode survives across JVMs.
+ */
+final class TemplateCompiler {
+
+    private static final Logger LOG = getLogger(TemplateCompiler.class);
+
+    /**
+     * Bump this whenever the generated script or class layout changes, to invalidate old disk caches.
+     */
+    private static final String COMPILER_VERSION = "4";
+
+    private TemplateCompiler() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * A hash of the script and everything else that affects its bytecode.
+     * @param secure compiled with the {@link Sandbox}'s restrictions
+     */
+    static String cacheKey(TemplateEngine engine, String script, boolean secure) {
+        return Hashing.sha256(
+            version(),
+            engine.name(),
+            secure ? "secure" : "trusted",
+            script);
+    }
+
+    /**
+     * A hash of the compiler, Groovy, and extras versions; bytecode from a different version won't be used.
+     */
+    static String version() {
+        return Hashing.sha256(COMPILER_VERSION, GroovySystem.getVersion(), GroovyExtras.HASH);
+    }
+
+    /**
+     * Compile and load the script, using (and filling) the disk cache if there is one.
+     * @param script from the engine's {@link TemplateEngine#toScript}
+     * @param key the script's {@link #cacheKey(TemplateEngine, String, boolean)}
+     */
+    static Template compile(
+        TemplateEngine engine,
+        TemplateScript script,
+        String key,
+        boolean secure,
+        Optional<DiskTemplateCache> diskCache) {
+
+        String className = className(key);
+
+        Map<String, byte[]> classes = diskCache
+            .flatMap(cache -> cache.load(key))
+            .orElseGet(() -> {
+                Map<String, byte[]> compiled = compileToBytecode(engine, script, className, secure);
+                diskCache.ifPresent(cache -> cache.store(key, compiled));
+                return compiled;
+            });
+
+        return load(classes, className, script);
+    }
+
+    /**
+     * @return class name to bytecode, for the script class and any closures etc. inside it
+     * @throws TemplateCompileException if it doesn't compile
+     */
+    static Map<String, byte[]> compileToBytecode(TemplateEngine engine, TemplateScript script, String className, boolean secure) {
+
+        LOG.debug("Compiling template script: {}", className);
+        LOG.trace("Template script {}:\n{}", className, script.source());
+
+        CompilerConfiguration config = Sandbox.configure(GroovyExtras.compilerConfiguration(), secure);
+        config.addCompilationCustomizers(new ScriptChunker());
+        engine.configure(config);
+
+        CompilationUnit unit = new CompilationUnit(config, null, GroovyExtras.LOADER);
+
+        unit.addSource(className + ".groovy", script.source());
+
+        try {
+            unit.compile(Phases.CLASS_GENERATION);
+        } catch (MultipleCompilationErrorsException e) {
+            throw new TemplateCompileException(script, e);
+        }
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+
+        for (GroovyClass groovyClass : unit.getClasses()) {
+            classes.put(groovyClass.getName(), groovyClass.getBytes());
+        }
+
+        return classes;
+    }
+
+    /**
+     * @param script what it was compiled from, for error positions
+     */
+    @SuppressWarnings("unchecked")
+    static Template load(Map<String, byte[]> classes, String className, TemplateScript script) {
+        try {
+
+            ClassLoader loader = new BytecodeClassLoader(classes);
+            return new ScriptTemplate((Class<? extends Script>) loader.loadClass(className), script);
+
+        } catch (Exception e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * A stable class name, so cached bytecode can be found again.
+     */
+    static String className(String key) {
+        return "Template_" + key.substring(0, 16);
+    }
+}
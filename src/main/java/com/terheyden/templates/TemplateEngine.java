@@ -0,0 +1,38 @@
+package com.terheyden.templates;
+
+import java.util.Map;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+
+/**
+ * Turns template text into a Groovy script, and says how to compile it.
+ * Pick one per template with a header line, {@code <%@ engine static %>}, or by file extension
+ * (see {@link TemplateEngines#useForExtension(String, String)}).
+ * <p>
+ * Built in: {@link TemplateEngines#DYNAMIC} (the default) and {@link TemplateEngines#STATIC}.
+ * Others are found with {@link java.util.ServiceLoader}, or added with {@link TemplateEngines#register(TemplateEngine)}.
+ * <p>
+ * The script runs as a {@link GroovyExtras} script, with the properties in its binding,
+ * and prints to the {@code out} binding variable, a {@link java.io.PrintWriter}.
+ */
+public interface TemplateEngine {
+
+    /**
+     * What templates call it in their {@code <%@ engine ... %>} header. Also part of the compiled template cache key.
+     */
+    String name();
+
+    /**
+     * @param template the template text, minus its header lines
+     * @param variables declared in the header ({@code <%@ var List<String> names %>}), name to Groovy type, in order
+     * @return Groovy script source that prints the template; {@link TemplateScript#of(String)} if there's no source map
+     */
+    TemplateScript toScript(String template, Map<String, String> variables);
+
+    /**
+     * Add whatever this engine needs to the compiler configuration, e.g. AST transforms.
+     */
+    default void configure(CompilerConfiguration config) {
+        // Nothing by default.
+    }
+}
@@ -0,0 +1,121 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The {@link TemplateEngine}s templates can pick from, and which one each template gets:
+ * <ol>
+ *     <li>the engine named in its header: {@code <%@ engine static %>}</li>
+ *     <li>else, the engine for its file extension, if one was set with {@link #useForExtension(String, String)}</li>
+ *     <li>else, {@link #DYNAMIC}</li>
+ * </ol>
+ * A template that picks {@link #STATIC} but doesn't declare any variables gets {@link #DYNAMIC},
+ * since everything in it would be dynamic anyway.
+ */
+public final class TemplateEngines {
+
+    private static final Logger LOG = getLogger(TemplateEngines.class);
+
+    /**
+     * Plain dynamic Groovy; the default.
+     */
+    public static final TemplateEngine DYNAMIC = new DynamicTemplateEngine();
+
+    /**
+     * {@code @CompileStatic} Groovy, typed by the variables the template declares.
+     */
+    public static final TemplateEngine STATIC = new StaticTemplateEngine();
+
+    private static final Map<String, TemplateEngine> BY_NAME = new ConcurrentHashMap<>();
+
+    /**
+     * Lowercase file extension (no dot) to engine name.
+     */
+    private static final Map<String, String> BY_EXTENSION = new ConcurrentHashMap<>();
+
+    static {
+        register(DYNAMIC);
+        register(STATIC);
+        ServiceLoader.load(TemplateEngine.class).forEach(TemplateEngines::register);
+    }
+
+    private TemplateEngines() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Make an engine available to templates, replacing any other engine with the same name.
+     */
+    public static void register(TemplateEngine engine) {
+        LOG.debug("Registering template engine: {}", engine.name());
+        BY_NAME.put(engine.name(), engine);
+    }
+
+    /**
+     * Make a registered engine unavailable again, along with the extensions that used it.
+     * @throws IllegalArgumentException for the built-in engines, which are always available
+     */
+    public static void unregister(String name) {
+
+        if (name.equals(DYNAMIC.name()) || name.equals(STATIC.name())) {
+            throw new IllegalArgumentException("Can't unregister a built-in template engine: " + name);
+        }
+
+        LOG.debug("Unregistering template engine: {}", name);
+        BY_NAME.remove(name);
+        BY_EXTENSION.values().removeIf(name::equals);
+    }
+
+    /**
+     * Compile template files with this extension (e.g. {@code java}, for {@code Foo.java}) with the named engine,
+     * unless their header says otherwise.
+     */
+    public static void useForExtension(String extension, String engineName) {
+        // Fail now on a typo, not on the first template.
+        get(engineName);
+        BY_EXTENSION.put(extension.toLowerCase(Locale.ROOT), engineName);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there's no engine with that name
+     */
+    public static TemplateEngine get(String name) {
+
+        TemplateEngine engine = BY_NAME.get(name);
+
+        if (engine == null) {
+            throw new IllegalArgumentException("Unknown template engine: " + name + "; known engines: " + BY_NAME.keySet());
+        }
+
+        return engine;
+    }
+
+    /**
+     * @param templateFile the template's file, if it came from one
+     */
+    static TemplateEngine select(Optional<Path> templateFile, TemplateHeader header) {
+
+        TemplateEngine engine = header
+            .engine()
+            .or(() -> templateFile.map(file -> BY_EXTENSION.get(extension(file))))
+            .map(TemplateEngines::get)
+            .orElse(DYNAMIC);
+
+        return engine == STATIC && header.variables().isEmpty() ? DYNAMIC : engine;
+    }
+
+    private static String extension(Path file) {
+        String fileName = file.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
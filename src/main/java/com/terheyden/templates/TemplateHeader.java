@@ -0,0 +1,73 @@
+package com.terheyden.templates;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Directive lines at the very top of a template, which say how to compile it rather than what to print:
+ * <pre>
+ * &lt;%@ engine static %&gt;
+ * &lt;%@ var List&lt;Map&lt;String, Object&gt;&gt; items %&gt;
+ * </pre>
+ * Each directive is on its own line. The lines are removed from the output.
+ * <p>
+ * {@code <%@ var Type name %>} only declares the variable's type, for the static engine; it's unrelated to
+ * the {@code var(name, description, default)} function, which reads a variable at render time and gives it
+ * a default. A template can use both for the same variable.
+ *
+ * @param engine the {@link TemplateEngine#name()} asked for, if any
+ * @param variables declared variables, name to Groovy type, in order
+ * @param body the rest of the template
+ * @param bodyLine the template line the body starts at
+ */
+record TemplateHeader(Optional<String> engine, Map<String, String> variables, String body, int bodyLine) {
+
+    /**
+     * Only these directives; anything else starting with {@code <%@} is template code (e.g. {@code <%@Field ...%>}).
+     */
+    private static final Pattern DIRECTIVE = Pattern.compile("<%@[ \\t]+(engine|var)[ \\t]+(.*?)[ \\t]*%>[ \\t]*(\\r\\n|\\r|\\n|$)");
+
+    /**
+     * A type, then a name, like a Groovy declaration: {@code Map<String, Object> user}.
+     */
+    private static final Pattern DECLARATION = Pattern.compile("(.+?)\\s+([A-Za-z_$][\\w$]*)");
+
+    TemplateHeader {
+        variables = Collections.unmodifiableMap(new LinkedHashMap<>(variables));
+    }
+
+    static TemplateHeader parse(String template) {
+
+        Optional<String> engine = Optional.empty();
+        Map<String, String> variables = new LinkedHashMap<>();
+        Matcher matcher = DIRECTIVE.matcher(template);
+        int index = 0;
+        int bodyLine = 1;
+
+        while (matcher.region(index, template.length()).lookingAt()) {
+
+            String value = matcher.group(2);
+
+            if (matcher.group(1).equals("engine")) {
+                engine = Optional.of(value);
+            } else {
+                Matcher declaration = DECLARATION.matcher(value);
+
+                if (!declaration.matches()) {
+                    throw new IllegalArgumentException("Expected a type and a name, e.g. <%@ var String name %>: " + value);
+                }
+
+                variables.put(declaration.group(2), declaration.group(1));
+            }
+
+            index = matcher.end();
+            bodyLine++;
+        }
+
+        return new TemplateHeader(engine, variables, template.substring(index), bodyLine);
+    }
+}
@@ -0,0 +1,18 @@
+package com.terheyden.templates;
+
+/**
+ * Thrown when a template breaks one of its {@link RenderLimits}:
+ * it ran too long, wrote too much, or used something a secure template can't.
+ */
+public class TemplateLimitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TemplateLimitException(String message) {
+        super(message);
+    }
+
+    public TemplateLimitException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
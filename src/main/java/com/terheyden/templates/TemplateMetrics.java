@@ -0,0 +1,29 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+
+/**
+ * Where the time went while generating one template file.
+ * Times are in nanoseconds.
+ *
+ * @param template the template file, relative to the template dir
+ * @param copied had no template syntax, so was copied as-is instead of rendered
+ * @param cacheHit the compiled template was already in the in-memory cache
+ * @param compileNanos translating and compiling the template, or fetching it from the cache
+ * @param evalNanos running the template, plus reading and hashing files
+ * @param writeNanos writing the output, including encoding it and closing the file
+ * @param outputBytes the size of the output
+ */
+public record TemplateMetrics(
+    Path template,
+    boolean copied,
+    boolean cacheHit,
+    long compileNanos,
+    long evalNanos,
+    long writeNanos,
+    long outputBytes) {
+
+    public long totalNanos() {
+        return compileNanos + evalNanos + writeNanos;
+    }
+}
@@ -0,0 +1,448 @@
+package com.terheyden.templates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Translates template text into the source of a Groovy script that prints it.
+ * {@link groovy.text.SimpleTemplateEngine}'s syntax and output, plus a few extras (see {@link Lexer}),
+ * but we own the generated script, so we can compile it ourselves, cache the bytecode, etc.
+ * <p>
+ * Literal text and {@code ${...}} expressions become {@code out.print("""...""")} GStrings,
+ * {@code <%= ... %>} becomes a {@code ${...}} expression, and {@code <% ... %>} code is pasted in as-is.
+ * Long runs of text are split across several prints (see {@link #MAX_PRINT_LENGTH}),
+ * so {@link ScriptChunker} can spread them over several methods.
+ */
+final class TemplateParser {
+
+    private static final String START_PRINT = "out.print(\"\"\"";
+    private static final String END_PRINT = "\"\"\");";
+
+    /**
+     * Start a new print at the next line break once the current one is this long.
+     * Keeps each GString's text well under the class file's 64KB limit on a string constant.
+     */
+    private static final int MAX_PRINT_LENGTH = 4096;
+
+    /**
+     * Start a new print at the next space or tab once the current one is this long, for very long lines.
+     * At most three UTF-8 bytes per char, so still under the 64KB limit.
+     */
+    private static final int MAX_LINE_PRINT_LENGTH = 16_384;
+
+    private TemplateParser() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * Would this template file render to exactly itself? That's the case if it has none of our syntax:
+     * no {@code $}, no {@code <%}, and no backslash at the end of a line (a Groovy line continuation).
+     * They're all ASCII, and ASCII bytes never show up inside multibyte UTF-8 characters,
+     * so we scan the raw bytes without decoding them into a string.
+     * <p>
+     * Binary files (any NUL byte) are always literal, whatever bytes they have; templates are read as UTF-8 text,
+     * which would mangle them. Text that isn't valid UTF-8 (e.g. Windows-1252) is literal if it has no syntax,
+     * and an error if it does, since it can't be rendered as-is.
+     * <p>
+     * Conservative: a few literal files (e.g. with a lone {@code $}) are still rendered, which is harmless.
+     * @throws IllegalArgumentException if the file has template syntax but isn't UTF-8
+     */
+    static boolean isLiteral(Path templateFile) {
+        try (InputStream in = Files.newInputStream(templateFile)) {
+
+            CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder();
+            ByteBuffer bytes = ByteBuffer.allocate(8192);
+            CharBuffer chars = CharBuffer.allocate(8192);
+            boolean syntax = false;
+            boolean utf8Error = false;
+            int prev = -1;
+            int read;
+
+            while ((read = in.read(bytes.array(), bytes.position(), bytes.remaining())) != -1) {
+
+                int end = bytes.position() + read;
+
+                for (int i = bytes.position(); i < end; i++) {
+
+                    byte b = bytes.get(i);
+
+                    if (b == 0) {
+                        return true;
+                    }
+
+                    syntax = syntax
+                        || b == '$'
+                        || (b == '%' && prev == '<')
+                        || ((b == '\n' || b == '\r') && prev == '\\');
+                    prev = b;
+                }
+
+                // Keep any partial character at the end for the next read.
+                bytes.position(end).flip();
+
+                if (!utf8Error && utf8.decode(bytes, chars.clear(), false).isError()) {
+                    utf8Error = true;
+                }
+
+                // After an error, the rest is only scanned for NULs and syntax.
+                if (utf8Error) {
+                    bytes.clear();
+                } else {
+                    bytes.compact();
+                }
+            }
+
+            utf8Error = utf8Error || utf8.decode(bytes.flip(), chars.clear(), true).isError();
+            // A trailing backslash would escape the closing quotes.
+            syntax = syntax || prev == '\\';
+
+            if (utf8Error && syntax) {
+                throw new IllegalArgumentException("Template isn't UTF-8; save it as UTF-8 to render it: " + templateFile);
+            }
+
+            return !syntax;
+
+        } catch (IOException e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * @param template the template text, minus its header
+     * @return Groovy script source that prints the template, and where its parts came from
+     */
+    static TemplateScript parse(String template) {
+        return new Lexer(template).parse();
+    }
+
+    /**
+     * One pass over the template, writing the script and its {@link SourceMap} as it goes.
+     * On top of the {@link groovy.text.SimpleTemplateEngine} syntax:
+     * <ul>
+     *     <li>Backslashes are literal, in code too, except at the end of a line, where they join it to the next.</li>
+     *     <li>{@code <%-- ... --%>} comments are dropped.</li>
+     *     <li>{@code -%>} drops the line break right after it; {@code <%-} drops the spaces and tabs before it
+     *     on its line. So a line with nothing but a code section prints nothing. A {@code -%>} right after
+     *     another {@code -} is just {@code %>}, so {@code <% i--%>} is {@code i--}.</li>
+     * </ul>
+     */
+    private static final class Lexer {
+
+        private final String template;
+        private final int length;
+        private final StringBuilder script;
+
+        private int index;
+
+        /**
+         * Where the current print's text starts in the script.
+         */
+        private int printStart;
+
+        /**
+         * Where the current line's text starts in the script, if it's only spaces and tabs so far; else -1.
+         */
+        private int blankStart;
+
+        private int[] scriptOffsets = new int[64];
+        private int[] templateOffsets = new int[64];
+        private int mapped;
+
+        private Lexer(String template) {
+            this.template = template;
+            this.length = template.length();
+            this.script = new StringBuilder(length + 64);
+        }
+
+        private TemplateScript parse() {
+
+            script.append(START_PRINT);
+            printStart = script.length();
+            blankStart = script.length();
+
+            while (index < length) {
+
+                char c = template.charAt(index);
+
+                if (c == '<' && peek(1) == '%') {
+                    if (peek(2) == '-' && peek(3) == '-') {
+                        comment();
+                    } else if (peek(2) == '=') {
+                        expression();
+                    } else {
+                        section();
+                    }
+                } else if (c == '$' && peek(1) == '{') {
+                    gstring();
+                } else if (c == '\r' || c == '\n') {
+                    newline();
+                } else {
+                    text(c);
+                }
+            }
+
+            script.append(END_PRINT).append('\n');
+
+            return new TemplateScript(
+                script.toString(),
+                new SourceMap(template, scriptOffsets, templateOffsets, mapped));
+        }
+
+        private void text(char c) {
+
+            if (c == '"') {
+                map();
+                script.append('\\');
+            }
+
+            copy();
+
+            if (c != ' ' && c != '\t') {
+                blankStart = -1;
+
+            } else if (script.length() - printStart > MAX_LINE_PRINT_LENGTH) {
+                // Backslashes before a space are always doubled, so this never splits an escape.
+                script.append(END_PRINT).append(START_PRINT);
+                printStart = script.length();
+            }
+        }
+
+        /**
+         * Raw newlines are normalized, Windows-style included.
+         */
+        private void newline() {
+
+            map();
+
+            if (template.charAt(index++) == '\r' && peek(0) == '\n') {
+                index++;
+            }
+
+            script.append('\n');
+
+            if (script.length() - printStart > MAX_PRINT_LENGTH) {
+                script.append(END_PRINT).append('\n').append(START_PRINT);
+                printStart = script.length();
+            }
+
+            blankStart = script.length();
+        }
+
+        /**
+         * A {@code ${...}} GString expression; newlines are dropped.
+         */
+        private void gstring() {
+
+            copy();
+            copy();
+
+            while (index < length) {
+
+                char c = template.charAt(index);
+
+                if (c == '\n' || c == '\r') {
+                    index++;
+                    continue;
+                }
+
+                copy();
+
+                if (c == '}') {
+                    break;
+                }
+            }
+
+            blankStart = -1;
+        }
+
+        /**
+         * A {@code <%= ... %>} expression, converted to a {@code ${...}} expression; newlines are dropped.
+         */
+        private void expression() {
+
+            map();
+            script.append("${");
+            index += 3;
+            boolean trimNewline = false;
+
+            while (index < length) {
+
+                char c = template.charAt(index);
+
+                if (isTagEnd()) {
+                    trimNewline = endTag();
+                    break;
+                }
+
+                if (c == '%') {
+                    copy();
+
+                    if (index >= length) {
+                        break;
+                    }
+
+                    c = template.charAt(index);
+                }
+
+                if (c == '\n' || c == '\r') {
+                    index++;
+                } else {
+                    copy();
+                }
+            }
+
+            script.append('}');
+            blankStart = trimNewline ? script.length() : -1;
+        }
+
+        /**
+         * A {@code <% ... %>} code section, pasted in as-is. Newlines are kept, since they separate statements.
+         */
+        private void section() {
+
+            boolean trimBlanks = peek(2) == '-';
+
+            if (trimBlanks && blankStart >= 0) {
+                unprint(blankStart);
+            }
+
+            map();
+            script.append(END_PRINT);
+            index += trimBlanks ? 3 : 2;
+            boolean trimNewline = false;
+
+            while (index < length) {
+
+                if (isTagEnd()) {
+                    trimNewline = endTag();
+                    break;
+                }
+
+                if (template.charAt(index) == '%') {
+                    copy();
+
+                    if (index >= length) {
+                        break;
+                    }
+                }
+
+                copy();
+            }
+
+            script.append(";\n").append(START_PRINT);
+            printStart = script.length();
+            blankStart = trimNewline ? script.length() : -1;
+        }
+
+        /**
+         * A {@code <%-- ... --%>} comment, dropped.
+         */
+        private void comment() {
+            int end = template.indexOf("--%>", index + 4);
+            index = end < 0 ? length : end + 4;
+        }
+
+        private boolean isTagEnd() {
+            char c = template.charAt(index);
+            return (c == '%' && peek(1) == '>')
+                || (c == '-' && peek(1) == '%' && peek(2) == '>' && template.charAt(index - 1) != '-');
+        }
+
+        /**
+         * Skip the {@code %>} or {@code -%>}, and the line break after a {@code -%>}.
+         * @return true if a line break was dropped
+         */
+        private boolean endTag() {
+
+            if (template.charAt(index) == '%') {
+                index += 2;
+                return false;
+            }
+
+            index += 3;
+
+            if (peek(0) == '\r') {
+                index += peek(1) == '\n' ? 2 : 1;
+                return true;
+            }
+
+            if (peek(0) == '\n') {
+                index++;
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Copy the next char to the script. A backslash is doubled so Groovy prints it as-is,
+         * unless it's the last thing on the line, where Groovy joins the line to the next.
+         */
+        private void copy() {
+
+            char c = template.charAt(index);
+            map();
+            script.append(c);
+            index++;
+
+            if (c == '\\' && !isLineEnd(index)) {
+                script.append('\\');
+            }
+        }
+
+        private boolean isLineEnd(int at) {
+
+            if (at >= length) {
+                return true;
+            }
+
+            char c = template.charAt(at);
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+
+        private char peek(int ahead) {
+            return index + ahead < length ? template.charAt(index + ahead) : '\0';
+        }
+
+        /**
+         * Note that the next script char comes from the current template char,
+         * unless that already follows from the last entry.
+         */
+        private void map() {
+
+            int scriptOffset = script.length();
+
+            if (mapped > 0 && scriptOffset - scriptOffsets[mapped - 1] == index - templateOffsets[mapped - 1]) {
+                return;
+            }
+
+            if (mapped == scriptOffsets.length) {
+                scriptOffsets = Arrays.copyOf(scriptOffsets, mapped * 2);
+                templateOffsets = Arrays.copyOf(templateOffsets, mapped * 2);
+            }
+
+            scriptOffsets[mapped] = scriptOffset;
+            templateOffsets[mapped] = index;
+            mapped++;
+        }
+
+        /**
+         * Drop the script from this offset on.
+         */
+        private void unprint(int scriptOffset) {
+
+            script.setLength(scriptOffset);
+
+            while (mapped > 0 && scriptOffsets[mapped - 1] >= scriptOffset) {
+                mapped--;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.terheyden.templates;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for each generated template file; the same data as {@link TemplateMetrics}.
+ * Record with e.g. {@code java -XX:StartFlightRecording=filename=run.jfr -jar codepuncher.jar ...}.
+ * Costs next to nothing when no recording is running.
+ */
+@Name("com.terheyden.templates.TemplateRender")
+@Label("Template Render")
+@Category("Codepuncher")
+@Description("One template file generated")
+final class TemplateRenderEvent extends Event {
+
+    @Label("Template")
+    String template;
+
+    @Label("Copied As-Is")
+    boolean copied;
+
+    @Label("Cache Hit")
+    boolean cacheHit;
+
+    @Label("Compile Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long compileTime;
+
+    @Label("Eval Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long evalTime;
+
+    @Label("Write Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long writeTime;
+
+    @Label("Output Size")
+    @DataAmount(DataAmount.BYTES)
+    long outputBytes;
+}
@@ -0,0 +1,72 @@
+package com.terheyden.templates;
+
+import java.util.Optional;
+
+/**
+ * A template's Groovy script source (see {@link TemplateEngine#toScript}), and where its parts came from
+ * in the template, if the engine knows; so compile and render errors report template lines, not script lines.
+ */
+public final class TemplateScript {
+
+    private final String source;
+    private final SourceMap sourceMap;
+    private final String templateName;
+
+    TemplateScript(String source, SourceMap sourceMap) {
+        this(source, sourceMap, "template");
+    }
+
+    private TemplateScript(String source, SourceMap sourceMap, String templateName) {
+        this.source = source;
+        this.sourceMap = sourceMap;
+        this.templateName = templateName;
+    }
+
+    /**
+     * A script with no source map; its errors report script lines.
+     */
+    public static TemplateScript of(String source) {
+        return new TemplateScript(source, SourceMap.NONE);
+    }
+
+    public String source() {
+        return source;
+    }
+
+    /**
+     * What errors call the template, e.g. its file name.
+     */
+    String templateName() {
+        return templateName;
+    }
+
+    /**
+     * Put code in front of the script. No line breaks, so the script's line numbers don't change.
+     */
+    TemplateScript prepend(String code) {
+        return new TemplateScript(code + source, sourceMap.shift(code.length(), 0), templateName);
+    }
+
+    /**
+     * @param templateName what errors call the template, e.g. its file name
+     * @param bodyLine the template line the script's text starts at, i.e. just past its header
+     */
+    TemplateScript from(String templateName, int bodyLine) {
+        return new TemplateScript(source, sourceMap.shift(0, bodyLine - 1), templateName);
+    }
+
+    /**
+     * @param line 1-based script line, e.g. from a compile error
+     * @param column 1-based script column
+     */
+    Optional<SourceMap.Position> position(int line, int column) {
+        return sourceMap.position(source, line, column);
+    }
+
+    /**
+     * @param line 1-based script line, e.g. from a stack trace
+     */
+    Optional<SourceMap.Position> position(int line) {
+        return sourceMap.position(source, line);
+    }
+}
@@ -0,0 +1,30 @@
+package com.terheyden.templates;
+
+import javax.annotation.Nullable;
+
+/**
+ * A variable that one or more templates use, found by {@link VariableDiscovery}.
+ *
+ * @param name the variable's name; for {@code user.name}, that's {@code user}
+ * @param usages how many times it's referenced
+ * @param description from a {@code var(name, description, default)} call, if there is one
+ * @param defaultValue from a {@code var(name, description, default)} call, if there is one
+ */
+public record TemplateVariable(
+    String name,
+    int usages,
+    @Nullable String description,
+    @Nullable Object defaultValue) {
+
+    /**
+     * Combine what two templates (or two usages) say about the same variable.
+     * Usages are added up; the first description and default found win.
+     */
+    TemplateVariable merge(TemplateVariable other) {
+        return new TemplateVariable(
+            name,
+            usages + other.usages,
+            description != null ? description : other.description,
+            defaultValue != null ? defaultValue : other.defaultValue);
+    }
+}
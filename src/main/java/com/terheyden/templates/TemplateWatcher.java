@@ -0,0 +1,272 @@
+package com.terheyden.templates;
+
+import java.io.Closeable;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Watch a template dir and keep the output dir up to date as templates change.
+ * The JVM and the compiled template cache stay warm between changes, so regenerating is quick.
+ * <p>
+ * Bursts of events (e.g. an editor's save, or a {@code git checkout}) are debounced into one batch.
+ * Only changed templates (and templates that include changed partials) are regenerated;
+ * outputs of deleted templates are deleted.
+ * If the properties file changes, it's reloaded and everything is regenerated.
+ */
+public final class TemplateWatcher implements Closeable {
+
+    private static final Logger LOG = getLogger(TemplateWatcher.class);
+
+    /**
+     * How long to wait for things to settle down before regenerating.
+     */
+    public static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(200);
+
+    private final Path sourceDir;
+    private final Path saveDir;
+    private final Optional<Path> propsFile;
+    private final Supplier<Map<String, Object>> propsLoader;
+    private final GenerateOptions options;
+    private final Duration debounce;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private final IncludeGraph includes = new IncludeGraph();
+
+    private Map<String, Object> props;
+
+    /**
+     * @param sourceDir the template dir to watch
+     * @param saveDir where generated files go
+     * @param propsFile the properties file, also watched, if there is one
+     * @param propsLoader (re)loads the properties
+     */
+    public TemplateWatcher(
+        Path sourceDir,
+        Path saveDir,
+        Optional<Path> propsFile,
+        Supplier<Map<String, Object>> propsLoader,
+        GenerateOptions options,
+        Duration debounce) {
+
+        if (!Files.isDirectory(sourceDir)) {
+            throw new IllegalArgumentException("Can only watch a directory of templates: " + sourceDir);
+        }
+
+        this.sourceDir = sourceDir.toAbsolutePath().normalize();
+        this.saveDir = saveDir.toAbsolutePath().normalize();
+        this.propsFile = propsFile.map(file -> file.toAbsolutePath().normalize());
+        this.propsLoader = propsLoader;
+        this.options = options;
+        this.debounce = debounce;
+        this.props = propsLoader.get();
+
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        } catch (Exception e) {
+            throw Exceptions.<RuntimeException, RuntimeException>throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Generate everything, then keep regenerating as things change.
+     * Blocks until {@link #close()} is called or the thread is interrupted.
+     */
+    public void run() {
+
+        registerTree(sourceDir);
+        this.propsFile.ifPresent(file -> register(file.getParent()));
+        regenerateEverything();
+        LOG.info("Watching {} for changes...", sourceDir);
+
+        try {
+
+            while (true) {
+                Batch batch = nextBatch();
+                apply(batch);
+            }
+
+        } catch (ClosedWatchServiceException e) {
+            LOG.debug("Watch service closed, stopping.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.debug("Interrupted, stopping.");
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (Exception e) {
+            LOG.debug("Failed to close watch service.", e);
+        }
+    }
+
+    /**
+     * Wait for something to happen, then keep collecting events until it's quiet for the debounce period.
+     */
+    private Batch nextBatch() throws InterruptedException {
+
+        Batch batch = new Batch();
+        WatchKey key = watchService.take();
+
+        while (key != null) {
+            collect(key, batch);
+            key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        return batch;
+    }
+
+    private void collect(WatchKey key, Batch batch) {
+
+        Path dir = watchedDirs.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                // We missed events, so we don't know what changed.
+                batch.everything = true;
+                continue;
+            }
+
+            Path changed = dir.resolve((Path) event.context());
+
+            if (propsFile.filter(changed::equals).isPresent()) {
+                batch.propsChanged = true;
+            } else if (changed.startsWith(sourceDir)) {
+                batch.changed.add(changed);
+            }
+        }
+
+        if (!key.reset()) {
+            // The dir is gone.
+            watchedDirs.remove(key);
+        }
+    }
+
+    private void apply(Batch batch) {
+        try {
+
+            if (batch.propsChanged) {
+                LOG.info("Properties changed, reloading and regenerating everything.");
+                props = propsLoader.get();
+                regenerateEverything();
+                return;
+            }
+
+            if (batch.everything) {
+                LOG.info("Lost track of changes, regenerating everything.");
+                regenerateEverything();
+                return;
+            }
+
+            Set<Path> toGenerate = new TreeSet<>();
+
+            for (Path changed : batch.changed) {
+
+                Path relative = sourceDir.relativize(changed);
+
+                if (Files.isDirectory(changed)) {
+                    // New (or moved-in) dir; watch it and generate whatever's in it.
+                    registerTree(changed);
+                    FileUtils2.findFiles(changed).map(sourceDir::relativize).forEach(toGenerate::add);
+                } else if (Files.isRegularFile(changed)) {
+                    toGenerate.add(relative);
+                } else {
+                    deleteOutput(relative);
+                    includes.remove(relative);
+                }
+
+                // If it's a partial, everything that includes it.
+                toGenerate.addAll(includes.dependents(relative));
+            }
+
+            if (!toGenerate.isEmpty()) {
+                LOG.info("Regenerating: {}", toGenerate);
+                Templates.generateFiles(sourceDir, toGenerate, saveDir, props, options, includes);
+            }
+
+        } catch (Exception e) {
+            // Keep watching; the user will probably fix it and save again.
+            LOG.error("Generation failed.", e);
+        }
+    }
+
+    private void regenerateEverything() {
+        try {
+            Templates.generate(sourceDir, saveDir, props, options, includes);
+        } catch (Exception e) {
+            LOG.error("Generation failed.", e);
+        }
+    }
+
+    /**
+     * The template (or template dir) was deleted, so delete what we generated from it.
+     */
+    private void deleteOutput(Path relative) {
+        try {
+
+            Path output = saveDir.resolve(relative);
+
+            if (Files.isDirectory(output)) {
+                LOG.info("Template dir deleted, deleting: {}", output);
+                FileUtils2.deleteEntireDir(output);
+            } else if (Files.deleteIfExists(output)) {
+                LOG.info("Template deleted, deleting: {}", output);
+            }
+
+        } catch (Exception e) {
+            LOG.error("Could not delete output for: {}", relative, e);
+        }
+    }
+
+    private void registerTree(Path dir) {
+        FileUtils2.findDirs(dir).forEach(this::register);
+    }
+
+    private void register(Path dir) {
+        try {
+
+            WatchKey key = dir.register(
+                watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+            watchedDirs.put(key, dir);
+
+        } catch (Exception e) {
+            Exceptions.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Everything that happened during one burst of events.
+     */
+    private static final class Batch {
+
+        private final Set<Path> changed = new TreeSet<>();
+        private boolean propsChanged;
+        private boolean everything;
+    }
+}
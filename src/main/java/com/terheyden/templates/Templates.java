@@ -1,11 +1,32 @@
 package com.terheyden.templates;
 
+import java.io.IOException;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 
+import com.terheyden.templates.GenerationManifest.Entry;
+
+import groovy.text.Template;
+
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -16,43 +37,446 @@ public final class Templates {
 
     private static final Logger LOG = getLogger(Templates.class);
 
+    /**
+     * How many tasks can wait for each worker thread in a {@link #boundedExecutor(int, String)}.
+     */
+    private static final int QUEUED_PER_THREAD = 4;
+
     private Templates() {
         // Private since this class shouldn't be instantiated.
     }
 
     public static void generate(Path sourceFileOrDir, Path saveFileOrDir, Map<String, Object> props) {
+        generate(sourceFileOrDir, saveFileOrDir, props, GenerateOptions.defaults());
+    }
+
+    /**
+     * Generate a single template file, or a whole directory of template files.
+     * <p>
+     * The directory can be a zip or jar file ({@code templates.jar}), or a dir in one ({@code templates.jar!/codegen}).
+     * For a directory, the save dir can be a zip or jar file too ({@code out.zip}); it's only replaced
+     * if every file generated. Incremental runs need a real save dir. Jars written by
+     * {@link #precompile} are generated from their bytecode, without compiling the templates again.
+     * @throws GenerationException if any of the files failed to generate
+     */
+    public static void generate(
+        Path sourceFileOrDir,
+        Path saveFileOrDir,
+        Map<String, Object> props,
+        GenerateOptions options) {
+
+        generate(sourceFileOrDir, saveFileOrDir, props, options, new IncludeGraph());
+    }
+
+    /**
+     * Compile every template in the dir into a jar, to generate from later without compiling them again
+     * (e.g. on build agents); see {@link #generate(Path, Path, Map, GenerateOptions)}.
+     * Uses the options' threads, walk, and {@code secure} limit, which generating from the jar must match.
+     * @return the number of templates compiled
+     * @throws GenerationException if any of the templates didn't compile
+     */
+    public static int precompile(Path templateDir, Path jarFile, GenerateOptions options) {
+        return PrecompiledTemplates.compile(templateDir, jarFile, options);
+    }
+
+    /**
+     * @param includes updated with the partials each template includes
+     */
+    static void generate(
+        Path sourceFileOrDir,
+        Path saveFileOrDir,
+        Map<String, Object> props,
+        GenerateOptions options,
+        IncludeGraph includes) {
+
+        Optional<Path> archiveDir = Archives.openDir(sourceFileOrDir);
+
+        if (archiveDir.isPresent()) {
+            try (FileSystem archive = archiveDir.get().getFileSystem();
+                PrecompiledTemplates precompiled = PrecompiledTemplates.open(archive, options.limits().secure())) {
 
-        if (Files.isRegularFile(sourceFileOrDir)) {
-            generateSingleFile(sourceFileOrDir, saveFileOrDir, props);
+                try {
+                    generateDirectoryFiles(archiveDir.get(), saveFileOrDir, props, precompiled.skipIndex(options), includes);
+                } finally {
+                    Partials.forget(archive);
+                }
+
+            } catch (IOException e) {
+                Exceptions.throwUnchecked(e);
+            }
+        } else if (Files.isRegularFile(sourceFileOrDir)) {
+            generateSingleFile(sourceFileOrDir, saveFileOrDir, props, options, includes);
         } else if (Files.isDirectory(sourceFileOrDir)) {
-            generateDirectoryFiles(sourceFileOrDir, saveFileOrDir, props);
+            generateDirectoryFiles(sourceFileOrDir, saveFileOrDir, props, options, includes);
         } else {
             throw new IllegalArgumentException("Source does not exist: " + sourceFileOrDir.toString());
         }
     }
 
-    private static void generateSingleFile(Path sourceFile, Path saveFile, Map<String, Object> props) {
-        generateOutputFile(sourceFile, saveFile, props);
+    private static void generateSingleFile(
+        Path sourceFile,
+        Path saveFile,
+        Map<String, Object> props,
+        GenerateOptions options,
+        IncludeGraph includes) {
+
+        Path saveDir = saveFile.toAbsolutePath().getParent();
+        Run run = Run.start(saveDir, props, options, includes);
+        boolean complete = false;
+
+        try {
+            generateOutputFile(run, new RelativeFile(sourceFile.toAbsolutePath()), saveFile, saveFile.getFileName());
+            complete = true;
+        } finally {
+            run.finish(complete);
+        }
+    }
+
+    /**
+     * Partials are only included by other templates, not generated by themselves.
+     */
+    private static void generateDirectoryFiles(
+        Path sourceDir,
+        Path saveDir,
+        Map<String, Object> props,
+        GenerateOptions options,
+        IncludeGraph includes) {
+
+        generateFiles(saveDir, props, options, includes, (generator, failures) -> FileUtils2.walkFiles(
+            sourceDir,
+            options.walk(),
+            found -> {
+                if (!Partials.isPartial(found.getRelativeFile())) {
+                    generator.accept(found);
+                }
+            },
+            (file, e) -> {
+                LOG.warn("Could not read: {}: {}", file, e.toString());
+                failures.put(sourceDir.relativize(file), e);
+                options.listener().failed(sourceDir.relativize(file), e);
+            }));
+    }
+
+    /**
+     * Generate some of the files in a source dir, e.g. just the ones that changed.
+     * @param sourceFiles files in the source dir, relative to it
+     */
+    static void generateFiles(
+        Path sourceDir,
+        Collection<Path> sourceFiles,
+        Path saveDir,
+        Map<String, Object> props,
+        GenerateOptions options,
+        IncludeGraph includes) {
+
+        PathFilter filter = new PathFilter(options.walk());
+
+        generateFiles(saveDir, props, options, includes, (generator, failures) -> sourceFiles
+            .stream()
+            .filter(sourceFile -> !Partials.isPartial(sourceFile) && filter.acceptsPath(sourceFile))
+            .map(sourceFile -> new RelativeFile(sourceDir, sourceDir.resolve(sourceFile)))
+            .forEach(generator));
+    }
+
+    /**
+     * Every file is independent, so we generate them in parallel, each one as soon as it's found,
+     * rather than finding them all first. Failures don't stop the run; they're logged as they happen
+     * and reported together at the end.
+     * @param files hands each file to generate to the generator, and adds any failures to find them
+     */
+    private static void generateFiles(
+        Path saveDir,
+        Map<String, Object> props,
+        GenerateOptions options,
+        IncludeGraph includes,
+        BiConsumer<Consumer<RelativeFile>, Map<Path, Throwable>> files) {
+
+        Map<Path, Throwable> failures = new ConcurrentHashMap<>();
+        Run run = Run.start(saveDir, props, options, includes);
+        AtomicInteger fileCount = new AtomicInteger();
+        ThreadPoolExecutor executor = boundedExecutor(options.threads(), "generate");
+
+        boolean complete = false;
+
+        try {
+
+            try {
+                files.accept(
+                    found -> {
+                        fileCount.incrementAndGet();
+                        executor.execute(() -> generateOutputFile(run, found, saveDir, failures));
+                    },
+                    failures);
+            } finally {
+                awaitAll(executor);
+            }
+
+            complete = failures.isEmpty();
+
+        } finally {
+            // Even if finding the files threw, so an output archive isn't left open (or replaced).
+            run.finish(complete);
+        }
+
+        LOG.debug("Generated {} files using {} threads", fileCount, options.threads());
+
+        if (!failures.isEmpty()) {
+            throw new GenerationException(failures, fileCount.get());
+        }
+    }
+
+    /**
+     * A fixed-size pool with a small queue. When the queue is full, the submitting thread runs the task itself,
+     * which keeps it from racing ahead (e.g. of a dir walk or a records file), so memory stays bounded.
+     */
+    static ThreadPoolExecutor boundedExecutor(int threads, String threadPrefix) {
+        return new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * QUEUED_PER_THREAD),
+            namedThreads(threadPrefix),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Stop taking tasks, and block until the submitted ones are done.
+     */
+    static void awaitAll(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.debug("Still working...");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            Exceptions.throwUnchecked(e);
+        }
+    }
+
+    static ThreadFactory namedThreads(String prefix) {
+
+        AtomicInteger count = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
-    private static void generateDirectoryFiles(Path sourceDir, Path saveDir, Map<String, Object> props) {
+    private static void generateOutputFile(
+        Run run,
+        RelativeFile found,
+        Path saveDir,
+        Map<Path, Throwable> failures) {
 
-        FileUtils2
-            .findAllFiles(sourceDir)
-            .forEach(found -> generateOutputFile(found.getAbsoluteFile(), found.calculateTargetFile(saveDir), props));
+        try {
+            generateOutputFile(run, found, found.calculateTargetFile(saveDir), found.getRelativeFile());
+        } catch (Exception e) {
+            // Say so right away; on a big tree the summary at the end could be a while.
+            LOG.warn("Failed to generate: {}: {}", found.getRelativeFile(), e.toString());
+            LOG.debug("Failed to generate: {}", found.getAbsoluteFile(), e);
+            failures.put(found.getRelativeFile(), e);
+            run.listener.failed(found.getRelativeFile(), e);
+        }
     }
 
-    private static void generateOutputFile(Path sourceFile, Path outFile, Map<String, Object> props) {
+    /**
+     * @param relativeOutFile the output file relative to the save dir, for the manifest
+     */
+    private static void generateOutputFile(Run run, RelativeFile source, Path outFile, Path relativeOutFile) {
         try {
+            Path sourceFile = source.getAbsoluteFile();
+            RenderTimer timer = new RenderTimer(source.getRelativeFile());
             LOG.debug("Injecting and saving template file {} ==> {}", sourceFile, outFile);
-            // Make sure the save dir exists.
-            Files.createDirectories(outFile.toAbsolutePath().getParent());
+
+            if (TemplateParser.isLiteral(sourceFile)) {
+                LOG.debug("No template syntax, copying as-is: {}", sourceFile);
+                run.includes.remove(source.getRelativeFile());
+                copyOutputFile(run, timer, source, outFile, relativeOutFile);
+                return;
+            }
+
             String templateStr = FileUtils2.readFile(sourceFile);
-            String generatedStr = GroovyTemplater.generate(templateStr, props);
-            FileUtils2.writeFile(outFile, generatedStr);
+
+            if (run.manifest.isEmpty()) {
+                Template compiled = timer.compile(templateStr, run.limits.secure());
+                render(run, source, () -> {
+                    run.outputs.write(
+                        outFile,
+                        writer -> Sandbox.render(compiled, run.props, timer.wrap(writer), run.limits));
+                    return outFile;
+                });
+                timer.finish(run.listener);
+                return;
+            }
+
+            GenerationManifest manifest = run.manifest.get();
+            String templateHash = Hashing.sha256(templateStr);
+            Optional<Entry> previous = manifest.get(relativeOutFile);
+
+            if (isUpToDate(previous, templateHash, run.propsHash, outFile)
+                && includesUnchanged(previous.get(), source.getSourceDir())) {
+
+                LOG.debug("Inputs unchanged, skipping: {}", sourceFile);
+                run.includes.record(
+                    source.getRelativeFile(),
+                    previous.get().includes().keySet().stream().map(Path::of).collect(Collectors.toSet()));
+                run.listener.skipped(source.getRelativeFile());
+                return;
+            }
+
+            // Don't trust the old entry if this fails.
+            manifest.remove(relativeOutFile);
+
+            Template compiled = timer.compile(templateStr, run.limits.secure());
+            String outputHash = render(run, source, () -> run.outputs.writeIfChanged(
+                outFile,
+                writer -> Sandbox.render(compiled, run.props, timer.wrap(writer), run.limits)));
+
+            Set<Path> included = run.includes.includedBy(source.getRelativeFile());
+            manifest.put(
+                relativeOutFile,
+                new Entry(templateHash, run.propsHash, outputHash, hashIncludes(included, source.getSourceDir())));
+            timer.finish(run.listener);
 
         } catch (Exception e) {
             Exceptions.throwUnchecked(e);
         }
     }
+
+    /**
+     * Render, letting the template include partials, and remember which ones it included.
+     */
+    private static <T> T render(Run run, RelativeFile source, Supplier<T> render) {
+        return Partials.render(source.getSourceDir(), source.getRelativeFile(), run.includes, run.limits, render);
+    }
+
+    /**
+     * @return each partial (relative to the template dir) and its hash, sorted, for the manifest
+     */
+    private static Map<String, String> hashIncludes(Set<Path> included, Path templateDir) {
+
+        Map<String, String> hashes = new TreeMap<>();
+        included.forEach(partial -> hashes.put(
+            partial.toString().replace('\\', '/'),
+            Hashing.sha256(templateDir.resolve(partial))));
+
+        return hashes;
+    }
+
+    private static boolean includesUnchanged(Entry previous, Path templateDir) {
+        return previous
+            .includes()
+            .entrySet()
+            .stream()
+            .allMatch(include -> {
+                Path partialFile = templateDir.resolve(include.getKey());
+                return Files.isRegularFile(partialFile) && Hashing.sha256(partialFile).equals(include.getValue());
+            });
+    }
+
+    /**
+     * Files without any template syntax render to themselves, so skip Groovy and just copy the bytes.
+     * Also keeps binary files (images, etc.) intact, since they're never decoded as text.
+     */
+    private static void copyOutputFile(
+        Run run,
+        RenderTimer timer,
+        RelativeFile source,
+        Path outFile,
+        Path relativeOutFile) {
+
+        Path sourceFile = source.getAbsoluteFile();
+
+        if (run.manifest.isEmpty()) {
+            timer.copy(run.outputs, sourceFile, outFile);
+            timer.finish(run.listener);
+            return;
+        }
+
+        GenerationManifest manifest = run.manifest.get();
+        String sourceHash = Hashing.sha256(sourceFile);
+
+        if (isUpToDate(manifest.get(relativeOutFile), sourceHash, run.propsHash, outFile)) {
+            LOG.debug("Inputs unchanged, skipping: {}", sourceFile);
+            run.listener.skipped(source.getRelativeFile());
+            return;
+        }
+
+        manifest.remove(relativeOutFile);
+
+        // Same as writeIfChanged(), leave an identical output file alone.
+        if (!Files.isRegularFile(outFile) || !Hashing.sha256(outFile).equals(sourceHash)) {
+            timer.copy(run.outputs, sourceFile, outFile);
+        }
+
+        manifest.put(relativeOutFile, new Entry(sourceHash, run.propsHash, sourceHash));
+        timer.finish(run.listener);
+    }
+
+    /**
+     * Same template, same props, and the output is still what we generated last time?
+     */
+    private static boolean isUpToDate(Optional<Entry> previous, String templateHash, String propsHash, Path outFile) {
+        return previous.isPresent()
+            && previous.get().sameInputs(templateHash, propsHash)
+            && Files.isRegularFile(outFile)
+            && Hashing.sha256(outFile).equals(previous.get().outputHash());
+    }
+
+    /**
+     * State shared by every file in one generation run.
+     */
+    private record Run(
+        Map<String, Object> props,
+        Optional<GenerationManifest> manifest,
+        String propsHash,
+        IncludeGraph includes,
+        RenderListener listener,
+        RenderLimits limits,
+        OutputFiles outputs) {
+
+        static Run start(Path saveDir, Map<String, Object> props, GenerateOptions options, IncludeGraph includes) {
+
+            boolean toArchive = Archives.isArchiveOutput(saveDir);
+
+            if (toArchive && options.incremental()) {
+                throw new IllegalArgumentException("Incremental runs need a save dir, not an archive: " + saveDir);
+            }
+
+            if (!options.incremental()) {
+                return new Run(
+                    props,
+                    Optional.empty(),
+                    "",
+                    includes,
+                    options.listener(),
+                    options.limits(),
+                    toArchive
+                        ? new ArchiveOutputFiles(saveDir, options.durability())
+                        : new DirectoryOutputFiles(options.durability()));
+            }
+
+            return new Run(
+                props,
+                Optional.of(GenerationManifest.load(saveDir)),
+                GenerationManifest.hashProps(props),
+                includes,
+                options.listener(),
+                options.limits(),
+                new DirectoryOutputFiles(options.durability()));
+        }
+
+        /**
+         * @param complete false if some files failed
+         */
+        void finish(boolean complete) {
+            outputs.finish(complete);
+            manifest.ifPresent(GenerationManifest::save);
+        }
+    }
 }
@@ -0,0 +1,241 @@
+package com.terheyden.templates;
+
+import javax.annotation.Nullable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.codehaus.groovy.ast.ClassCodeVisitorSupport;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.DynamicVariable;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.ConstantExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.MethodCallExpression;
+import org.codehaus.groovy.ast.expr.VariableExpression;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.slf4j.Logger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Lists the variables templates expect to be given, e.g. to generate a settings file for the user.
+ * <p>
+ * Unlike grepping for {@code ${...}}, this parses the template the same way we compile it
+ * (see {@link TemplateParser}) and walks the Groovy AST, so it finds variables in {@code <% %>} code too,
+ * and skips locals, closure params, and methods like {@code slugify()}.
+ * Descriptions and defaults come from {@code var(name, description, default)} calls.
+ * <p>
+ * Results are cached by a hash of the template text (the most recently used few hundred),
+ * so unchanged templates are only parsed once.
+ */
+public final class VariableDiscovery {
+
+    private static final Logger LOG = getLogger(VariableDiscovery.class);
+
+    /**
+     * Dynamic variables that the template engine provides, rather than the user.
+     */
+    private static final Set<String> BUILT_INS = Set.of("out", "binding", "this", "super");
+
+    private static final String VAR_METHOD = "var";
+
+    /**
+     * Max number of templates' variables to keep, so watch and server mode don't grow forever.
+     */
+    private static final int CACHE_SIZE = 512;
+
+    /**
+     * Discovered variables, keyed by a hash of the template text and the extras it's compiled against.
+     * Least-recently-used first, like the {@link TemplateCache}.
+     */
+    private static final Map<String, SortedMap<String, TemplateVariable>> CACHE = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SortedMap<String, TemplateVariable>> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+
+    private VariableDiscovery() {
+        // Private since this class shouldn't be instantiated.
+    }
+
+    /**
+     * @return the template's variables, by name
+     */
+    public static SortedMap<String, TemplateVariable> discover(String template) {
+
+        String key = Hashing.sha256(GroovyExtras.HASH, template);
+        SortedMap<String, TemplateVariable> cached = CACHE.get(key);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        // Parsed outside the lock; two threads may both parse the same template, which is harmless.
+        SortedMap<String, TemplateVariable> variables = Collections.unmodifiableSortedMap(parse(template));
+        CACHE.put(key, variables);
+        return variables;
+    }
+
+    /**
+     * Discover the variables of every template in the dir (or the one template file), in parallel,
+     * merged together. Templates that don't parse are logged and skipped; generating them will fail anyway.
+     * @return every template's variables, by name
+     */
+    public static SortedMap<String, TemplateVariable> discover(Path templatePath, int threads) {
+
+        Stream<RelativeFile> found = Files.isDirectory(templatePath)
+            ? FileUtils2.findAllFiles(templatePath)
+            : FileUtils2.findOneFileWithInfo(templatePath);
+
+        List<Path> files = found
+            .map(RelativeFile::getAbsoluteFile)
+            .toList();
+
+        List<Callable<SortedMap<String, TemplateVariable>>> tasks = files
+            .stream()
+            .<Callable<SortedMap<String, TemplateVariable>>>map(file -> () -> discoverFile(file))
+            .toList();
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(threads, files.size())),
+            Templates.namedThreads("discover"));
+
+        SortedMap<String, TemplateVariable> merged = new TreeMap<>();
+
+        try {
+
+            // In file order, so "first description wins" is predictable.
+            for (Future<SortedMap<String, TemplateVariable>> result : executor.invokeAll(tasks)) {
+                result.get().forEach((name, variable) -> merged.merge(name, variable, TemplateVariable::merge));
+            }
+
+        } catch (Exception e) {
+            Exceptions.throwUnchecked(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return merged;
+    }
+
+    private static SortedMap<String, TemplateVariable> discoverFile(Path file) {
+        try {
+
+            // No template syntax, no variables.
+            return TemplateParser.isLiteral(file)
+                ? Collections.emptySortedMap()
+                : discover(FileUtils2.readFile(file));
+
+        } catch (Exception e) {
+            LOG.warn("Could not parse template, skipping: {}: {}", file, e.getMessage());
+            return Collections.emptySortedMap();
+        }
+    }
+
+    /**
+     * Compile just far enough to know which names are declared and which aren't.
+     */
+    private static SortedMap<String, TemplateVariable> parse(String template) {
+
+        CompilationUnit unit = new CompilationUnit(
+            GroovyExtras.compilerConfiguration(),
+            null,
+            GroovyExtras.LOADER);
+
+        SourceUnit source = unit.addSource(
+            "Template.groovy",
+            GroovyTemplater.toScript(TemplateHeader.parse(template).body()).source());
+        unit.compile(Phases.SEMANTIC_ANALYSIS);
+
+        VariableVisitor visitor = new VariableVisitor(source);
+        ModuleNode module = source.getAST();
+
+        for (ClassNode classNode : module.getClasses()) {
+            visitor.visitClass(classNode);
+        }
+
+        return visitor.variables;
+    }
+
+    /**
+     * Collects names that aren't declared anywhere in the template, so they must come from the properties.
+     */
+    private static final class VariableVisitor extends ClassCodeVisitorSupport {
+
+        private final SourceUnit source;
+        private final SortedMap<String, TemplateVariable> variables = new TreeMap<>();
+
+        private VariableVisitor(SourceUnit source) {
+            this.source = source;
+        }
+
+        @Override
+        protected SourceUnit getSourceUnit() {
+            return source;
+        }
+
+        @Override
+        public void visitVariableExpression(VariableExpression expression) {
+
+            if (expression.getAccessedVariable() instanceof DynamicVariable
+                && !BUILT_INS.contains(expression.getName())) {
+
+                add(new TemplateVariable(expression.getName(), 1, null, null));
+            }
+
+            super.visitVariableExpression(expression);
+        }
+
+        @Override
+        public void visitMethodCallExpression(MethodCallExpression call) {
+
+            if (call.isImplicitThis()
+                && VAR_METHOD.equals(call.getMethodAsString())
+                && call.getArguments() instanceof ArgumentListExpression args
+                && constant(args, 0) instanceof String name) {
+
+                add(new TemplateVariable(
+                    name,
+                    1,
+                    constant(args, 1) instanceof String description ? description : null,
+                    constant(args, 2)));
+            }
+
+            super.visitMethodCallExpression(call);
+        }
+
+        private void add(TemplateVariable variable) {
+            variables.merge(variable.name(), variable, TemplateVariable::merge);
+        }
+
+        /**
+         * @return the value of the arg at the index if it's a literal, otherwise null
+         */
+        @Nullable
+        private static Object constant(ArgumentListExpression args, int index) {
+
+            List<Expression> expressions = args.getExpressions();
+
+            return index < expressions.size() && expressions.get(index) instanceof ConstantExpression constant
+                ? constant.getValue()
+                : null;
+        }
+    }
+}
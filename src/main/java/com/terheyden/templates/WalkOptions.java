@@ -0,0 +1,58 @@
+package com.terheyden.templates;
+
+import java.util.List;
+
+/**
+ * Which files to visit when walking a template dir.
+ *
+ * @param includes {@code .gitignore}-style patterns; if there are any, only matching files are visited
+ * @param excludes {@code .gitignore}-style patterns of files and dirs to skip; excluded dirs aren't walked at all
+ * @param symlinks what to do with symbolic links
+ */
+public record WalkOptions(List<String> includes, List<String> excludes, Symlinks symlinks) {
+
+    /**
+     * What to do with symbolic links.
+     */
+    public enum Symlinks {
+
+        /**
+         * Follow links to files and dirs. Link loops are reported as errors.
+         */
+        FOLLOW,
+
+        /**
+         * Follow links to files, but don't walk into linked dirs.
+         */
+        FILES_ONLY,
+
+        /**
+         * Skip links entirely.
+         */
+        SKIP
+    }
+
+    public WalkOptions {
+        includes = List.copyOf(includes);
+        excludes = List.copyOf(excludes);
+    }
+
+    /**
+     * Every file, following links to files but not to dirs.
+     */
+    public static WalkOptions defaults() {
+        return new WalkOptions(List.of(), List.of(), Symlinks.FILES_ONLY);
+    }
+
+    public WalkOptions withIncludes(List<String> newIncludes) {
+        return new WalkOptions(newIncludes, excludes, symlinks);
+    }
+
+    public WalkOptions withExcludes(List<String> newExcludes) {
+        return new WalkOptions(includes, newExcludes, symlinks);
+    }
+
+    public WalkOptions withSymlinks(Symlinks newSymlinks) {
+        return new WalkOptions(includes, excludes, newSymlinks);
+    }
+}
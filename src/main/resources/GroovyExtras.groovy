@@ -9,3 +9,21 @@ def slugify(String str) {
     // Remove any leading or trailing dashes.
     return cleanStr.replaceAll(/^-+|-+$/, '')
 }
+
+/**
+ * Render a partial template, relative to the template dir, e.g. include('_partials/header.txt').
+ * The partial sees this template's variables, plus any given here.
+ */
+String include(String path, Map vars = [:]) {
+    return com.terheyden.templates.Partials.include(this, path, vars)
+}
+
+/**
+ * A template variable with a description and a default, e.g. var('name', 'User name', 'Cora').
+ * Returns the variable's value, or the default if it isn't set.
+ * Variable discovery picks up the description and default, so prefer literals for both.
+ * Not the same as the <%@ var Type name %> header directive, which only declares a type for the static engine.
+ */
+def var(String name, String description = null, Object defaultValue = null) {
+    return binding.hasVariable(name) ? binding.getVariable(name) : defaultValue
+}
@@ -0,0 +1,112 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * BatchRendererTest unit tests.
+ */
+class BatchRendererTest {
+
+    private static final String TEMPLATE = "Service ${name} on port ${port} by ${team}";
+
+    @Test
+    void render_jsonLines_oneOutputPerRecord(@TempDir Path testDir) throws Exception {
+
+        // Plenty more records than threads * queue size.
+        Path records = Files.writeString(testDir.resolve("services.jsonl"), IntStream
+            .range(0, 500)
+            .mapToObj(i -> "{\"name\": \"svc%d\", \"port\": %d}".formatted(i, 8000 + i))
+            .collect(Collectors.joining("\n")));
+
+        long count = BatchRenderer.render(
+            TEMPLATE,
+            records,
+            testDir.resolve("out").toString() + "/${name}/README.md",
+            Map.of("team", "core"),
+            GenerateOptions.defaults().withThreads(4));
+
+        assertThat(count).isEqualTo(500);
+        assertThat(testDir.resolve("out/svc0/README.md")).hasContent("Service svc0 on port 8000 by core");
+        assertThat(testDir.resolve("out/svc499/README.md")).hasContent("Service svc499 on port 8499 by core");
+    }
+
+    @Test
+    void render_yamlDocuments(@TempDir Path testDir) throws Exception {
+
+        Path records = Files.writeString(testDir.resolve("services.yaml"), """
+            name: api
+            port: 80
+            team: web
+            ---
+            name: db
+            port: 5432
+            team: data
+            """);
+
+        BatchRenderer.render(TEMPLATE, records, testDir + "/${name}.txt", Map.of(), GenerateOptions.defaults());
+
+        assertThat(testDir.resolve("api.txt")).hasContent("Service api on port 80 by web");
+        assertThat(testDir.resolve("db.txt")).hasContent("Service db on port 5432 by data");
+    }
+
+    @Test
+    void render_csv(@TempDir Path testDir) throws Exception {
+
+        Path records = Files.writeString(testDir.resolve("services.csv"), """
+            name,port
+            api,80
+            db,5432
+            """);
+
+        BatchRenderer.render(TEMPLATE, records, testDir + "/${name}.txt", Map.of("team", "ops"), GenerateOptions.defaults());
+
+        assertThat(testDir.resolve("api.txt")).hasContent("Service api on port 80 by ops");
+        assertThat(testDir.resolve("db.txt")).hasContent("Service db on port 5432 by ops");
+    }
+
+    @Test
+    void render_secure_outputPatternSandboxedToo(@TempDir Path testDir) throws Exception {
+
+        Path records = Files.writeString(testDir.resolve("services.jsonl"), "{\"name\": \"api\"}");
+
+        assertThatExceptionOfType(TemplateCompileException.class)
+            .isThrownBy(() -> BatchRenderer.render(
+                TEMPLATE,
+                records,
+                testDir + "/${'touch pwned'.execute()}${name}.txt",
+                Map.of(),
+                GenerateOptions.defaults().withLimits(RenderLimits.none().withSecure(true))))
+            .withMessageContaining("not allowed");
+    }
+
+    @Test
+    void render_badRecords_reportsAllFailures(@TempDir Path testDir) throws Exception {
+
+        // The second and fourth records have no team.
+        Path records = Files.writeString(testDir.resolve("services.jsonl"), """
+            {"name": "a", "port": 1, "team": "x"}
+            {"name": "b", "port": 2}
+            {"name": "c", "port": 3, "team": "x"}
+            {"name": "d", "port": 4}
+            """);
+
+        assertThatExceptionOfType(BatchRenderException.class)
+            .isThrownBy(() -> BatchRenderer.render(
+                TEMPLATE, records, testDir + "/${name}.txt", Map.of(), GenerateOptions.defaults()))
+            .withMessageStartingWith("2 of 4 records failed")
+            .satisfies(e -> assertThat(e.getFailures()).containsOnlyKeys(2L, 4L));
+
+        assertThat(testDir.resolve("a.txt")).exists();
+        assertThat(testDir.resolve("c.txt")).exists();
+    }
+}
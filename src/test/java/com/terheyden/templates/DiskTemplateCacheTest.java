@@ -0,0 +1,64 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import groovy.text.Template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * DiskTemplateCacheTest unit tests.
+ */
+class DiskTemplateCacheTest {
+
+    private static final TemplateScript SCRIPT = TemplateParser.parse("Hello ${name}! <% 2.times { %>x<% } %>");
+    private static final String KEY = TemplateCompiler.cacheKey(TemplateEngines.DYNAMIC, SCRIPT.source(), false);
+
+    @Test
+    void compile_twice_secondLoadsFromDisk(@TempDir Path cacheDir) {
+
+        Optional<DiskTemplateCache> diskCache = Optional.of(new DiskTemplateCache(cacheDir));
+
+        Template first = TemplateCompiler.compile(TemplateEngines.DYNAMIC, SCRIPT, KEY, false, diskCache);
+        assertThat(cacheDir.resolve(KEY + ".classes")).isRegularFile();
+
+        // The script has a closure, so there's more than one class.
+        Map<String, byte[]> classes = diskCache.get().load(KEY).orElseThrow();
+        assertThat(classes).hasSizeGreaterThan(1);
+
+        Template second = TemplateCompiler.compile(TemplateEngines.DYNAMIC, SCRIPT, KEY, false, diskCache);
+        assertThat(second.make(new HashMap<>(Map.of("name", "Cora"))).toString())
+            .isEqualTo(first.make(new HashMap<>(Map.of("name", "Cora"))).toString())
+            .isEqualTo("Hello Cora! xx");
+    }
+
+    @Test
+    void load_corruptEntry_isDeleted(@TempDir Path cacheDir) throws Exception {
+
+        DiskTemplateCache diskCache = new DiskTemplateCache(cacheDir);
+        Path entryFile = cacheDir.resolve(KEY + ".classes");
+        Files.writeString(entryFile, "garbage");
+
+        assertThat(diskCache.load(KEY)).isEmpty();
+        assertThat(entryFile).doesNotExist();
+
+        // And we recover by recompiling.
+        Template template = TemplateCompiler.compile(TemplateEngines.DYNAMIC, SCRIPT, KEY, false, Optional.of(diskCache));
+        assertThat(template.make(new HashMap<>(Map.of("name", "Cora"))).toString()).isEqualTo("Hello Cora! xx");
+        assertThat(entryFile).isRegularFile();
+    }
+
+    @Test
+    void cacheKey_differentScriptOrSettings_differentKey() {
+        assertThat(TemplateCompiler.cacheKey(TemplateEngines.DYNAMIC, SCRIPT.source() + " ", false)).isNotEqualTo(KEY);
+        assertThat(TemplateCompiler.cacheKey(TemplateEngines.DYNAMIC, SCRIPT.source(), true)).isNotEqualTo(KEY);
+        assertThat(TemplateCompiler.cacheKey(TemplateEngines.STATIC, SCRIPT.source(), false)).isNotEqualTo(KEY);
+    }
+}
@@ -1,15 +1,23 @@
 package com.terheyden.templates;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.vavr.control.Try;
 
 import static com.terheyden.templates.FileUtils2.findAllFiles;
 import static com.terheyden.templates.FileUtils2.findFiles;
 import static com.terheyden.templates.FileUtils2.grep;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * FileUtils2Test unit tests.
@@ -42,4 +50,106 @@ class FileUtils2Test {
         List<String> found = grep(RESOURCE_DIR.resolve("grep"), "\\$\\{.+?\\}", 1);
         assertThat(found).hasSize(2);
     }
+
+    @Test
+    void walkFiles_filtersAndLinks_areApplied(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Files.createDirectories(srcDir.resolve("keep/deep"));
+        Files.createDirectories(srcDir.resolve("build"));
+        Files.writeString(srcDir.resolve("keep/a.txt"), "a");
+        Files.writeString(srcDir.resolve("keep/deep/b.txt"), "b");
+        Files.writeString(srcDir.resolve("keep/c.log"), "c");
+        Files.writeString(srcDir.resolve("build/d.txt"), "d");
+
+        Path linkedDir = Files.createDirectories(testDir.resolve("linked"));
+        Files.writeString(linkedDir.resolve("e.txt"), "e");
+        Files.createSymbolicLink(srcDir.resolve("dirLink"), linkedDir);
+        Files.createSymbolicLink(srcDir.resolve("fileLink.txt"), srcDir.resolve("keep/a.txt"));
+
+        WalkOptions options = WalkOptions
+            .defaults()
+            .withIncludes(List.of("*.txt"))
+            .withExcludes(List.of("build/"));
+
+        assertThat(walk(srcDir, options)).containsExactly(
+            "fileLink.txt", "keep/a.txt", "keep/deep/b.txt");
+        assertThat(walk(srcDir, options.withSymlinks(WalkOptions.Symlinks.FOLLOW))).containsExactly(
+            "dirLink/e.txt", "fileLink.txt", "keep/a.txt", "keep/deep/b.txt");
+        assertThat(walk(srcDir, options.withSymlinks(WalkOptions.Symlinks.SKIP))).containsExactly(
+            "keep/a.txt", "keep/deep/b.txt");
+    }
+
+    @Test
+    void deleteEntireDir_tree_isGoneButLinkTargetsStay(@TempDir Path testDir) throws Exception {
+
+        Path dir = testDir.resolve("dir");
+        Files.createDirectories(dir.resolve("a/b/c"));
+        Files.writeString(dir.resolve("a/b/c/file.txt"), "x");
+        Files.writeString(dir.resolve("a/file.txt"), "x");
+
+        Path target = Files.createDirectories(testDir.resolve("target"));
+        Files.writeString(target.resolve("keep.txt"), "x");
+        Files.createSymbolicLink(dir.resolve("a/link"), target);
+
+        FileUtils2.deleteEntireDir(dir);
+
+        assertThat(dir).doesNotExist();
+        assertThat(target.resolve("keep.txt")).exists();
+    }
+
+    @Test
+    void writeAtomically_failedWrite_leavesOldFileAlone(@TempDir Path testDir) throws Exception {
+
+        Path file = testDir.resolve("script.sh");
+        Files.writeString(file, "old");
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rwxr-x---"));
+
+        assertThatThrownBy(() -> FileUtils2.writeAtomically(
+            file,
+            writer -> {
+                Try.run(() -> writer.write("half of the new")).get();
+                throw new IllegalStateException("Crash!");
+            },
+            false))
+            .hasMessage("Crash!");
+
+        // No half-written file, and no temp file left behind.
+        assertThat(file).hasContent("old");
+        assertThat(FileUtils2.findFiles(testDir)).containsExactly(file);
+
+        FileUtils2.writeAtomically(file, writer -> Try.run(() -> writer.write("new")).get(), true);
+
+        assertThat(file).hasContent("new");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rwxr-x---");
+        assertThat(FileUtils2.findFiles(testDir)).containsExactly(file);
+    }
+
+    @Test
+    void writeIfChanged_unchanged_notReportedAsWritten(@TempDir Path testDir) throws Exception {
+
+        Path file = testDir.resolve("out.txt");
+        List<String> written = new ArrayList<>();
+
+        FileUtils2.writeIfChanged(file, writer -> Try.run(() -> writer.write("one")).get(), false, () -> written.add("one"));
+        FileUtils2.writeIfChanged(file, writer -> Try.run(() -> writer.write("one")).get(), false, () -> written.add("again"));
+        FileUtils2.writeIfChanged(file, writer -> Try.run(() -> writer.write("two")).get(), false, () -> written.add("two"));
+
+        assertThat(written).containsExactly("one", "two");
+        assertThat(file).hasContent("two");
+    }
+
+    private static List<String> walk(Path startDir, WalkOptions options) {
+
+        List<String> found = new ArrayList<>();
+
+        FileUtils2.walkFiles(
+            startDir,
+            options,
+            file -> found.add(file.getRelativeFile().toString()),
+            (file, e) -> found.add("error: " + file));
+
+        Collections.sort(found);
+        return found;
+    }
 }
@@ -0,0 +1,54 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.terheyden.templates.GenerationManifest.Entry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GenerationManifestTest unit tests.
+ */
+class GenerationManifestTest {
+
+    @Test
+    void hashProps_keyOrder_doesNotMatter() {
+
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("name", "Cora");
+        first.put("address", Map.of("city", "Oakland", "zip", "94610"));
+
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("address", Map.of("zip", "94610", "city", "Oakland"));
+        second.put("name", "Cora");
+
+        assertThat(GenerationManifest.hashProps(first)).isEqualTo(GenerationManifest.hashProps(second));
+        assertThat(GenerationManifest.hashProps(first))
+            .isNotEqualTo(GenerationManifest.hashProps(Map.of("name", "Cora", "tags", List.of("a"))));
+    }
+
+    @Test
+    void save_thenLoad_roundTrips(@TempDir Path outDir) {
+
+        GenerationManifest manifest = GenerationManifest.load(outDir);
+        Entry entry = new Entry("t", "p", "o");
+        manifest.put(Path.of("etc", "hello.md"), entry);
+        manifest.save();
+
+        assertThat(GenerationManifest.load(outDir).get(Path.of("etc/hello.md"))).contains(entry);
+    }
+
+    @Test
+    void load_garbage_startsFresh(@TempDir Path outDir) throws Exception {
+
+        Files.writeString(outDir.resolve(GenerationManifest.FILE_NAME), "[not, a, map");
+        assertThat(GenerationManifest.load(outDir).outputFiles()).isEmpty();
+    }
+}
@@ -0,0 +1,141 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GrepTest unit tests.
+ */
+class GrepTest {
+
+    @Test
+    void search_matches_haveLineNumbersAndContext(@TempDir Path testDir) throws Exception {
+
+        Files.writeString(testDir.resolve("a.txt"), "one\r\ntwo ${x}\r\nthree\r\nfour ${y} ${z}\n");
+
+        List<GrepMatch> found = Grep
+            .search(testDir, "\\$\\{.+?\\}", GrepOptions.defaults().withContext(1))
+            .toList();
+
+        // One match per line, even if the line matches twice.
+        assertThat(found).hasSize(2);
+        assertThat(found.get(0)).isEqualTo(new GrepMatch(
+            testDir.resolve("a.txt"), 2, "two ${x}", List.of("one"), List.of("three")));
+        assertThat(found.get(1)).isEqualTo(new GrepMatch(
+            testDir.resolve("a.txt"), 4, "four ${y} ${z}", List.of("three"), List.of()));
+        assertThat(found.get(0).snippet()).isEqualTo("one\ntwo ${x}\nthree\n");
+    }
+
+    @Test
+    void search_anchors_matchLines(@TempDir Path testDir) throws Exception {
+
+        Files.writeString(testDir.resolve("a.txt"), "x = 1\n  y = 2\nz = 3");
+
+        List<Integer> found = Grep
+            .search(testDir, "^\\w =", GrepOptions.defaults())
+            .map(GrepMatch::lineNumber)
+            .toList();
+
+        assertThat(found).containsExactly(1, 3);
+    }
+
+    @Test
+    void search_pattern_neverMatchesAcrossLines(@TempDir Path testDir) throws Exception {
+
+        Files.writeString(testDir.resolve("a.txt"), "one\ntwo\nthree two");
+
+        assertThat(Grep.search(testDir, "one\\stwo", GrepOptions.defaults())).isEmpty();
+        assertThat(Grep.search(testDir, "one[^x]two", GrepOptions.defaults())).isEmpty();
+        assertThat(Grep.search(testDir, "e\\stwo", GrepOptions.defaults()).map(GrepMatch::lineNumber)).containsExactly(3);
+    }
+
+    @Test
+    void search_nestedGitignores_deeperOnesOverride(@TempDir Path testDir) throws Exception {
+
+        Files.createDirectories(testDir.resolve("a/b"));
+        Files.writeString(testDir.resolve(".gitignore"), "*.gen\n");
+        Files.writeString(testDir.resolve("a/.gitignore"), "!keep.gen\nlocal.txt\n");
+        Files.writeString(testDir.resolve("a/b/.gitignore"), "/deep.txt\n");
+        Files.writeString(testDir.resolve("top.gen"), "match");
+        Files.writeString(testDir.resolve("local.txt"), "match");
+        Files.writeString(testDir.resolve("a/keep.gen"), "match");
+        Files.writeString(testDir.resolve("a/b/keep.gen"), "match");
+        Files.writeString(testDir.resolve("a/b/other.gen"), "match");
+        Files.writeString(testDir.resolve("a/b/local.txt"), "match");
+        Files.writeString(testDir.resolve("a/b/deep.txt"), "match");
+        Files.writeString(testDir.resolve("a/deep.txt"), "match");
+
+        List<Path> found = Grep
+            .search(testDir, "match", GrepOptions.defaults())
+            .map(match -> testDir.relativize(match.file()))
+            .sorted()
+            .toList();
+
+        assertThat(found).containsExactly(
+            Path.of("a/b/keep.gen"),
+            Path.of("a/deep.txt"),
+            Path.of("a/keep.gen"),
+            Path.of("local.txt"));
+    }
+
+    @Test
+    void search_excludesAndBinaries_areSkipped(@TempDir Path testDir) throws Exception {
+
+        Files.createDirectories(testDir.resolve("build/sub"));
+        Files.createDirectories(testDir.resolve(".git"));
+        Files.createDirectories(testDir.resolve("src"));
+        Files.writeString(testDir.resolve(".gitignore"), "# Build output\nbuild/\n*.log\n!keep.log\n");
+        Files.writeString(testDir.resolve("build/sub/a.txt"), "match");
+        Files.writeString(testDir.resolve(".git/config"), "match");
+        Files.writeString(testDir.resolve("src/a.log"), "match");
+        Files.writeString(testDir.resolve("src/keep.log"), "match");
+        Files.writeString(testDir.resolve("src/a.txt"), "match");
+        Files.writeString(testDir.resolve("src/b.txt"), "match");
+        Files.write(testDir.resolve("src/a.bin"), new byte[] { 'm', 'a', 't', 'c', 'h', 0 });
+
+        List<Path> found = Grep
+            .search(testDir, "match", GrepOptions.defaults().withExcludes(List.of("/src/b.txt")))
+            .map(match -> testDir.relativize(match.file()))
+            .sorted()
+            .toList();
+
+        assertThat(found).containsExactly(Path.of("src/a.txt"), Path.of("src/keep.log"));
+
+        long all = Grep
+            .search(testDir, "match", GrepOptions.defaults().withGitignore(false))
+            .count();
+
+        assertThat(all).isEqualTo(6);
+    }
+
+    @Test
+    void search_largeFile_streamedAndLimited(@TempDir Path testDir) throws Exception {
+
+        // Big enough to take several reads.
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 50_000; i++) {
+            text.append("line ").append(i).append(i % 1000 == 0 ? " ${hit}" : "").append('\n');
+        }
+
+        Files.writeString(testDir.resolve("big.txt"), text);
+
+        List<Integer> all = Grep
+            .search(testDir, "\\$\\{hit\\}", GrepOptions.defaults())
+            .map(GrepMatch::lineNumber)
+            .toList();
+
+        assertThat(all).hasSize(50).startsWith(1000, 2000).endsWith(50_000);
+
+        long limited = Grep
+            .search(testDir, "\\$\\{hit\\}", GrepOptions.defaults().withMaxMatches(3))
+            .count();
+
+        assertThat(limited).isEqualTo(3);
+    }
+}
@@ -1,8 +1,13 @@
 package com.terheyden.templates;
 
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 
 import groovy.lang.GroovyRuntimeException;
@@ -27,6 +32,7 @@ public class GroovyTemplaterTest {
             "LOG", LOG
         );
 
+    @Test
     void generate_immutableVarMap_succeeds() {
 
         String template = "${greeting} ${user.name}!";
@@ -99,6 +105,56 @@ public class GroovyTemplaterTest {
             You are a minor.""");
     }
 
+    @Test
+    public void generate_sameTemplateTwice_hitsCache() {
+
+        String template = "Cache test: ${greeting} ${user.age}";
+        GroovyTemplater.generate(template, varMap);
+        long hitsBefore = GroovyTemplater.cacheStats().hits();
+
+        String result = GroovyTemplater.generate(template, varMap);
+
+        assertThat(result).isEqualTo("Cache test: Hello 12");
+        assertThat(GroovyTemplater.cacheStats().hits()).isGreaterThan(hitsBefore);
+    }
+
+    @Test
+    public void generate_toWriter_streamsResult() {
+
+        StringWriter writer = new StringWriter();
+        GroovyTemplater.generate("${greeting} <%= user.name %>!", varMap, writer);
+
+        assertThat(writer).hasToString("Hello Cora!");
+    }
+
+    @Test
+    public void generateTo_file_writesUtf8(@TempDir Path testOutDir) {
+
+        Path saveFile = testOutDir.resolve("out.txt");
+        GroovyTemplater.generateTo("Ol\u00e1 ${user.name}, <% 3.times { %>\u2713<% } %>", varMap, saveFile);
+
+        assertThat(saveFile).usingCharset(StandardCharsets.UTF_8).hasContent("Ol\u00e1 Cora, \u2713\u2713\u2713");
+    }
+
+    @Test
+    public void generate_extrasMethod_isInherited() {
+
+        String result = GroovyTemplater.generate("${slugify('My Project, v2!')}", varMap);
+        assertThat(result).isEqualTo("my-project--v2");
+    }
+
+    @Test
+    public void generate_templateAssigns_sharedPropsUnchanged() {
+
+        Map<String, Object> props = new HashMap<>(Map.of("name", "Cora"));
+        String template = "<% name = name.toUpperCase(); extra = 'x' %>${name}${extra}";
+
+        assertThat(GroovyTemplater.generate(template, props)).isEqualTo("CORAx");
+        // Same again: the first render's assignments didn't leak into the shared props.
+        assertThat(GroovyTemplater.generate(template, props)).isEqualTo("CORAx");
+        assertThat(props).containsOnly(Map.entry("name", "Cora"));
+    }
+
     @Test
     public void testExceptionHandling() {
 
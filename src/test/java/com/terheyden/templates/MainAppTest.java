@@ -1,6 +1,13 @@
 package com.terheyden.templates;
 
+import java.nio.file.Path;
+
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import picocli.CommandLine;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 /**
  * MainAppTest unit tests.
@@ -11,4 +18,16 @@ class MainAppTest {
     void test() {
 
     }
+
+    @Test
+    void stats_withOtherModes_rejected(@TempDir Path testDir) {
+
+        Path template = testDir.resolve("hello.txt");
+        FileUtils2.writeFile(template, "Hello ${name}");
+        CommandLine cli = new CommandLine(MainApp.class);
+
+        assertThat(cli.execute("--stats", "--watch", "-t", template.toString(), "-o", testDir.resolve("out").toString()))
+            .isEqualTo(1);
+        assertThat(testDir.resolve("out")).doesNotExist();
+    }
 }
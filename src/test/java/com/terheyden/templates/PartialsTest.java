@@ -0,0 +1,140 @@
+package com.terheyden.templates;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * PartialsTest unit tests.
+ */
+class PartialsTest {
+
+    private final Map<String, Object> varMap = Map.of("name", "Cora");
+
+    @TempDir
+    private Path testDir;
+
+    private Path srcDir;
+    private Path outDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        srcDir = testDir.resolve("src");
+        outDir = testDir.resolve("out");
+        Files.createDirectories(srcDir.resolve("_partials"));
+        Files.createDirectories(srcDir.resolve("sub"));
+        Files.writeString(srcDir.resolve("_partials/header.txt"), "# ${title} for ${name}\n${include('_partials/footer.txt')}");
+        Files.writeString(srcDir.resolve("_partials/footer.txt"), "-- ${name}");
+    }
+
+    @Test
+    void include_nestedPartials_rendered() throws Exception {
+
+        Files.writeString(srcDir.resolve("sub/page.txt"), "${include('_partials/header.txt', [title: 'Page'])}\nBody");
+        IncludeGraph includes = new IncludeGraph();
+
+        Templates.generate(srcDir, outDir, varMap, GenerateOptions.defaults(), includes);
+
+        assertThat(outDir.resolve("sub/page.txt")).hasContent("# Page for Cora\n-- Cora\nBody");
+        // Partials aren't generated by themselves.
+        assertThat(outDir.resolve("_partials")).doesNotExist();
+
+        assertThat(includes.includedBy(Path.of("sub/page.txt")))
+            .containsExactlyInAnyOrder(Path.of("_partials/header.txt"), Path.of("_partials/footer.txt"));
+        assertThat(includes.dependents(Path.of("_partials/footer.txt"))).containsExactly(Path.of("sub/page.txt"));
+    }
+
+    @Test
+    void generate_fromArchive_partialsForgottenWhenItCloses() throws Exception {
+
+        Path zipFile = testDir.resolve("templates.zip");
+
+        try (FileSystem zip = FileSystems.newFileSystem(zipFile, Map.of("create", "true"))) {
+            Files.createDirectories(zip.getPath("/_partials"));
+            Files.writeString(zip.getPath("/page.txt"), "${include('_partials/footer.txt')}");
+            Files.writeString(zip.getPath("/_partials/footer.txt"), "-- ${name}");
+        }
+
+        int compiled = Partials.compiledCount();
+        Templates.generate(zipFile, outDir, varMap);
+
+        assertThat(outDir.resolve("page.txt")).hasContent("-- Cora");
+        assertThat(Partials.compiledCount()).isEqualTo(compiled);
+    }
+
+    @Test
+    void include_callerVariables_readThroughArgsOnTop() throws Exception {
+
+        Files.writeString(srcDir.resolve("_partials/hi.txt"), "${greeting} ${name}<% leaked = 1 %>");
+        Files.writeString(
+            srcDir.resolve("page.txt"),
+            "<% greeting = 'Hi' %>${include('_partials/hi.txt', [name: 'Bo'])}, ${binding.hasVariable('leaked')}, ${name}");
+
+        Templates.generate(srcDir, outDir, varMap);
+
+        assertThat(outDir.resolve("page.txt")).hasContent("Hi Bo, false, Cora");
+    }
+
+    @Test
+    void include_cycle_fails() throws Exception {
+
+        Files.writeString(srcDir.resolve("_partials/a.txt"), "${include('_partials/b.txt')}");
+        Files.writeString(srcDir.resolve("_partials/b.txt"), "${include('_partials/a.txt')}");
+        Files.writeString(srcDir.resolve("page.txt"), "${include('_partials/a.txt')}");
+
+        assertThatExceptionOfType(GenerationException.class)
+            .isThrownBy(() -> Templates.generate(srcDir, outDir, varMap))
+            .withMessageContaining("Include cycle: page.txt -> _partials/a.txt -> _partials/b.txt -> _partials/a.txt");
+    }
+
+    @Test
+    void include_outsideTemplateDir_fails() throws Exception {
+
+        Files.writeString(testDir.resolve("secret.txt"), "secret");
+        Files.writeString(srcDir.resolve("page.txt"), "${include('../secret.txt')}");
+
+        assertThatExceptionOfType(GenerationException.class)
+            .isThrownBy(() -> Templates.generate(srcDir, outDir, varMap))
+            .withMessageContaining("inside the template dir");
+    }
+
+    @Test
+    void include_notRenderingFiles_fails() {
+        assertThatExceptionOfType(IllegalStateException.class)
+            .isThrownBy(() -> GroovyTemplater.generate("${include('x.txt')}", varMap))
+            .withMessageContaining("only works when rendering template files");
+    }
+
+    @Test
+    void generate_incremental_partialChangeRegeneratesIncluders() throws Exception {
+
+        Files.writeString(srcDir.resolve("page.txt"), "${include('_partials/footer.txt')}");
+        Files.writeString(srcDir.resolve("other.txt"), "No includes, ${name}");
+        GenerateOptions incremental = GenerateOptions.defaults().withIncremental(true);
+
+        Templates.generate(srcDir, outDir, varMap, incremental);
+
+        Path page = outDir.resolve("page.txt");
+        Path other = outDir.resolve("other.txt");
+        FileTime longAgo = FileTime.from(Instant.parse("2000-01-01T00:00:00Z"));
+        Files.setLastModifiedTime(page, longAgo);
+        Files.setLastModifiedTime(other, longAgo);
+
+        Files.writeString(srcDir.resolve("_partials/footer.txt"), "== ${name}");
+        Templates.generate(srcDir, outDir, varMap, incremental);
+
+        assertThat(page).hasContent("== Cora");
+        assertThat(Files.getLastModifiedTime(other)).isEqualTo(longAgo);
+    }
+}
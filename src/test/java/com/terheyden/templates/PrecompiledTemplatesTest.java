@@ -0,0 +1,179 @@
+package com.terheyden.templates;
+
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * PrecompiledTemplatesTest unit tests.
+ */
+class PrecompiledTemplatesTest {
+
+    private static final CountingEngine ENGINE = new CountingEngine();
+
+    private final Map<String, Object> varMap = Map.of(
+        "name", "Cora",
+        "age", 12
+    );
+
+    @BeforeAll
+    static void registerEngine() {
+        TemplateEngines.register(ENGINE);
+    }
+
+    @AfterAll
+    static void unregisterEngine() {
+        TemplateEngines.unregister(ENGINE.name());
+    }
+
+    @Test
+    void compile_templateDir_generatesFromJarWithoutCompiling(@TempDir Path testDir) throws Exception {
+
+        byte[] binary = {(byte) 0x89, 'P', 'N', 'G', 0x00, (byte) 0xFF};
+        Path srcDir = writeTemplates(testDir.resolve("src"));
+        Files.write(srcDir.resolve("image.png"), binary);
+        Path jarFile = testDir.resolve("templates.jar");
+
+        assertThat(Templates.precompile(srcDir, jarFile, GenerateOptions.defaults())).isEqualTo(3);
+
+        try (ZipFile jar = new ZipFile(jarFile.toFile())) {
+            assertThat(jar.stream().map(ZipEntry::getName))
+                .contains("sub/hello.txt", "sub/copy.txt", "_partials/hi.txt", "image.png", "META-INF/codepuncher/index.yaml")
+                // The two identical templates share their bytecode.
+                .filteredOn(name -> name.endsWith(".classes")).hasSize(2);
+            assertThat(new String(jar.getInputStream(jar.getEntry("META-INF/codepuncher/index.yaml")).readAllBytes(), UTF_8))
+                .contains("sub/hello.txt", "_partials/hi.txt");
+        }
+
+        GroovyTemplater.clearCache();
+        int compiles = ENGINE.compiles.get();
+        Path outDir = testDir.resolve("out");
+        Templates.generate(jarFile, outDir, varMap);
+
+        assertThat(ENGINE.compiles).hasValue(compiles);
+        assertThat(outDir.resolve("sub/hello.txt")).hasContent("Hi Cora, 12");
+        assertThat(outDir.resolve("sub/copy.txt")).hasContent("Hi Cora, 12");
+        assertThat(outDir.resolve("image.png")).hasBinaryContent(binary);
+        assertThat(outDir.resolve("_partials")).doesNotExist();
+        assertThat(outDir.resolve("META-INF")).doesNotExist();
+    }
+
+    @Test
+    void generate_differentSecureSetting_compilesInstead(@TempDir Path testDir) {
+
+        Path srcDir = writeTemplates(testDir.resolve("src"));
+        Path jarFile = testDir.resolve("templates.jar");
+        Templates.precompile(srcDir, jarFile, GenerateOptions.defaults());
+
+        GroovyTemplater.clearCache();
+        int compiles = ENGINE.compiles.get();
+        Path outDir = testDir.resolve("out");
+        Templates.generate(
+            jarFile,
+            outDir,
+            varMap,
+            GenerateOptions.defaults().withLimits(RenderLimits.none().withSecure(true)));
+
+        // Trusted bytecode never runs in secure mode; the templates were compiled in the sandbox.
+        assertThat(ENGINE.compiles.get()).isGreaterThan(compiles);
+        assertThat(outDir.resolve("sub/hello.txt")).hasContent("Hi Cora, 12");
+    }
+
+    @Test
+    void generate_secure_neverLoadsBytecode(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = writeTemplates(testDir.resolve("src"));
+        Path jarFile = testDir.resolve("templates.jar");
+        GenerateOptions secure = GenerateOptions.defaults().withLimits(RenderLimits.none().withSecure(true));
+        Templates.precompile(srcDir, jarFile, secure);
+
+        // Swap in bytecode that was never sandboxed, under the key of a sandboxed template.
+        try (FileSystem jar = FileSystems.newFileSystem(jarFile)) {
+
+            Path indexFile = jar.getPath("/" + PrecompiledTemplates.DIR + "index.yaml");
+            String key = YamlMapper
+                .yamlToObj(Files.readString(indexFile), PrecompiledTemplates.Index.class)
+                .templates()
+                .get("sub/hello.txt");
+
+            Map<String, byte[]> tampered = TemplateCompiler.compileToBytecode(
+                TemplateEngines.DYNAMIC,
+                GroovyTemplater.toScript("${'tampered'}"),
+                TemplateCompiler.className(key),
+                false);
+
+            try (OutputStream out = Files.newOutputStream(jar.getPath("/" + PrecompiledTemplates.DIR + key + ".classes"))) {
+                DiskTemplateCache.writeEntry(out, tampered);
+            }
+        }
+
+        GroovyTemplater.clearCache();
+        Path outDir = testDir.resolve("out");
+        Templates.generate(jarFile, outDir, varMap, secure);
+
+        assertThat(outDir.resolve("sub/hello.txt")).hasContent("Hi Cora, 12");
+        assertThat(outDir.resolve("META-INF")).doesNotExist();
+    }
+
+    @Test
+    void compile_badTemplate_noJar(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = writeTemplates(testDir.resolve("src"));
+        Files.writeString(srcDir.resolve("bad.txt"), "I am ${broken!");
+        Path jarFile = testDir.resolve("templates.jar");
+
+        assertThatExceptionOfType(GenerationException.class)
+            .isThrownBy(() -> Templates.precompile(srcDir, jarFile, GenerateOptions.defaults()))
+            .satisfies(e -> assertThat(e.getFailures()).containsOnlyKeys(Path.of("bad.txt")));
+
+        assertThat(testDir).isDirectoryNotContaining("glob:**.{jar,tmp}");
+    }
+
+    private static Path writeTemplates(Path srcDir) {
+        FileUtils2.createDirectories(srcDir.resolve("sub"));
+        FileUtils2.createDirectories(srcDir.resolve("_partials"));
+        FileUtils2.writeFile(srcDir.resolve("sub/hello.txt"), "<%@ engine counting %>\n${include('_partials/hi.txt')}, ${age}");
+        FileUtils2.writeFile(srcDir.resolve("sub/copy.txt"), "<%@ engine counting %>\n${include('_partials/hi.txt')}, ${age}");
+        FileUtils2.writeFile(srcDir.resolve("_partials/hi.txt"), "<%@ engine counting %>\nHi ${name}");
+        return srcDir;
+    }
+
+    /**
+     * The dynamic engine, counting how many times it's compiled.
+     */
+    private static final class CountingEngine implements TemplateEngine {
+
+        private final AtomicInteger compiles = new AtomicInteger();
+
+        @Override
+        public String name() {
+            return "counting";
+        }
+
+        @Override
+        public TemplateScript toScript(String template, Map<String, String> variables) {
+            return TemplateEngines.DYNAMIC.toScript(template, variables);
+        }
+
+        @Override
+        public void configure(CompilerConfiguration config) {
+            compiles.incrementAndGet();
+        }
+    }
+}
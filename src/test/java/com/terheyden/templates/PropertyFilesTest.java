@@ -0,0 +1,64 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * PropertyFilesTest unit tests.
+ */
+class PropertyFilesTest {
+
+    private static final String NESTED_YAML = """
+        db:
+          host: localhost
+          ports:
+            - 5432
+            - 5433
+        """;
+
+    @Test
+    void load_byExtension() {
+
+        assertThat(PropertyFiles.load(Paths.get("src/test/resources/hocon/simple.conf")).getString("name"))
+            .isEqualTo("Cora");
+
+        assertThat(PropertyFiles.load(Paths.get("src/test/resources/simple.yaml"))).isNotEmpty();
+    }
+
+    @Test
+    void load_yamlExtension_parsedAsYaml(@TempDir Path testDir) throws Exception {
+
+        PropertyTree tree = PropertyFiles.load(Files.writeString(testDir.resolve("props.yml"), NESTED_YAML));
+
+        assertThat(tree.getString("db.host")).isEqualTo("localhost");
+        assertThat(tree.getList("db.ports")).containsExactly(5432, 5433);
+    }
+
+    @Test
+    void load_unknownExtension_sniffed(@TempDir Path testDir) throws Exception {
+
+        Path hocon = Files.writeString(testDir.resolve("props.txt"), "db { host = localhost }");
+        Path yaml = Files.writeString(testDir.resolve("props.cfg"), NESTED_YAML);
+
+        assertThat(PropertyFiles.load(hocon).getString("db.host")).isEqualTo("localhost");
+        assertThat(PropertyFiles.load(yaml).getList("db.ports")).hasSize(2);
+    }
+
+    @Test
+    void load_nullYaml_empty(@TempDir Path testDir) throws Exception {
+        assertThat(PropertyFiles.load(Files.writeString(testDir.resolve("empty.yaml"), "~\n"))).isEmpty();
+    }
+
+    @Test
+    void load_missingFile_throws(@TempDir Path testDir) {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+            .isThrownBy(() -> PropertyFiles.load(testDir.resolve("nope.yaml")));
+    }
+}
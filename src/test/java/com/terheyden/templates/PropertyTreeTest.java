@@ -0,0 +1,85 @@
+package com.terheyden.templates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * PropertyTreeTest unit tests.
+ */
+class PropertyTreeTest {
+
+    private final PropertyTree tree = PropertyTree.of(Map.of(
+        "name", "Cora",
+        "age", "12",
+        "db", Map.of(
+            "port", 5432,
+            "enabled", "TRUE",
+            "hosts", List.of("a", "b"))));
+
+    @Test
+    void typedAccessors_nestedPaths_resolved() {
+
+        assertThat(tree.getString("name")).isEqualTo("Cora");
+        assertThat(tree.getInt("age")).isEqualTo(12);
+        assertThat(tree.getInt("db.port")).isEqualTo(5432);
+        assertThat(tree.getBoolean("db.enabled")).isTrue();
+        assertThat(tree.getList("db.hosts")).containsExactly("a", "b");
+        assertThat(tree.getTree("db").getInt("port")).isEqualTo(5432);
+    }
+
+    @Test
+    void find_missingPath_empty() {
+
+        assertThat(tree.find("db.nope")).isEmpty();
+        assertThat(tree.find("name.nope")).isEmpty();
+
+        assertThatExceptionOfType(IllegalArgumentException.class)
+            .isThrownBy(() -> tree.getString("nope"))
+            .withMessageContaining("nope");
+    }
+
+    @Test
+    void typedAccessors_wrongType_throws() {
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> tree.getBoolean("name"));
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> tree.getTree("name"));
+        assertThatExceptionOfType(NumberFormatException.class).isThrownBy(() -> tree.getInt("name"));
+    }
+
+    @Test
+    void map_isReadOnly() {
+
+        assertThat(tree).containsEntry("name", "Cora").hasSize(3);
+
+        assertThatExceptionOfType(UnsupportedOperationException.class).isThrownBy(() -> tree.put("name", "Anna"));
+        assertThatExceptionOfType(UnsupportedOperationException.class).isThrownBy(tree::clear);
+    }
+
+    @Test
+    void of_nestedValues_readOnlyCopies() {
+
+        Map<String, Object> db = new HashMap<>(Map.of("host", "db1"));
+        Map<String, Object> root = new HashMap<>(Map.of("db", db, "tags", new ArrayList<>(List.of("a"))));
+        PropertyTree copied = PropertyTree.of(root);
+
+        // The caller's maps, changed afterward.
+        db.put("host", "db2");
+        root.put("name", "Cora");
+        assertThat(copied.getString("db.host")).isEqualTo("db1");
+        assertThat(copied).doesNotContainKey("name");
+
+        assertThatExceptionOfType(UnsupportedOperationException.class)
+            .isThrownBy(() -> copied.getTree("db").put("host", "x"));
+        assertThatExceptionOfType(UnsupportedOperationException.class)
+            .isThrownBy(() -> copied.getList("tags").add("b"));
+        assertThatExceptionOfType(UnsupportedOperationException.class)
+            .isThrownBy(() -> GroovyTemplater.generate("<% db.host = 'x' %>", copied));
+        assertThat(copied.getString("db.host")).isEqualTo("db1");
+    }
+}
@@ -0,0 +1,160 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * RenderServerTest unit tests.
+ */
+class RenderServerTest {
+
+    private static final Path SIMPLE_SRC = Paths.get("src/test/resources/template-simple/src");
+
+    @TempDir
+    private Path testDir;
+
+    private RenderServer server;
+    private Thread serverThread;
+
+    @BeforeEach
+    void startServer() {
+        server = new RenderServer(testDir.resolve("test.sock"));
+        serverThread = new Thread(server::run, "test-server");
+        serverThread.start();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        server.close();
+        serverThread.join(10_000);
+        assertThat(serverThread.isAlive()).isFalse();
+        assertThat(server.getSocketFile()).doesNotExist();
+    }
+
+    @Test
+    void start_socketOwnerOnly_noPrivateDirLeft() throws Exception {
+
+        assertThat(Files.getPosixFilePermissions(server.getSocketFile()))
+            .isEqualTo(PosixFilePermissions.fromString("rw-------"));
+
+        try (Stream<Path> files = Files.list(testDir)) {
+            assertThat(files).containsExactly(server.getSocketFile());
+        }
+    }
+
+    @Test
+    void send_inlineTemplate_returnsText() {
+
+        RenderResponse response = RenderClient.send(
+            server.getSocketFile(),
+            RenderRequest.ofText("Hello ${name}", Map.of("name", "Cora")));
+
+        assertThat(response.ok()).isTrue();
+        assertThat(response.text()).isEqualTo("Hello Cora");
+    }
+
+    @Test
+    void send_templateDir_generatesFiles() throws Exception {
+
+        Path propsFile = testDir.resolve("props.yaml");
+        Files.writeString(propsFile, "name: Cora\nage: 12\n");
+        Path outDir = testDir.resolve("out");
+
+        RenderResponse response = RenderClient.send(
+            server.getSocketFile(),
+            RenderRequest.ofFiles(SIMPLE_SRC, outDir, Optional.of(propsFile), GenerateOptions.defaults()));
+
+        assertThat(response.ok()).isTrue();
+        assertThat(outDir.resolve("README.md")).content().startsWith("# Cora");
+        assertThat(outDir.resolve("etc/hello.md")).content().startsWith("# CORA");
+    }
+
+    @Test
+    void send_secureWithExcludes_appliedOnServer() throws Exception {
+
+        Path srcDir = Files.createDirectories(testDir.resolve("src"));
+        Files.writeString(srcDir.resolve("hello.txt"), "Hi ${name}");
+        Files.writeString(srcDir.resolve("skipped.txt"), "Skipped");
+        Path propsFile = Files.writeString(testDir.resolve("props.yaml"), "name: Cora\n");
+        Path outDir = testDir.resolve("out");
+        GenerateOptions options = GenerateOptions
+            .defaults()
+            .withWalk(WalkOptions.defaults().withExcludes(List.of("skipped.txt")))
+            .withLimits(RenderLimits.none().withSecure(true));
+
+        RenderResponse good = RenderClient.send(
+            server.getSocketFile(),
+            RenderRequest.ofFiles(srcDir, outDir, Optional.of(propsFile), options));
+
+        assertThat(good.ok()).isTrue();
+        assertThat(outDir.resolve("hello.txt")).hasContent("Hi Cora");
+        assertThat(outDir.resolve("skipped.txt")).doesNotExist();
+
+        Files.writeString(srcDir.resolve("sneaky.txt"), "${'touch pwned'.execute()}");
+        RenderResponse denied = RenderClient.send(
+            server.getSocketFile(),
+            RenderRequest.ofFiles(srcDir, outDir, Optional.of(propsFile), options));
+
+        assertThat(denied.ok()).isFalse();
+        assertThat(denied.error()).contains("not allowed");
+        assertThat(outDir.resolve("sneaky.txt")).doesNotExist();
+    }
+
+    @Test
+    void send_badTemplate_reportsErrorAndKeepsServing() {
+
+        RenderResponse bad = RenderClient.send(server.getSocketFile(), RenderRequest.ofText("${ oops(", Map.of()));
+        assertThat(bad.ok()).isFalse();
+        assertThat(bad.error()).isNotBlank();
+
+        RenderResponse good = RenderClient.send(server.getSocketFile(), RenderRequest.ofText("fine", Map.of()));
+        assertThat(good.text()).isEqualTo("fine");
+    }
+
+    @Test
+    void send_concurrentRequests_allServed() throws Exception {
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+
+        try {
+
+            List<Future<RenderResponse>> responses = clients.invokeAll(IntStream
+                .range(0, 32)
+                .mapToObj(i -> (Callable<RenderResponse>) () -> RenderClient.send(
+                    server.getSocketFile(),
+                    RenderRequest.ofText("Number ${num}", Map.of("num", i))))
+                .toList());
+
+            for (int i = 0; i < responses.size(); i++) {
+                assertThat(responses.get(i).get().text()).isEqualTo("Number " + i);
+            }
+
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void isListening_runningServer_true(@TempDir Path otherDir) {
+        assertThat(RenderClient.isListening(server.getSocketFile())).isTrue();
+        assertThat(RenderClient.isListening(otherDir.resolve("nope.sock"))).isFalse();
+    }
+}
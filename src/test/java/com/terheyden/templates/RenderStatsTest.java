@@ -0,0 +1,114 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * RenderStatsTest unit tests.
+ */
+class RenderStatsTest {
+
+    @Test
+    void generate_withStats_reportsEachFile(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Path outDir = testDir.resolve("out");
+        Files.createDirectories(srcDir);
+        Files.writeString(srcDir.resolve("hello.txt"), "Héllo ${name}");
+        Files.writeString(srcDir.resolve("plain.txt"), "No syntax here.");
+
+        RenderStats stats = new RenderStats();
+        GenerateOptions options = GenerateOptions.defaults().withIncremental(true).withListener(stats);
+        Templates.generate(srcDir, outDir, Map.of("name", "Cora"), options);
+
+        List<TemplateMetrics> metrics = stats
+            .getMetrics()
+            .stream()
+            .sorted(Comparator.comparing(TemplateMetrics::template))
+            .toList();
+
+        assertThat(metrics).hasSize(2);
+
+        TemplateMetrics hello = metrics.get(0);
+        assertThat(hello.template()).isEqualTo(Path.of("hello.txt"));
+        assertThat(hello.copied()).isFalse();
+        // The é is two bytes.
+        assertThat(hello.outputBytes()).isEqualTo(Files.size(outDir.resolve("hello.txt"))).isEqualTo(11);
+        assertThat(hello.compileNanos()).isPositive();
+
+        TemplateMetrics plain = metrics.get(1);
+        assertThat(plain.copied()).isTrue();
+        assertThat(plain.outputBytes()).isEqualTo(15);
+
+        // Nothing changed, so the second run skips both.
+        RenderStats secondStats = new RenderStats();
+        Templates.generate(srcDir, outDir, Map.of("name", "Cora"), options.withListener(secondStats));
+
+        assertThat(secondStats.getMetrics()).isEmpty();
+        assertThat(stats.report())
+            .contains("Generated 2 files (1 rendered, 1 copied as-is), skipped 0 unchanged")
+            .contains("hello.txt")
+            .contains("plain.txt (copied)");
+        assertThat(secondStats.report()).contains("skipped 2 unchanged");
+    }
+
+    @Test
+    void generate_failedFiles_counted(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Files.createDirectories(srcDir);
+        Files.writeString(srcDir.resolve("good.txt"), "Hello ${name}");
+        Files.writeString(srcDir.resolve("bad.txt"), "I am ${broken!");
+
+        RenderStats stats = new RenderStats();
+
+        assertThatExceptionOfType(GenerationException.class).isThrownBy(() -> Templates.generate(
+            srcDir,
+            testDir.resolve("out"),
+            Map.of("name", "Cora"),
+            GenerateOptions.defaults().withListener(stats)));
+
+        assertThat(stats.report()).contains("Generated 1 files (1 rendered, 0 copied as-is), skipped 0 unchanged, 1 failed");
+    }
+
+    @Test
+    void generate_jfrRecording_hasRenderEvents(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Files.createDirectories(srcDir);
+        Files.writeString(srcDir.resolve("hello.txt"), "Hello ${name}");
+
+        Path recordingFile = testDir.resolve("run.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(TemplateRenderEvent.class);
+            recording.start();
+            Templates.generate(srcDir, testDir.resolve("out"), Map.of("name", "Cora"));
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile
+            .readAllEvents(recordingFile)
+            .stream()
+            .filter(event -> event.getEventType().getName().equals("com.terheyden.templates.TemplateRender"))
+            .toList();
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getString("template")).isEqualTo("hello.txt");
+        assertThat(events.get(0).getLong("outputBytes")).isEqualTo(10);
+    }
+}
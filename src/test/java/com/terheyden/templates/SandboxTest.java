@@ -0,0 +1,166 @@
+package com.terheyden.templates;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import groovy.text.Template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SandboxTest unit tests.
+ */
+class SandboxTest {
+
+    private static final Map<String, Object> PROPS = Map.of("name", "Cora", "items", List.of(1, 2, 3));
+
+    @Test
+    void render_endlessLoop_timesOut() {
+
+        Template compiled = GroovyTemplater.compile("Hi <% while (true) { } %>");
+        RenderLimits limits = RenderLimits.none().withTimeout(Duration.ofMillis(200));
+
+        assertThatExceptionOfType(TemplateLimitException.class)
+            .isThrownBy(() -> Sandbox.render(compiled, PROPS, new StringWriter(), limits))
+            .withMessageContaining("longer than the limit");
+
+        // The thread isn't left interrupted, and a good template still renders.
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+        StringWriter writer = new StringWriter();
+        Sandbox.render(GroovyTemplater.compile("Hi ${name}"), PROPS, writer, limits);
+        assertThat(writer).hasToString("Hi Cora");
+    }
+
+    @Test
+    void render_timeoutAboutRenderTime_threadNeverLeftInterrupted() throws Exception {
+
+        Template compiled = GroovyTemplater.compile("<% long end = System.nanoTime() + 1_000_000; while (System.nanoTime() < end) { } %>x");
+        RenderLimits limits = RenderLimits.none().withTimeout(Duration.ofMillis(1));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+
+        try {
+
+            // Renders that finish just as the watchdog fires, one after another on the same thread.
+            int leftInterrupted = pool.submit(() -> {
+
+                int count = 0;
+
+                for (int i = 0; i < 500; i++) {
+                    try {
+                        Sandbox.render(compiled, PROPS, new StringWriter(), limits);
+                    } catch (TemplateLimitException e) {
+                        // Either is fine; it's close.
+                    }
+
+                    // Give a late watchdog a moment to (wrongly) interrupt us.
+                    Thread.sleep(0, 50_000);
+                    count += Thread.interrupted() ? 1 : 0;
+                }
+
+                return count;
+            }).get();
+
+            assertThat(leftInterrupted).isZero();
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void alarm_ringsAfterStop_noInterrupt() {
+
+        Sandbox.Alarm alarm = new Sandbox.Alarm(Thread.currentThread());
+        assertThat(alarm.stop()).isFalse();
+        alarm.ring();
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+
+        Sandbox.Alarm rung = new Sandbox.Alarm(Thread.currentThread());
+        rung.ring();
+        assertThat(rung.stop()).isTrue();
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+
+    @Test
+    void render_tooMuchOutput_fails() {
+
+        Template compiled = GroovyTemplater.compile("<% 1000.times { %>0123456789<% } %>");
+
+        StringWriter writer = new StringWriter();
+        Sandbox.render(compiled, PROPS, writer, RenderLimits.none().withMaxOutputBytes(10_000));
+        assertThat(writer.toString()).hasSize(10_000);
+
+        assertThatExceptionOfType(TemplateLimitException.class)
+            .isThrownBy(() -> Sandbox.render(
+                compiled,
+                PROPS,
+                new StringWriter(),
+                RenderLimits.none().withMaxOutputBytes(9_999)))
+            .withMessageContaining("over the limit of 9999 bytes");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "${System.getenv('HOME')}",
+        "${new File('/etc/passwd').text}",
+        "${new java.io.File('/etc/passwd').text}",
+        "${'ls'.execute().text}",
+        "${name.class.forName('java.lang.Runtime')}",
+        "${Eval.me('1 + 1')}",
+        "<% Runtime.getRuntime().exit(1) %>",
+        "${java.nio.file.Files.readString(java.nio.file.Path.of('/etc/passwd'))}",
+        "<% def f = 'class' %>${name.\"$f\"}",
+        "<% def m = 'execute' %>${'id'.\"$m\"()}",
+    })
+    void compile_secure_rejectsEscapes(String template) {
+        assertThatThrownBy(() -> GroovyTemplater.compile(template, true, () -> { }))
+            .hasMessageContaining("not allowed");
+    }
+
+    @Test
+    void compile_secure_allowsNormalTemplates() {
+
+        Template compiled = GroovyTemplater.compile(
+            "<% items.each { %>${slugify(name)}-${it} <% } %>${var('missing', 'Missing', 'x')}",
+            true,
+            () -> { });
+
+        StringWriter writer = new StringWriter();
+        Sandbox.render(compiled, PROPS, writer, RenderLimits.none().withSecure(true));
+        assertThat(writer).hasToString("cora-1 cora-2 cora-3 x");
+    }
+
+    @Test
+    void generate_limits_failTheBadTemplateOnly(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Path outDir = testDir.resolve("out");
+        Files.createDirectories(srcDir);
+        Files.writeString(srcDir.resolve("good.txt"), "Hi ${name}");
+        Files.writeString(srcDir.resolve("loop.txt"), "<% while (true) { } %>");
+        Files.writeString(srcDir.resolve("sneaky.txt"), "${System.exit(1)}");
+
+        GenerateOptions options = GenerateOptions
+            .defaults()
+            .withLimits(RenderLimits.none().withSecure(true).withTimeout(Duration.ofMillis(200)));
+
+        assertThatExceptionOfType(GenerationException.class)
+            .isThrownBy(() -> Templates.generate(srcDir, outDir, PROPS, options))
+            .satisfies(e -> assertThat(e.getFailures()).containsOnlyKeys(Path.of("loop.txt"), Path.of("sneaky.txt")));
+
+        assertThat(outDir.resolve("good.txt")).hasContent("Hi Cora");
+    }
+}
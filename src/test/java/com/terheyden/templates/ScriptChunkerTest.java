@@ -0,0 +1,107 @@
+package com.terheyden.templates;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ScriptChunkerTest unit tests.
+ * These templates are all far too big to compile into a single method.
+ */
+class ScriptChunkerTest {
+
+    private static final int LINES = 5_000;
+    private static final String CLASS_NAME = "ChunkerTest";
+
+    private final Map<String, Object> varMap = Map.of("name", "Cora");
+
+    @Test
+    void call_manyExpressions_splitsAndRendersTheSame() {
+
+        String template = lines(i -> "Line ${" + i + "}: ${name} <%= name.length() %>\n");
+        String expected = lines(i -> "Line " + i + ": Cora 4\n");
+
+        Map<String, byte[]> classes = compile(template);
+        assertThat(classes).hasSizeGreaterThan(2);
+        assertThat(render(classes)).isEqualTo(expected);
+    }
+
+    @Test
+    void call_hugeLiteralText_rendersTheSame() {
+
+        // Several times the 64KB limit on a single string constant, with no syntax to break it up.
+        String template = "Hi ${name}\n" + lines(i -> "Plain \"text\" \\ with 'quotes' and backslashes.\n");
+        String expected = "Hi Cora\n" + lines(i -> "Plain \"text\" \\ with 'quotes' and backslashes.\n");
+
+        assertThat(render(compile(template))).isEqualTo(expected);
+    }
+
+    @Test
+    void call_localsAndBlocks_keptInScope() {
+
+        // The local is declared first and used last, with a big loop and lots of text in between.
+        String template = "<% def total = 0 %>"
+            + "<% [1, 2, 3].each { n -> %>"
+            + lines(i -> "${n}:" + i + "<% total += n %>\n")
+            + "<% } %>"
+            + lines(i -> "${name}\n")
+            + "Total: ${total}";
+
+        String expected = IntStream.rangeClosed(1, 3)
+            .mapToObj(n -> lines(i -> n + ":" + i + "\n"))
+            .collect(Collectors.joining())
+            + lines(i -> "Cora\n")
+            + "Total: " + (6 * LINES);
+
+        assertThat(render(compile(template))).isEqualTo(expected);
+    }
+
+    @Test
+    void call_earlyReturn_notSplit() {
+
+        // Big enough to split, but still small enough to compile into one method.
+        String template = lines(500, i -> "${name} ${" + i + "}\n") + "<% return %>Never printed.";
+        String expected = lines(500, i -> "Cora " + i + "\n");
+
+        Map<String, byte[]> classes = compile(template);
+        assertThat(classes).hasSize(1);
+        assertThat(render(classes)).isEqualTo(expected);
+    }
+
+    @Test
+    void call_smallTemplate_notSplit() {
+        assertThat(compile("Hello ${name}!")).hasSize(1);
+    }
+
+    private static String lines(IntFunction<String> line) {
+        return lines(LINES, line);
+    }
+
+    private static String lines(int count, IntFunction<String> line) {
+        return IntStream.range(0, count).mapToObj(line::apply).collect(Collectors.joining());
+    }
+
+    /**
+     * @return class name to bytecode: the script's class, plus a class for each closure
+     */
+    private static Map<String, byte[]> compile(String template) {
+        return TemplateCompiler.compileToBytecode(
+            TemplateEngines.DYNAMIC,
+            GroovyTemplater.toScript(template),
+            CLASS_NAME,
+            false);
+    }
+
+    private String render(Map<String, byte[]> classes) {
+        return TemplateCompiler
+            .load(classes, CLASS_NAME, TemplateScript.of(""))
+            .make(new HashMap<>(varMap))
+            .toString();
+    }
+}
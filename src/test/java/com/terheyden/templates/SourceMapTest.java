@@ -0,0 +1,94 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import groovy.lang.MissingMethodException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SourceMapTest unit tests.
+ */
+class SourceMapTest {
+
+    private static final Optional<Path> PAGE = Optional.of(Path.of("dir/page.txt"));
+
+    @Test
+    void position_scriptLineAndColumn_templateLineAndColumn() {
+
+        TemplateScript script = TemplateParser.parse("Hi \"you\"\n<% if (x) { %>\n  ${name}\n<% } %>");
+
+        List<String> scriptLines = script.source().lines().toList();
+        int line = scriptLines.indexOf("  ${name}") + 1;
+        int column = scriptLines.get(line - 1).indexOf("name") + 1;
+
+        assertThat(script.position(line, column)).contains(new SourceMap.Position(3, 5));
+        assertThat(script.position(line)).contains(new SourceMap.Position(3, 1));
+        assertThat(TemplateScript.of(script.source()).position(line, column)).isEmpty();
+    }
+
+    @Test
+    void compile_syntaxError_reportsTemplatePosition() {
+
+        String template = "<%@ engine dynamic %>\nHello ${name}\n<%-- comment\n--%>\n<% if (true) { %>\n  <% 1 + %>\n<% } %>";
+
+        assertThatThrownBy(() -> GroovyTemplater.compile(PAGE, template, false, () -> { }))
+            .isInstanceOf(TemplateCompileException.class)
+            .hasMessageStartingWith("page.txt:6:");
+    }
+
+    @Test
+    void compile_staticTypeError_reportsTemplatePosition() {
+
+        String template = """
+            <%@ engine static %>
+            <%@ var com.terheyden.templates.TestUser user %>
+            Hi,
+              ${user.nickname}""";
+
+        assertThatThrownBy(() -> GroovyTemplater.compile(PAGE, template, false, () -> { }))
+            .isInstanceOf(TemplateCompileException.class)
+            .hasMessageStartingWith("page.txt:4:5: ")
+            .hasMessageContaining("nickname");
+    }
+
+    @Test
+    void render_runtimeError_stackTraceHasTemplateLines() {
+
+        String template = "Hi\n<% 2.times { %>\n  ${name.nope()}\n<% } %>";
+
+        assertThatThrownBy(() -> GroovyTemplater.compile(PAGE, template, false, () -> { })
+            .make(Map.of("name", "Cora"))
+            .toString())
+            .isInstanceOf(MissingMethodException.class)
+            .satisfies(e -> assertThat(Arrays.stream(e.getStackTrace()))
+                .anySatisfy(frame -> {
+                    assertThat(frame.getFileName()).isEqualTo("page.txt");
+                    assertThat(frame.getLineNumber()).isEqualTo(3);
+                }));
+    }
+
+    @Test
+    void render_sameScriptDifferentTemplate_reportsItsOwnNameAndLines() {
+
+        String body = "Hi\n${name.nope()}";
+        GroovyTemplater.compile(PAGE, body, false, () -> { });
+
+        // Same script, so the same cached class, but another name and a header that shifts its lines.
+        assertThatThrownBy(() -> GroovyTemplater.compile(Optional.of(Path.of("other.txt")), "<%@ engine dynamic %>\n" + body, false, () -> { })
+            .make(Map.of("name", "Cora"))
+            .toString())
+            .satisfies(e -> assertThat(Arrays.stream(e.getStackTrace()))
+                .anySatisfy(frame -> {
+                    assertThat(frame.getFileName()).isEqualTo("other.txt");
+                    assertThat(frame.getLineNumber()).isEqualTo(3);
+                }));
+    }
+}
@@ -0,0 +1,67 @@
+package com.terheyden.templates;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import groovy.text.SimpleTemplateEngine;
+import groovy.text.Template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * TemplateCacheTest unit tests.
+ */
+class TemplateCacheTest {
+
+    private final SimpleTemplateEngine engine = new SimpleTemplateEngine();
+    private final AtomicInteger compiles = new AtomicInteger();
+
+    private Template compile(String text) {
+        try {
+            compiles.incrementAndGet();
+            return engine.createTemplate(text);
+        } catch (Exception e) {
+            return Exceptions.throwUnchecked(e);
+        }
+    }
+
+    @Test
+    void get_sameKey_compilesOnce() {
+
+        TemplateCache cache = new TemplateCache(10);
+        Template first = cache.get("a", () -> compile("Hello"));
+        Template second = cache.get("a", () -> compile("Hello"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(compiles).hasValue(1);
+        assertThat(cache.stats()).isEqualTo(new TemplateCache.Stats(1, 1, 0, 1));
+        assertThat(cache.stats().hitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void get_overCapacity_evictsLeastRecentlyUsed() {
+
+        TemplateCache cache = new TemplateCache(2);
+        cache.get("a", () -> compile("A"));
+        cache.get("b", () -> compile("B"));
+        // Touch 'a' so 'b' is the least recently used.
+        cache.get("a", () -> compile("A"));
+        cache.get("c", () -> compile("C"));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.stats().evictions()).isEqualTo(1);
+
+        // 'a' survived, 'b' was evicted.
+        cache.get("a", () -> compile("A"));
+        assertThat(compiles).hasValue(3);
+        cache.get("b", () -> compile("B"));
+        assertThat(compiles).hasValue(4);
+    }
+
+    @Test
+    void constructor_badSize_throws() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new TemplateCache(0));
+    }
+}
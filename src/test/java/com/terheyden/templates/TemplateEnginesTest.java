@@ -0,0 +1,146 @@
+package com.terheyden.templates;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import groovy.text.Template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * TemplateEnginesTest unit tests.
+ */
+class TemplateEnginesTest {
+
+    // Groovy's static compiler can't use record properties (user.name), only their accessors.
+    private static final String LOOP = "<% for (user in users) { %>${user.name().toUpperCase()}: ${user.age() * 2}, <% } %>";
+
+    private final Map<String, Object> varMap = Map.of(
+        "name", "Cora",
+        "user", new TestUser("Tashi", 8),
+        "users", List.of(new TestUser("a", 1), new TestUser("b", 2)));
+
+    @AfterEach
+    void unregisterEngines() {
+        TemplateEngines.unregister("constant");
+    }
+
+    @Test
+    void compile_staticHeader_rendersLikeDynamic() {
+
+        String template = """
+            <%@ engine static %>
+            <%@ var List<com.terheyden.templates.TestUser> users %>
+            <%@ var String name %>
+            """ + "Hi ${name.toUpperCase()}! " + LOOP;
+
+        assertThat(render(template)).isEqualTo("Hi CORA! A: 2, B: 4, ");
+        assertThat(render(LOOP)).isEqualTo("A: 2, B: 4, ");
+    }
+
+    @Test
+    void compile_staticUndeclaredVariables_resolvedDynamically() {
+
+        String template = """
+            <%@ engine static %>
+            <%@ var com.terheyden.templates.TestUser user %>
+            ${user.name()} is ${user.age()}, ${name.toLowerCase()} is ${name.length()}.""";
+
+        assertThat(render(template)).isEqualTo("Tashi is 8, cora is 4.");
+    }
+
+    @Test
+    void compile_staticNothingDeclared_usesDynamic() {
+        assertThat(render("<%@ engine static %>\n${name * 2}, " + LOOP)).isEqualTo("CoraCora, A: 2, B: 4, ");
+    }
+
+    @Test
+    void compile_staticTypeErrors_failToCompile() {
+
+        String header = """
+            <%@ engine static %>
+            <%@ var com.terheyden.templates.TestUser user %>
+            """;
+
+        assertThatThrownBy(() -> GroovyTemplater.compile(header + "${user.nickname}"))
+            .hasMessageContaining("nickname");
+
+        // Operators need typed operands.
+        assertThatThrownBy(() -> GroovyTemplater.compile(header + "${name * 2}"))
+            .hasMessageContaining("multiply");
+    }
+
+    @Test
+    void compile_byExtension_headerWins() {
+
+        TemplateEngines.register(new ConstantEngine("constant"));
+        TemplateEngines.useForExtension("const", "constant");
+
+        Optional<Path> constFile = Optional.of(Path.of("dir/file.CONST"));
+        assertThat(render(constFile, "Hi ${name}")).isEqualTo("constant");
+        assertThat(render(constFile, "<%@ engine dynamic %>\nHi ${name}")).isEqualTo("Hi Cora");
+        assertThat(render(Optional.of(Path.of("file.txt")), "Hi ${name}")).isEqualTo("Hi Cora");
+    }
+
+    @Test
+    void unregister_engine_extensionsFallBackToDynamic() {
+
+        TemplateEngines.register(new ConstantEngine("constant"));
+        TemplateEngines.useForExtension("const", "constant");
+        TemplateEngines.unregister("constant");
+
+        assertThat(render(Optional.of(Path.of("file.const")), "Hi ${name}")).isEqualTo("Hi Cora");
+        assertThatThrownBy(() -> TemplateEngines.get("constant")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> TemplateEngines.unregister("dynamic")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void compile_unknownEngine_throws() {
+
+        assertThatThrownBy(() -> GroovyTemplater.compile("<%@ engine nope %>\nHi"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("nope");
+
+        assertThatThrownBy(() -> TemplateEngines.useForExtension("txt", "nope"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void parse_header_strippedFromBody() {
+
+        TemplateHeader header = TemplateHeader.parse("<%@ engine static %>\r\n<%@ var Map<String, Integer> counts %>\n<%@Field def x %>");
+
+        assertThat(header.engine()).contains("static");
+        assertThat(header.variables()).containsExactly(Map.entry("counts", "Map<String, Integer>"));
+        assertThat(header.body()).isEqualTo("<%@Field def x %>");
+        assertThat(header.bodyLine()).isEqualTo(3);
+        assertThat(TemplateHeader.parse("Hi <%@ engine static %>").engine()).isEmpty();
+    }
+
+    private String render(String template) {
+        return render(Optional.empty(), template);
+    }
+
+    private String render(Optional<Path> templateFile, String template) {
+        Template compiled = GroovyTemplater.compile(templateFile, template, false, () -> { });
+        return compiled.make(new HashMap<>(varMap)).toString();
+    }
+
+    /**
+     * Always prints its name.
+     */
+    private record ConstantEngine(String name) implements TemplateEngine {
+
+        @Override
+        public TemplateScript toScript(String template, Map<String, String> variables) {
+            return TemplateScript.of("out.print('" + name + "')");
+        }
+    }
+}
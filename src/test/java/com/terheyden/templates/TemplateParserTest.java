@@ -0,0 +1,163 @@
+package com.terheyden.templates;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import groovy.text.SimpleTemplateEngine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * TemplateParserTest unit tests.
+ * Our translation must render exactly like {@link SimpleTemplateEngine}'s.
+ */
+class TemplateParserTest {
+
+    private final Map<String, Object> varMap = Map.of(
+        "name", "Cora",
+        "verbose", true,
+        "user", new TestUser("Tashi", 8),
+        "items", List.of("a", "b")
+    );
+
+    @Test
+    void parse_decrementBeforeTagEnd_notWhitespaceControl() {
+        assertThat(render("<% def i = 3 %><% i--%>${i}\n<%= i-- -%>\n${i}")).isEqualTo("2\n21");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "",
+        "Plain text, \"quoted\", with <angles> and 100%.",
+        "Hello ${name}, $user.name is ${user.age} years old.",
+        "Hi <%= name %>. Hey <% print name %>. <%= 10 % 3 %>",
+        "Multi\r\nline\rtext\n${\nname\n}\n",
+        "<% if (verbose) { %>Verbose<% } else { %>Quiet<% } %>",
+        "<% 3.times { i -> %>${i}, <% } %>done",
+        "Line join \\\nhere",
+    })
+    void toScript_sameOutputAsSimpleTemplateEngine(String template) throws Exception {
+        assertThat(render(template)).isEqualTo(renderWithSimpleTemplateEngine(template));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = "src/test/resources/templates/syntax.txt")
+    void toScript_templateFile_sameOutputAsSimpleTemplateEngine(String templateFile) throws Exception {
+
+        String template = FileUtils2.readFile(Paths.get(templateFile));
+        assertThat(render(template)).isEqualTo(renderWithSimpleTemplateEngine(template));
+    }
+
+    @Test
+    void parse_backslashes_literalExceptAtLineEnd() {
+
+        String template = "C:\\dir, \\\\server\\share, \\t, \\${name}, <% print 'x\\y' %>, joined \\\nhere";
+
+        assertThat(render(template)).isEqualTo("C:\\dir, \\\\server\\share, \\t, \\Cora, x\\y, joined here");
+    }
+
+    @Test
+    void parse_comments_dropped() {
+        assertThat(render("a<%-- ${nope} <% nope %>\n<%= nope %> --%>b<%-- unclosed")).isEqualTo("ab");
+    }
+
+    @Test
+    void parse_whitespaceControl_dropsTagLines() {
+
+        String template = """
+            <ul>
+              <%- for (item in items) { -%>
+              <li>${item}</li>
+              <%- } -%>
+            </ul>
+            x <%- print 1 -%>
+            <%= 2 -%>\r
+            3""";
+
+        assertThat(render(template)).isEqualTo("<ul>\n  <li>a</li>\n  <li>b</li>\n</ul>\nx 123");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "",
+        "Plain text, \"quoted\", with <angles> and 100%.",
+        "Backslashes: C:\\dir\\file and \\t.",
+        "Multi\nline\n",
+    })
+    void isLiteral_noSyntax_rendersToItself(String template, @TempDir Path testDir) throws Exception {
+
+        Path templateFile = Files.writeString(testDir.resolve("literal.txt"), template);
+
+        assertThat(TemplateParser.isLiteral(templateFile)).isTrue();
+        assertThat(GroovyTemplater.generate(template, varMap)).isEqualTo(template);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "Hello ${name}",
+        "Hello $name",
+        "<% print name %>",
+        "Line join \\\nhere",
+        "Line join \\\r\nhere",
+        "Trailing backslash \\",
+    })
+    void isLiteral_templateSyntax_false(String template, @TempDir Path testDir) throws Exception {
+        Path templateFile = Files.writeString(testDir.resolve("template.txt"), template);
+        assertThat(TemplateParser.isLiteral(templateFile)).isFalse();
+    }
+
+    @Test
+    void isLiteral_binaryWithSyntaxBytes_true(@TempDir Path testDir) throws Exception {
+
+        byte[] nul = {(byte) 0x89, 'P', 'N', 'G', 0x00, '$', '{', 'x', '}'};
+        byte[] notUtf8 = {'C', 'a', 'f', (byte) 0xE9, '\n'};
+        // The é straddles the first read.
+        byte[] utf8 = ("a".repeat(8191) + "é ${name}").getBytes(StandardCharsets.UTF_8);
+
+        assertThat(TemplateParser.isLiteral(Files.write(testDir.resolve("nul.png"), nul))).isTrue();
+        assertThat(TemplateParser.isLiteral(Files.write(testDir.resolve("latin1.txt"), notUtf8))).isTrue();
+        assertThat(TemplateParser.isLiteral(Files.write(testDir.resolve("utf8.txt"), utf8))).isFalse();
+    }
+
+    @Test
+    void isLiteral_notUtf8WithSyntax_throws(@TempDir Path testDir) throws Exception {
+
+        // Windows-1252, with the syntax well past the bad byte.
+        byte[] cp1252 = ("Caf\u00e9 " + "a".repeat(9000) + " ${name}").getBytes(StandardCharsets.ISO_8859_1);
+        Path templateFile = Files.write(testDir.resolve("cp1252.txt"), cp1252);
+
+        assertThatThrownBy(() -> TemplateParser.isLiteral(templateFile))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("isn't UTF-8")
+            .hasMessageContaining("cp1252.txt");
+    }
+
+    private String render(String template) {
+
+        TemplateScript script = TemplateParser.parse(template);
+        String className = "ParserTest_" + Integer.toHexString(template.hashCode());
+
+        return TemplateCompiler
+            .load(TemplateCompiler.compileToBytecode(TemplateEngines.DYNAMIC, script, className, false), className, script)
+            .make(new HashMap<>(varMap))
+            .toString();
+    }
+
+    private String renderWithSimpleTemplateEngine(String template) throws Exception {
+        return new SimpleTemplateEngine()
+            .createTemplate(template)
+            .make(new HashMap<>(varMap))
+            .toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * TemplateWatcherTest unit tests.
+ */
+class TemplateWatcherTest {
+
+    /**
+     * Some platforms poll for changes, so be generous.
+     */
+    private static final long TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    @Test
+    void run_templatesChange_outputsFollow(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Path outDir = testDir.resolve("out");
+        Files.createDirectories(srcDir.resolve("sub"));
+        Files.writeString(srcDir.resolve("hello.txt"), "Hello ${name}");
+        Files.writeString(srcDir.resolve("sub/bye.txt"), "Bye ${name}");
+
+        Map<String, Object> props = new HashMap<>(Map.of("name", "Cora"));
+
+        TemplateWatcher watcher = new TemplateWatcher(
+            srcDir,
+            outDir,
+            Optional.empty(),
+            () -> props,
+            GenerateOptions.defaults(),
+            Duration.ofMillis(50));
+
+        Thread thread = new Thread(watcher::run, "watcher");
+        thread.start();
+
+        try {
+
+            // Everything is generated up front.
+            await(() -> hasContent(outDir.resolve("hello.txt"), "Hello Cora"));
+            await(() -> hasContent(outDir.resolve("sub/bye.txt"), "Bye Cora"));
+
+            // Changed.
+            Files.writeString(srcDir.resolve("hello.txt"), "Hi ${name}");
+            await(() -> hasContent(outDir.resolve("hello.txt"), "Hi Cora"));
+
+            // Added, in a new dir.
+            Files.createDirectories(srcDir.resolve("new"));
+            Files.writeString(srcDir.resolve("new/new.txt"), "New ${name}");
+            await(() -> hasContent(outDir.resolve("new/new.txt"), "New Cora"));
+
+            // Deleted.
+            Files.delete(srcDir.resolve("sub/bye.txt"));
+            await(() -> Files.notExists(outDir.resolve("sub/bye.txt")));
+
+            // A bad template doesn't stop the watcher.
+            Files.writeString(srcDir.resolve("bad.txt"), "${ oops(");
+            Files.writeString(srcDir.resolve("hello.txt"), "Hey ${name}");
+            await(() -> hasContent(outDir.resolve("hello.txt"), "Hey Cora"));
+
+        } finally {
+            watcher.close();
+            thread.join(TIMEOUT_MS);
+        }
+
+        assertThat(thread.isAlive()).isFalse();
+    }
+
+    @Test
+    void run_propertiesChange_regeneratesEverything(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Path outDir = testDir.resolve("out");
+        Path propsFile = testDir.resolve("props.yaml");
+        Files.createDirectories(srcDir);
+        Files.writeString(srcDir.resolve("hello.txt"), "Hello ${name}");
+        Files.writeString(propsFile, "name: Cora\n");
+
+        TemplateWatcher watcher = new TemplateWatcher(
+            srcDir,
+            outDir,
+            Optional.of(propsFile),
+            () -> YamlMapper.yamlToMap(FileUtils2.readFile(propsFile)),
+            GenerateOptions.defaults(),
+            Duration.ofMillis(50));
+
+        Thread thread = new Thread(watcher::run, "watcher");
+        thread.start();
+
+        try {
+
+            await(() -> hasContent(outDir.resolve("hello.txt"), "Hello Cora"));
+            Files.writeString(propsFile, "name: Anna\n");
+            await(() -> hasContent(outDir.resolve("hello.txt"), "Hello Anna"));
+
+        } finally {
+            watcher.close();
+            thread.join(TIMEOUT_MS);
+        }
+    }
+
+    private static boolean hasContent(Path file, String content) {
+        try {
+            return Files.isRegularFile(file) && Files.readString(file).equals(content);
+        } catch (Exception e) {
+            // Probably mid-write.
+            return false;
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("Timed out waiting for the watcher").isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+}
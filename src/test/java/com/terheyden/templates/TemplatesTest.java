@@ -1,13 +1,27 @@
 package com.terheyden.templates;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 /**
  * TemplatesTest unit tests.
@@ -46,4 +60,232 @@ class TemplatesTest {
                 Hello.
                 """);
     }
+
+    @Test
+    void generate_singleThread_sameOutput(@TempDir Path testOutDir) {
+
+        Templates.generate(SIMPLE_SRC, testOutDir, varMap, GenerateOptions.defaults().withThreads(1));
+
+        assertThat(testOutDir.resolve("README.md")).content().startsWith("# Cora");
+        assertThat(testOutDir.resolve("etc/hello.md")).content().startsWith("# CORA");
+    }
+
+    @Test
+    void generate_literalFiles_copiedByteForByte(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Path outDir = testDir.resolve("out");
+        Files.createDirectories(srcDir);
+
+        // Not valid UTF-8, and Windows line endings; rendering would mangle both.
+        byte[] binary = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x00, (byte) 0xFF, (byte) 0xFE, '\r', '\n'};
+        Files.write(srcDir.resolve("image.png"), binary);
+        Files.writeString(srcDir.resolve("hello.txt"), "Hi ${name}");
+
+        // Bytes that happen to look like template syntax.
+        byte[] syntaxBinary = {(byte) 0x89, 'P', 'N', 'G', 0x00, '$', '{', 'x', '}', '<', '%', (byte) 0xFF};
+        Files.write(srcDir.resolve("dollar.png"), syntaxBinary);
+
+        Templates.generate(srcDir, outDir, varMap);
+
+        assertThat(outDir.resolve("image.png")).hasBinaryContent(binary);
+        assertThat(outDir.resolve("dollar.png")).hasBinaryContent(syntaxBinary);
+        assertThat(outDir.resolve("hello.txt")).hasContent("Hi Cora");
+    }
+
+    @Test
+    void generate_someBadTemplates_reportsAllFailures(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Path outDir = testDir.resolve("out");
+        Files.createDirectories(srcDir.resolve("sub"));
+        Files.writeString(srcDir.resolve("good.txt"), "Hi ${name}");
+        Files.writeString(srcDir.resolve("bad1.txt"), "I am ${broken!");
+        Files.writeString(srcDir.resolve("sub/bad2.txt"), "I am ${alsoBroken!");
+
+        assertThatExceptionOfType(GenerationException.class)
+            .isThrownBy(() -> Templates.generate(srcDir, outDir, varMap, GenerateOptions.defaults().withThreads(4)))
+            .withMessageStartingWith("2 of 3 template files failed")
+            .satisfies(e -> assertThat(e.getFailures())
+                .containsOnlyKeys(Path.of("bad1.txt"), Path.of("sub/bad2.txt")));
+
+        // The good file was still generated.
+        assertThat(outDir.resolve("good.txt")).hasContent("Hi Cora");
+    }
+
+    @Test
+    void generate_manyFilesWithExcludes_onlyIncludedGenerated(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Path outDir = testDir.resolve("out");
+
+        // More files than the executor queue holds, so the walk has to wait for the workers.
+        for (int i = 0; i < 200; i++) {
+            Path file = srcDir.resolve("dir" + i % 10).resolve("file" + i + ".txt");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "${name} " + i);
+        }
+
+        Files.createDirectories(srcDir.resolve("skipped"));
+        Files.writeString(srcDir.resolve("skipped/file.txt"), "${name}");
+
+        GenerateOptions options = GenerateOptions
+            .defaults()
+            .withThreads(2)
+            .withWalk(WalkOptions.defaults().withExcludes(List.of("/skipped/", "file7.txt")));
+
+        Templates.generate(srcDir, outDir, varMap, options);
+
+        assertThat(FileUtils2.findFiles(outDir)).hasSize(199);
+        assertThat(outDir.resolve("dir3/file123.txt")).hasContent("Cora 123");
+        assertThat(outDir.resolve("dir7/file7.txt")).doesNotExist();
+        assertThat(outDir.resolve("skipped")).doesNotExist();
+    }
+
+    @ParameterizedTest
+    @EnumSource(Durability.class)
+    void generate_anyDurability_writesEverything(Durability durability, @TempDir Path testOutDir) {
+
+        GenerateOptions options = GenerateOptions.defaults().withDurability(durability);
+        Templates.generate(SIMPLE_SRC, testOutDir, varMap, options);
+        // Again, to replace the files.
+        Templates.generate(SIMPLE_SRC, testOutDir, varMap, options.withIncremental(true));
+
+        assertThat(testOutDir.resolve("etc/hello.md")).content().startsWith("# CORA");
+        assertThat(FileUtils2.findFiles(testOutDir).map(file -> file.getFileName().toString()))
+            .noneMatch(name -> name.endsWith(".tmp"));
+    }
+
+    @Test
+    void generate_incremental_onlyRewritesChangedFiles(@TempDir Path testOutDir) throws Exception {
+
+        GenerateOptions incremental = GenerateOptions.defaults().withIncremental(true);
+        Path readme = testOutDir.resolve("README.md");
+        Path hello = testOutDir.resolve("etc/hello.md");
+
+        Templates.generate(SIMPLE_SRC, testOutDir, varMap, incremental);
+        assertThat(testOutDir.resolve(GenerationManifest.FILE_NAME)).isRegularFile();
+
+        // Backdate the outputs so we can tell if they're rewritten.
+        FileTime longAgo = FileTime.from(Instant.parse("2001-01-01T00:00:00Z"));
+        Files.setLastModifiedTime(readme, longAgo);
+        Files.setLastModifiedTime(hello, longAgo);
+
+        // Nothing changed.
+        Templates.generate(SIMPLE_SRC, testOutDir, varMap, incremental);
+        assertThat(Files.getLastModifiedTime(readme)).isEqualTo(longAgo);
+        assertThat(Files.getLastModifiedTime(hello)).isEqualTo(longAgo);
+
+        // Props changed, but hello.md doesn't use 'age', so its output is the same and it isn't rewritten.
+        Templates.generate(SIMPLE_SRC, testOutDir, Map.of("name", "Cora", "age", 13), incremental);
+        assertThat(readme).content().contains("13 years old");
+        assertThat(Files.getLastModifiedTime(readme)).isNotEqualTo(longAgo);
+        assertThat(Files.getLastModifiedTime(hello)).isEqualTo(longAgo);
+
+        // Someone edited an output by hand, so it's regenerated.
+        Files.writeString(hello, "Oops");
+        Templates.generate(SIMPLE_SRC, testOutDir, Map.of("name", "Cora", "age", 13), incremental);
+        assertThat(hello).content().startsWith("# CORA");
+    }
+
+    @Test
+    void generate_archiveToArchive_noUnpacking(@TempDir Path testDir) throws Exception {
+
+        byte[] binary = {(byte) 0x89, 'P', 'N', 'G', 0x00, (byte) 0xFF};
+        Path jarFile = testDir.resolve("templates.jar");
+
+        try (FileSystem jar = FileSystems.newFileSystem(jarFile, Map.of("create", "true"))) {
+            Files.createDirectories(jar.getPath("/codegen/_partials"));
+            Files.createDirectories(jar.getPath("/codegen/sub"));
+            Files.writeString(jar.getPath("/codegen/sub/hello.txt"), "${include('_partials/hi.txt')}, ${age}");
+            Files.writeString(jar.getPath("/codegen/_partials/hi.txt"), "Hi ${name}");
+            Files.write(jar.getPath("/codegen/image.png"), binary);
+            Files.writeString(jar.getPath("/other.txt"), "Not generated");
+        }
+
+        Path zipFile = testDir.resolve("out/generated.zip");
+        Templates.generate(Path.of(jarFile + "!/codegen"), zipFile, varMap);
+
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            assertThat(zip.stream().map(ZipEntry::getName)).containsExactlyInAnyOrder("sub/hello.txt", "image.png");
+            assertThat(zip.getInputStream(zip.getEntry("sub/hello.txt"))).hasContent("Hi Cora, 12");
+            assertThat(zip.getInputStream(zip.getEntry("image.png"))).hasBinaryContent(binary);
+        }
+
+        assertThat(testDir.resolve("out")).isDirectoryNotContaining("glob:**.tmp");
+    }
+
+    @Test
+    void generate_archiveOutputFailure_oldArchiveKept(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = testDir.resolve("src");
+        Path zipFile = testDir.resolve("out.zip");
+        Files.createDirectories(srcDir);
+        Files.writeString(srcDir.resolve("good.txt"), "Hi ${name}");
+        Files.writeString(zipFile, "old");
+
+        Files.writeString(srcDir.resolve("bad.txt"), "I am ${broken!");
+
+        assertThatExceptionOfType(GenerationException.class)
+            .isThrownBy(() -> Templates.generate(srcDir, zipFile, varMap));
+
+        assertThat(zipFile).hasContent("old");
+        assertThat(testDir).isDirectoryNotContaining("glob:**.tmp");
+
+        assertThatExceptionOfType(IllegalArgumentException.class)
+            .isThrownBy(() -> Templates.generate(srcDir, zipFile, varMap, GenerateOptions.defaults().withIncremental(true)));
+    }
+
+    @Test
+    void generate_findingFilesThrows_archiveDropped(@TempDir Path testDir) throws Exception {
+
+        Path srcDir = Files.createDirectories(testDir.resolve("src"));
+        Path zipFile = testDir.resolve("out.zip");
+        Files.writeString(srcDir.resolve("good.txt"), "Hi ${name}");
+        Files.writeString(zipFile, "old");
+
+        // Like a dir walk that dies partway.
+        List<Path> sourceFiles = new AbstractList<>() {
+
+            @Override
+            public Path get(int index) {
+
+                if (index > 0) {
+                    throw new UncheckedIOException(new IOException("Disk gone"));
+                }
+
+                return Path.of("good.txt");
+            }
+
+            @Override
+            public int size() {
+                return 2;
+            }
+        };
+
+        assertThatExceptionOfType(UncheckedIOException.class).isThrownBy(() -> Templates.generateFiles(
+            srcDir,
+            sourceFiles,
+            zipFile,
+            varMap,
+            GenerateOptions.defaults(),
+            new IncludeGraph()));
+
+        assertThat(zipFile).hasContent("old");
+        assertThat(testDir).isDirectoryNotContaining("glob:**.tmp");
+    }
+
+    @Test
+    void generate_singleFileFails_archiveDropped(@TempDir Path testDir) throws Exception {
+
+        Path template = Files.writeString(testDir.resolve("bad.txt"), "I am ${broken!");
+        Path zipFile = testDir.resolve("out.zip");
+        Files.writeString(zipFile, "old");
+
+        assertThatExceptionOfType(TemplateCompileException.class)
+            .isThrownBy(() -> Templates.generate(template, zipFile.resolve("bad.txt"), varMap));
+
+        assertThat(zipFile).hasContent("old");
+        assertThat(testDir).isDirectoryNotContaining("glob:**.tmp");
+    }
 }
@@ -0,0 +1,66 @@
+package com.terheyden.templates;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * VariableDiscoveryTest unit tests.
+ */
+class VariableDiscoveryTest {
+
+    @Test
+    void discover_template_findsFreeVariablesOnly() {
+
+        String template = """
+            Hello ${user.name}, from ${slugify(company)}!
+            <% def greeting = 'hi'; [1, 2].each { println it + greeting + count } %>
+            <% for (item in items) { %>${item} of ${count}<% } %>
+            ${user.email}
+            """;
+
+        SortedMap<String, TemplateVariable> found = VariableDiscovery.discover(template);
+
+        assertThat(found.keySet()).containsExactly("company", "count", "items", "user");
+        assertThat(found.get("user").usages()).isEqualTo(2);
+        assertThat(found.get("count").usages()).isEqualTo(2);
+    }
+
+    @Test
+    void discover_varCalls_haveDescriptionsAndDefaults() {
+
+        SortedMap<String, TemplateVariable> found = VariableDiscovery.discover(
+            "${var('name', 'User name', 'Cora')} is ${var('age', 'Age', 42)} and ${name}");
+
+        assertThat(found).containsExactly(
+            Map.entry("age", new TemplateVariable("age", 1, "Age", 42)),
+            Map.entry("name", new TemplateVariable("name", 2, "User name", "Cora")));
+
+        // And the template renders the defaults, or the real values.
+        String template = "${var('name', 'User name', 'Cora')}";
+        assertThat(GroovyTemplater.generate(template, Map.of())).isEqualTo("Cora");
+        assertThat(GroovyTemplater.generate(template, Map.of("name", "Anna"))).isEqualTo("Anna");
+    }
+
+    @Test
+    void discover_dir_mergesTemplates(@TempDir Path testDir) throws Exception {
+
+        Files.createDirectories(testDir.resolve("sub"));
+        Files.writeString(testDir.resolve("a.txt"), "${name} ${var('port', 'Port', 8080)}");
+        Files.writeString(testDir.resolve("sub/b.txt"), "${name} ${host}");
+        Files.writeString(testDir.resolve("literal.txt"), "Nothing to see here.");
+        Files.writeString(testDir.resolve("broken.txt"), "${ oops(");
+
+        SortedMap<String, TemplateVariable> found = VariableDiscovery.discover(testDir, 4);
+
+        assertThat(found.keySet()).containsExactly("host", "name", "port");
+        assertThat(found.get("name").usages()).isEqualTo(2);
+        assertThat(found.get("port").defaultValue()).isEqualTo(8080);
+    }
+}